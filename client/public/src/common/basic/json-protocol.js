@@ -14,8 +14,9 @@ define(function (require, exports, module) {
             this.serializationMessageTypes = serializationMessageTypes;
         }
 
+        // data is already parsed if the message was nested in the packet
         parse(data) {
-            const parsedData = parseJson(data);
+            const parsedData = typeof data === 'string' ? parseJson(data) : data;
             const messageCode = parsedData[0];
             const messageConstructor = this.parsingMessageTypes[messageCode];
             const message = parsedData[1];
@@ -10,6 +10,14 @@ define(function (require, exports, module) {
         CharacterDied: function (characterId) {
             this.characterId = characterId;
         },
+        CharacterEnteredView: function (character, move, skillData) {
+            this.character = character;
+            this.move = move;
+            this.skillData = skillData;
+        },
+        CharacterLeftView: function (characterId) {
+            this.characterId = characterId;
+        },
         CharacterMoved: function (characterId, move) {
             this.characterId = characterId;
             this.move = move;
@@ -3,7 +3,11 @@ define(function (require, exports, module) {
     const JsonProtocol = require('../common/basic/json-protocol');
 
     const dispatcherServerKey = 'dispatcher';
+    // with the nested protocol server messages are nested in the packet, so they are parsed together with the packet
+    const subprotocols = ['dzida-json-nested', 'dzida-json'];
     const connections = new Map();
+    // connections at the indexes of their channel ids, packets of both sides use the channel id instead of the server key
+    const channels = [];
     const packetQueue = [];
 
     var socket = null;
@@ -13,14 +17,22 @@ define(function (require, exports, module) {
             this.serverKey = serverKey;
             //noinspection JSUnusedGlobalSymbols
             this.connectionData = connectionData;
+            // servers with a protocol send the message types as numeric ids, their names are in the ConnectedToServer message
+            //noinspection JSUnusedGlobalSymbols
+            this.typeIds = true;
+            //noinspection JSUnusedGlobalSymbols
+            this.channelIds = true;
         },
         DisconnectFromServer: function (serverKey) {
             this.serverKey = serverKey;
         }
     };
     const ServerMessage = {
-        ConnectedToServer: function (serverKey) {
+        ConnectedToServer: function (serverKey, clientMessageTypes, serverMessageTypes, channelId) {
             this.serverKey = serverKey;
+            this.clientMessageTypes = clientMessageTypes;
+            this.serverMessageTypes = serverMessageTypes;
+            this.channelId = channelId;
         },
         DisconnectedFromServer: function (serverKey) {
             this.serverKey = serverKey;
@@ -70,13 +82,30 @@ define(function (require, exports, module) {
             connection.readyState = connectionState.CLOSED;
         }
         connections.clear();
+        channels.length = 0;
         socket = null;
     }
 
+    function withTypeName(connection, data) {
+        if (connection.serverMessageTypes == null) {
+            return data;
+        }
+        const message = typeof data === 'string' ? JSON.parse(data) : data;
+        if (typeof message[0] === 'number') {
+            message[0] = connection.serverMessageTypes[message[0]];
+        }
+        return message;
+    }
+
     function handleDispatcherMessage(data) {
         const message = dispatcherProtocol.parse(data);
         if (message.constructor === ServerMessage.ConnectedToServer) {
             const connection = connections.get(message.serverKey);
+            connection.serverMessageTypes = message.serverMessageTypes;
+            if (message.channelId != null) {
+                connection.channelId = message.channelId;
+                channels[message.channelId] = connection;
+            }
             connection.onOpen();
             connection.readyState = connectionState.OPEN;
         } else if (message.constructor === ServerMessage.DisconnectedFromServer) {
@@ -85,6 +114,7 @@ define(function (require, exports, module) {
             connection.onClose();
             connection.readyState = connectionState.CLOSED;
             connections.delete(message.serverKey);
+            delete channels[connection.channelId];
         } else if (message.constructor === ServerMessage.NotConnectedToServer) {
             const connection = connections.get(message.serverKey);
             connection.readyState = connectionState.CLOSING;
@@ -97,7 +127,7 @@ define(function (require, exports, module) {
     }
 
     function connect() {
-        socket = new WebSocket(Configuration.serverAddress);
+        socket = new WebSocket(Configuration.serverAddress, subprotocols);
         socket.onopen = () => {
             sendServerPackets(packetQueue);
             packetQueue.length = 0;
@@ -107,10 +137,11 @@ define(function (require, exports, module) {
             for (const serverPackage of serverPackages) {
                 const serverKey = serverPackage[0];
                 const data = serverPackage[1];
+                const connection = typeof serverKey === 'number' ? channels[serverKey] : connections.get(serverKey);
                 if (serverKey == dispatcherServerKey) {
                     handleDispatcherMessage(data);
-                } else if (connections.has(serverKey)) {
-                    connections.get(serverKey).onMessage(data);
+                } else if (connection != null) {
+                    connection.onMessage(withTypeName(connection, data));
                 } else {
                     console.error(`Message from server ${serverKey} to which there is no connection`)
                 }
@@ -134,10 +165,11 @@ define(function (require, exports, module) {
             }
             const connection = {
                 send(data) {
-                    send(serverKey, data);
+                    send(connection.channelId != null ? connection.channelId : serverKey, data);
                 },
                 close() {
                     connections.delete(serverKey);
+                    delete channels[connection.channelId];
                     sendToDispatcher(new ClientMessage.DisconnectFromServer(serverKey));
                 },
                 readyState: connectionState.CONNECTING,
@@ -163,6 +195,7 @@ define(function (require, exports, module) {
                 connection.onClose();
             });
             connections.clear();
+            channels.length = 0;
         }
     };
 });
\ No newline at end of file
@@ -84,11 +84,11 @@ define(function (require, exports, module) {
         return Point.multiplyInPlace(MoveStore.positionAtTime(characterModel.id, time), TileSize);
     }
 
-    CharacterStore.characterSpawnedStream.subscribe(function (character) {
+    CharacterStore.characterAddedStream.subscribe(function (character) {
         createCharacterModel(character);
     });
 
-    CharacterStore.characterDiedStream.subscribe(function (characterToRemove) {
+    CharacterStore.characterRemovedStream.subscribe(function (characterToRemove) {
         removeCharacterModel(characterToRemove);
     });
 
@@ -53,12 +53,15 @@ define(function (require, exports, module) {
         }
     });
 
-    Dispatcher.messageStream.subscribe(Messages.CharacterDied, (event) => {
+    function clearTarget(event) {
         const animation = animations.find(animation => animation.target == event.characterId);
         if (animation) {
             animation.target = null;
         }
-    });
+    }
+
+    Dispatcher.messageStream.subscribe(Messages.CharacterDied, clearTarget);
+    Dispatcher.messageStream.subscribe(Messages.CharacterLeftView, clearTarget);
 
     module.exports = {
         get layer() {
@@ -7,14 +7,19 @@ define(function (require, exports, module) {
     const key = 'character';
     const state = new Map();
 
-    Dispatcher.messageStream.subscribe(Messages.CharacterSpawned, (event) => {
+    function addCharacter(event) {
         const character = event.character;
         state.set(character.id, character);
-    });
+    }
 
-    Dispatcher.messageStream.subscribe(Messages.CharacterDied, (event) => {
+    function removeCharacter(event) {
         state.delete(event.characterId);
-    });
+    }
+
+    Dispatcher.messageStream.subscribe(Messages.CharacterSpawned, addCharacter);
+    Dispatcher.messageStream.subscribe(Messages.CharacterEnteredView, addCharacter);
+    Dispatcher.messageStream.subscribe(Messages.CharacterDied, removeCharacter);
+    Dispatcher.messageStream.subscribe(Messages.CharacterLeftView, removeCharacter);
 
     StoreRegistrar.registerStore({
         key,
@@ -29,11 +34,15 @@ define(function (require, exports, module) {
 
     module.exports = {
         key,
-        characterSpawnedStream: new Publisher.StreamPublisher((push) => {
+        // characters that are spawned or got into the view of the player
+        characterAddedStream: new Publisher.StreamPublisher((push) => {
             Dispatcher.messageStream.subscribeLast(Messages.CharacterSpawned, (event) =>push(event.character));
+            Dispatcher.messageStream.subscribeLast(Messages.CharacterEnteredView, (event) =>push(event.character));
         }),
-        characterDiedStream: new Publisher.StreamPublisher((push) => {
+        // characters that died or got out of the view of the player
+        characterRemovedStream: new Publisher.StreamPublisher((push) => {
             Dispatcher.messageStream.subscribeLast(Messages.CharacterDied, (event) =>push(event.characterId));
+            Dispatcher.messageStream.subscribeLast(Messages.CharacterLeftView, (event) =>push(event.characterId));
         }),
         CharacterType: {
             Player: 0,
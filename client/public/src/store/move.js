@@ -8,21 +8,27 @@ define(function (require, exports, module) {
     const state = new Map();
 
     Dispatcher.messageStream.subscribe(Messages.CharacterMoved, (event) => {
-        state.set(event.characterId, event.move);
+        state.set(event.characterId, Move.decode(event.move));
     });
     Dispatcher.messageStream.subscribe(Messages.CharacterSpawned, (event) => {
-        state.set(event.character.id, event.move);
+        state.set(event.character.id, Move.decode(event.move));
+    });
+    Dispatcher.messageStream.subscribe(Messages.CharacterEnteredView, (event) => {
+        state.set(event.character.id, Move.decode(event.move));
     });
     Dispatcher.messageStream.subscribe(Messages.CharacterDied, (event) => {
         state.delete(event.characterId);
     });
+    Dispatcher.messageStream.subscribe(Messages.CharacterLeftView, (event) => {
+        state.delete(event.characterId);
+    });
 
     StoreRegistrar.registerStore({
         key,
         state,
         init: (initialState) => {
             state.clear();
-            initialState.forEach(elem => state.set(elem.characterId, elem.move));
+            initialState.forEach(elem => state.set(elem.characterId, Move.decode(elem.move)));
         }
     });
 
@@ -12,9 +12,15 @@ define(function (require, exports, module) {
     Dispatcher.messageStream.subscribe(Messages.CharacterSpawned, (event) => {
         state.set(event.character.id, event.skillData);
     });
+    Dispatcher.messageStream.subscribe(Messages.CharacterEnteredView, (event) => {
+        state.set(event.character.id, event.skillData);
+    });
     Dispatcher.messageStream.subscribe(Messages.CharacterDied, (event) => {
         state.delete(event.characterId);
     });
+    Dispatcher.messageStream.subscribe(Messages.CharacterLeftView, (event) => {
+        state.delete(event.characterId);
+    });
     Dispatcher.messageStream.subscribe(Messages.CharacterGotDamage, (event) => {
         state.get(event.characterId).health -= event.damage;
     });
@@ -60,6 +60,14 @@ define(function (require, exports, module) {
             const dx = move.points[index - 2] - move.points[index];
             const dy = move.points[index - 1] - move.points[index + 1];
             return -Math.atan2(dx, dy)
+        },
+        // server sends moves as [precision, startTime, [time deltas], [quantized coordinates]]
+        decode: (encoded) => {
+            const precision = encoded[0];
+            const startTime = encoded[1];
+            const times = [startTime].concat(encoded[2].map(delta => startTime + delta));
+            const points = encoded[3].map(coordinate => coordinate / precision);
+            return {points, times};
         }
     };
 });
@@ -33,6 +33,125 @@ public class Configuration {
         return Integer.parseInt(getProperty("gameServerPort", "7001"));
     }
 
+    /**
+     * Number of threads that handle the game sockets. Instances are spread across those threads.
+     */
+    public static int getWorkerThreads() {
+        return Integer.parseInt(getProperty("workerThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Native epoll transport is used only on the systems where it's available.
+     */
+    public static boolean isEpollEnabled() {
+        return "true".equals(getProperty("epoll", "true"));
+    }
+
+    /**
+     * Number of threads that accept connections. It's applicable only for the epoll transport as it requires SO_REUSEPORT.
+     */
+    public static int getAcceptorThreads() {
+        return Integer.parseInt(getProperty("acceptorThreads", "1"));
+    }
+
+    /**
+     * Max number of millis the messages to the client are buffered before they are flushed to the socket. With 0 they are flushed once the event loop is done with the current tasks.
+     */
+    public static long getFlushMaxDelay() {
+        return Long.parseLong(getProperty("flushMaxDelay", "0"));
+    }
+
+    /**
+     * Frames to the client that are smaller than this number of bytes are not compressed even if the client supports the permessage-deflate extension. Negative value disables the compression.
+     */
+    public static int getCompressionThreshold() {
+        return Integer.parseInt(getProperty("compressionThreshold", "1024"));
+    }
+
+    /**
+     * Number of bytes buffered for the client above which the client is considered slow and only the latest moves of the characters are sent to it.
+     */
+    public static int getWriteBufferHighWaterMark() {
+        return Integer.parseInt(getProperty("writeBufferHighWaterMark", "262144"));
+    }
+
+    /**
+     * Number of bytes buffered for the slow client below which all the messages are sent to it again.
+     */
+    public static int getWriteBufferLowWaterMark() {
+        return Integer.parseInt(getProperty("writeBufferLowWaterMark", "65536"));
+    }
+
+    /**
+     * Number of millis after which the client that stays above the high water mark is disconnected.
+     */
+    public static long getMaxUnwritableTime() {
+        return Long.parseLong(getProperty("maxUnwritableTime", "10000"));
+    }
+
+    /**
+     * Number of millis without any message from the client after which the server pings the client. With 0 the server does not ping the clients.
+     */
+    public static long getHeartbeatInterval() {
+        return Long.parseLong(getProperty("heartbeatInterval", "10000"));
+    }
+
+    /**
+     * Number of pings in a row that the client may not answer before it's disconnected.
+     */
+    public static int getMaxMissedHeartbeats() {
+        return Integer.parseInt(getProperty("maxMissedHeartbeats", "3"));
+    }
+
+    /**
+     * Number of messages per second and the burst that a single client may send, in the form of {@code rate/burst}. Empty disables the limit.
+     */
+    public static String getConnectionRateLimit() {
+        return getProperty("connectionRateLimit", "50/100");
+    }
+
+    /**
+     * Limits of the single message types, comma separated, in the form of {@code Type=rate/burst}.
+     */
+    public static String getMessageRateLimits() {
+        return getProperty("messageRateLimits", "Move=10/20");
+    }
+
+    /**
+     * Number of steps in a tile to which the coordinates of the moves are rounded, so the moves are sent to the clients as integers.
+     */
+    public static int getMovePrecision() {
+        return Integer.parseInt(getProperty("movePrecision", "16"));
+    }
+
+    /**
+     * Number of ticks per second in which the instance processes the commands of the players in batches. Zero processes each command as soon as it arrives.
+     */
+    public static int getTickRate() {
+        return Integer.parseInt(getProperty("tickRate", "0"));
+    }
+
+    /**
+     * Distance in tiles in which the players get the events of the other characters. Zero sends all the events of the instance to all the players.
+     */
+    public static double getViewRadius() {
+        return Double.parseDouble(getProperty("viewRadius", "32"));
+    }
+
+    /**
+     * Number of millis after which the instance without players is hibernated. Zero keeps all the instances loaded.
+     */
+    public static long getInstanceHibernationTime() {
+        return Long.parseLong(getProperty("instanceHibernationTime", "300000"));
+    }
+
+    /**
+     * Whether the client that exceeds the rate limit is disconnected. Otherwise only the messages over the limit are dropped.
+     */
+    public static boolean isRateLimitDisconnectEnabled() {
+        return "true".equals(getProperty("rateLimitDisconnect", "false"));
+    }
+
     public static String getLoginTokenSecret() {
         return getProperty("loginTokenKey", "login token secret");
     }
@@ -91,6 +210,19 @@ public class Configuration {
         log.info("container host: " + getContainerHost());
         log.info("container rest port: " + getContainerRestPort());
         log.info("container first instance port: " + getGameServerPort());
+        log.info("worker threads: " + getWorkerThreads());
+        log.info("epoll enabled: " + isEpollEnabled());
+        log.info("acceptor threads: " + getAcceptorThreads());
+        log.info("flush max delay: " + getFlushMaxDelay());
+        log.info("compression threshold: " + getCompressionThreshold());
+        log.info("write buffer water marks: " + getWriteBufferLowWaterMark() + " - " + getWriteBufferHighWaterMark());
+        log.info("max unwritable time: " + getMaxUnwritableTime());
+        log.info("heartbeat interval: " + getHeartbeatInterval() + ", max missed heartbeats: " + getMaxMissedHeartbeats());
+        log.info("connection rate limit: " + getConnectionRateLimit() + ", message rate limits: " + getMessageRateLimits() + ", disconnect: " + isRateLimitDisconnectEnabled());
+        log.info("move precision: " + getMovePrecision());
+        log.info("tick rate: " + getTickRate());
+        log.info("instance hibernation time: " + getInstanceHibernationTime());
+        log.info("view radius: " + getViewRadius());
         log.info("static server instanceKey: " + getStaticServerAddress());
         //noinspection ConfusingArgumentToVarargsMethod
         log.info("initial instances: " + String.join(",", getInitialInstances()));
@@ -4,6 +4,7 @@ import co.cask.http.ExceptionHandler;
 import co.cask.http.HttpResponder;
 import co.cask.http.NettyHttpService;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import dzida.server.app.analytics.AnalyticsServer;
 import dzida.server.app.analytics.AnalyticsStore;
 import dzida.server.app.arbiter.Arbiter;
@@ -12,11 +13,16 @@ import dzida.server.app.chat.Chat;
 import dzida.server.app.chat.ChatStore;
 import dzida.server.app.database.ConnectionManager;
 import dzida.server.app.database.ConnectionProvider;
+import dzida.server.app.dispatcher.RateLimitPolicy;
 import dzida.server.app.dispatcher.ServerDispatcher;
 import dzida.server.app.friend.FriendServer;
 import dzida.server.app.friend.FriendsStore;
 import dzida.server.app.instance.InstanceStore;
+import dzida.server.app.metrics.Metrics;
+import dzida.server.app.network.HeartbeatPolicy;
 import dzida.server.app.network.WebSocketServer;
+import dzida.server.app.network.WriteBufferPolicy;
+import dzida.server.app.rest.MetricsResource;
 import dzida.server.app.rest.UserResource;
 import dzida.server.app.store.database.AnalyticsStoreDb;
 import dzida.server.app.store.database.ArbiterStoreDb;
@@ -85,12 +91,17 @@ public final class GameServer {
 
         int gameServerPort = Configuration.getGameServerPort();
         UserService userService = new UserService(userStore);
-        webSocketServer = new WebSocketServer();
+        Metrics metrics = new Metrics();
+        WriteBufferPolicy writeBufferPolicy = new WriteBufferPolicy(Configuration.getWriteBufferLowWaterMark(), Configuration.getWriteBufferHighWaterMark(), Configuration.getMaxUnwritableTime());
+        HeartbeatPolicy heartbeatPolicy = new HeartbeatPolicy(Configuration.getHeartbeatInterval(), Configuration.getMaxMissedHeartbeats());
+        webSocketServer = new WebSocketServer(Configuration.getWorkerThreads(), Configuration.getAcceptorThreads(), Configuration.isEpollEnabled(),
+                Configuration.getFlushMaxDelay(), Configuration.getCompressionThreshold(), writeBufferPolicy, heartbeatPolicy, metrics);
 
         SchedulerImpl scheduler = new SchedulerImpl(webSocketServer.getEventLoop());
 
-        ServerDispatcher serverDispatcher = new ServerDispatcher();
-        arbiter = new Arbiter(serverDispatcher, scheduler, arbiterStore, instanceStore);
+        RateLimitPolicy rateLimitPolicy = RateLimitPolicy.parse(Configuration.getConnectionRateLimit(), Configuration.getMessageRateLimits(), Configuration.isRateLimitDisconnectEnabled());
+        ServerDispatcher serverDispatcher = new ServerDispatcher(scheduler, rateLimitPolicy, metrics);
+        arbiter = new Arbiter(serverDispatcher, scheduler, () -> new SchedulerImpl(webSocketServer.nextEventLoop()), arbiterStore, instanceStore, metrics);
         TimeSynchroniser timeSynchroniser = new TimeSynchroniser(new TimeServiceImpl());
 
         Chat chat = new Chat(chatStore);
@@ -101,9 +112,10 @@ public final class GameServer {
 
         AnalyticsServer analyticsServer = new AnalyticsServer(analyticsStore);
 
-        serverDispatcher.addServer("arbiter", arbiter);
+        serverDispatcher.addServer("arbiter", arbiter, scheduler, arbiter.getProtocol());
         serverDispatcher.addServer("chat", chat);
-        serverDispatcher.addServer("time", timeSynchroniser);
+        // time synchroniser is stateless, so it is called directly on the connection thread to not disturb the measured time
+        serverDispatcher.addServer("time", timeSynchroniser, MoreExecutors.directExecutor());
         serverDispatcher.addServer("friends", friendServer);
         serverDispatcher.addServer("analytics", analyticsServer);
 
@@ -118,7 +130,8 @@ public final class GameServer {
                     }
                 })
                 .addHttpHandlers(ImmutableList.of(
-                        new UserResource(userService)
+                        new UserResource(userService),
+                        new MetricsResource(metrics)
                 ))
                 .build();
 
@@ -1,11 +1,26 @@
 package dzida.server.app;
 
 import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
-public interface Scheduler {
+/**
+ * Scheduler runs all the commands on a single thread, so it can be used also as an executor that confines a state to that thread.
+ */
+public interface Scheduler extends Executor {
 
-    void schedule(Runnable command, long delay);
-    void schedule(Runnable command, Duration delay);
+    /**
+     * The returned future cancels the command if it has not run yet.
+     */
+    Future<?> schedule(Runnable command, long delay);
+
+    Future<?> schedule(Runnable command, Duration delay);
 
     void schedulePeriodically(Runnable command, long initDelay, long period);
+
+    /**
+     * Runs the command every period millis counted from the start of the first run, not from the end of the previous one.
+     * The returned future cancels the further runs.
+     */
+    Future<?> scheduleAtFixedRate(Runnable command, long initDelay, long period);
 }
@@ -3,6 +3,7 @@ package dzida.server.app;
 import io.netty.channel.EventLoop;
 
 import java.time.Duration;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 public class SchedulerImpl implements Scheduler {
@@ -14,17 +15,27 @@ public class SchedulerImpl implements Scheduler {
     }
 
     @Override
-    public void schedule(Runnable command, long delay) {
-        eventLoop.schedule(command, delay, TimeUnit.MILLISECONDS);
+    public void execute(Runnable command) {
+        eventLoop.execute(command);
     }
 
     @Override
-    public void schedule(Runnable command, Duration delay) {
-        schedule(command, delay.getSeconds() * 1000);
+    public Future<?> schedule(Runnable command, long delay) {
+        return eventLoop.schedule(command, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<?> schedule(Runnable command, Duration delay) {
+        return schedule(command, delay.getSeconds() * 1000);
     }
 
     @Override
     public void schedulePeriodically(Runnable command, long initDelay, long period) {
         eventLoop.scheduleWithFixedDelay(command, initDelay, period, TimeUnit.MILLISECONDS);
     }
+
+    @Override
+    public Future<?> scheduleAtFixedRate(Runnable command, long initDelay, long period) {
+        return eventLoop.scheduleAtFixedRate(command, initDelay, period, TimeUnit.MILLISECONDS);
+    }
 }
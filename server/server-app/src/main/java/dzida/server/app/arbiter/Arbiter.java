@@ -7,7 +7,8 @@ import dzida.server.app.Scheduler;
 import dzida.server.app.basic.Publisher;
 import dzida.server.app.basic.Result;
 import dzida.server.app.basic.connection.Connector;
-import dzida.server.app.basic.connection.ServerConnection;
+import dzida.server.app.basic.connection.MessageConnector;
+import dzida.server.app.basic.connection.MessageServerConnection;
 import dzida.server.app.basic.connection.VerifyingConnectionServer;
 import dzida.server.app.basic.entity.Id;
 import dzida.server.app.basic.entity.Key;
@@ -15,10 +16,13 @@ import dzida.server.app.dispatcher.ServerDispatcher;
 import dzida.server.app.instance.GameDefinitions;
 import dzida.server.app.instance.Instance;
 import dzida.server.app.instance.InstanceServer;
+import dzida.server.app.instance.InstanceSnapshot;
 import dzida.server.app.instance.InstanceStore;
 import dzida.server.app.instance.skill.Skill;
 import dzida.server.app.instance.world.object.WorldObjectKind;
 import dzida.server.app.map.descriptor.Scenario;
+import dzida.server.app.metrics.Histogram;
+import dzida.server.app.metrics.Metrics;
 import dzida.server.app.protocol.json.JsonProtocol;
 import dzida.server.app.store.http.loader.SkillLoader;
 import dzida.server.app.store.http.loader.StaticDataLoader;
@@ -28,13 +32,17 @@ import dzida.server.app.user.LoginToken;
 import dzida.server.app.user.User;
 import dzida.server.app.user.UserTokenVerifier;
 
+import javax.annotation.Nullable;
+
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.nurkiewicz.typeof.TypeOf.whenTypeOf;
@@ -44,6 +52,7 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
     public final Publisher<InstanceServer> instanceClosedPublisher;
     private final ServerDispatcher serverDispatcher;
     private final Scheduler scheduler;
+    private final Supplier<Scheduler> instanceSchedulers;
     private final JsonProtocol arbiterProtocol;
     private final UserTokenVerifier userTokenVerifier;
     private final ArbiterStore arbiterStore;
@@ -56,16 +65,26 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
     private final Key<Instance> defaultInstance;
     private final Set<Key<Instance>> instancesToShutdown;
     private final Set<Id<User>> connectedUsers;
+    // instances are hibernated when they are empty for the hibernation time
+    private final long hibernationTime;
+    private final InstanceHibernation instanceHibernation;
+    private final Histogram resumeNanos;
 
-    public Arbiter(ServerDispatcher serverDispatcher, Scheduler scheduler, ArbiterStore arbiterStore, InstanceStore instanceStore) {
+    /**
+     * @param scheduler scheduler on which the arbiter and its connections are run.
+     * @param instanceSchedulers supplies a scheduler for each started instance. The instance and its connections are run only on that scheduler.
+     */
+    public Arbiter(ServerDispatcher serverDispatcher, Scheduler scheduler, Supplier<Scheduler> instanceSchedulers, ArbiterStore arbiterStore, InstanceStore instanceStore, Metrics metrics) {
         this.serverDispatcher = serverDispatcher;
         this.scheduler = scheduler;
+        this.instanceSchedulers = instanceSchedulers;
         this.arbiterStore = arbiterStore;
         this.instanceStore = instanceStore;
         arbiterProtocol = JsonProtocol.create(ArbiterCommand.clientCommandClasses, ArbiterCommand.serverCommandClasses);
         userTokenVerifier = new UserTokenVerifier();
 
-        usersInstances = new HashMap<>();
+        // instances are checking users on their own threads
+        usersInstances = new ConcurrentHashMap<>();
         instances = new HashMap<>();
         initialInstances = ImmutableList.copyOf(Configuration.getInitialInstances())
                 .stream()
@@ -77,6 +96,10 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
         instanceStartedPublisher = new Publisher<>();
         instanceClosedPublisher = new Publisher<>();
         gameDefinitions = createGameDefinitions();
+        hibernationTime = Configuration.getInstanceHibernationTime();
+        instanceHibernation = new InstanceHibernation(hibernationTime);
+        metrics.gauge("arbiter.hibernatedInstances", instanceHibernation::getHibernatedCount);
+        resumeNanos = metrics.histogram("arbiter.resumeNanos");
     }
 
     private GameDefinitions createGameDefinitions() {
@@ -86,7 +109,7 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
         Map<Id<WorldObjectKind>, WorldObjectKind> worldObjectKinds = worldObjectKindLoader.loadWorldObjectKinds()
                 .stream()
                 .collect(Collectors.toMap(WorldObjectKind::getId, Function.identity()));
-        return new GameDefinitions(skills, worldObjectKinds);
+        return new GameDefinitions(skills, worldObjectKinds, Configuration.getMovePrecision());
     }
 
     public void start() {
@@ -94,6 +117,10 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
         initialInstances.forEach(instanceKey -> {
             startInstance(instanceKey, new Scenario(new Key<>(instanceKey.getValue())));
         });
+        if (hibernationTime > 0) {
+            long checkPeriod = instanceHibernation.getCheckPeriod();
+            scheduler.schedulePeriodically(this::hibernateEmptyInstances, checkPeriod, checkPeriod);
+        }
     }
 
     public void stop() {
@@ -103,12 +130,17 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
     }
 
     public void startInstance(Key<Instance> instanceKey, Scenario scenario) {
+        startInstance(instanceKey, scenario, null);
+    }
+
+    private void startInstance(Key<Instance> instanceKey, Scenario scenario, @Nullable InstanceSnapshot snapshot) {
         arbiterStore.instanceStarted(instanceKey);
         String instanceKeyValue = instanceKey.getValue();
-        InstanceServer instanceServer = new InstanceServer(scheduler, instanceStore, this, instanceKey, scenario, gameDefinitions);
-        instanceServer.start();
+        Scheduler instanceScheduler = instanceSchedulers.get();
+        InstanceServer instanceServer = new InstanceServer(instanceScheduler, instanceStore, this, instanceKey, scenario, gameDefinitions, Configuration.getTickRate(), Configuration.getViewRadius(), snapshot);
+        instanceScheduler.execute(instanceServer::start);
 
-        serverDispatcher.addServer(instanceKeyValue, instanceServer);
+        serverDispatcher.addServer(instanceKeyValue, instanceServer, instanceScheduler, instanceServer.getProtocol());
         instances.put(instanceKey, instanceServer);
         instanceStartedPublisher.notify(instanceServer);
         cleanOldInstances();
@@ -122,6 +154,35 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
         arbiterStore.instanceStopped(instanceKey);
     }
 
+    /**
+     * Unloads the instances that have no players for the hibernation time. Snapshot of the instance is taken on the
+     * instance scheduler, until it's ready the instance can not be resumed.
+     */
+    private void hibernateEmptyInstances() {
+        Set<Key<Instance>> occupiedInstances = new HashSet<>(usersInstances.values());
+        instanceHibernation.findInstancesToHibernate(System.currentTimeMillis(), ImmutableList.copyOf(instances.keySet()), occupiedInstances)
+                .forEach(this::hibernateInstance);
+    }
+
+    private void hibernateInstance(Key<Instance> instanceKey) {
+        InstanceServer instanceServer = instances.remove(instanceKey);
+        serverDispatcher.removeServer(instanceKey.getValue());
+        instanceClosedPublisher.notify(instanceServer);
+        instanceHibernation.hibernated(instanceKey, instanceServer.hibernate());
+        arbiterStore.instanceStopped(instanceKey);
+    }
+
+    /**
+     * Starts the hibernated instance from its snapshot and runs the callback when the instance is started.
+     */
+    private void resumeInstance(Key<Instance> instanceKey, Runnable onResumed) {
+        long resumeStart = System.nanoTime();
+        instanceHibernation.resume(instanceKey, scheduler, snapshot -> {
+            startInstance(instanceKey, snapshot.getScenario(), snapshot);
+            resumeNanos.record(System.nanoTime() - resumeStart);
+        }, onResumed);
+    }
+
     @Override
     public Result onConnection(Connector<String> connector, String userToken) {
         Optional<LoginToken> loginToken = userTokenVerifier.verifyToken(new EncryptedLoginToken(userToken));
@@ -137,7 +198,7 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
 
         ArbiterConnection arbiterConnection = new ArbiterConnection(userId, connector);
         connector.onOpen(arbiterConnection);
-        arbiterConnection.movePlayerToInstance(defaultInstance);
+        arbiterConnection.travelToInstance(defaultInstance);
         return Result.ok();
     }
 
@@ -156,7 +217,14 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
         }
     }
 
-    private final class ArbiterConnection implements ServerConnection<String> {
+    /**
+     * Commands of the clients are parsed by the dispatcher, if the arbiter is registered with this protocol.
+     */
+    public JsonProtocol getProtocol() {
+        return arbiterProtocol;
+    }
+
+    private final class ArbiterConnection implements MessageServerConnection<String> {
         private final Id<User> userId;
         private final Connector<String> connector;
 
@@ -167,23 +235,48 @@ public class Arbiter implements VerifyingConnectionServer<String, String> {
 
         @Override
         public void send(String data) {
-            Object message = arbiterProtocol.parseMessage(data);
+            sendMessage(arbiterProtocol.parseMessage(data));
+        }
+
+        @Override
+        public void sendMessage(Object message) {
             whenTypeOf(message)
                     .is(ArbiterCommand.Travel.class)
                     .then(command -> {
                         Key<Instance> instanceKey = new Key<>(command.location);
-                        if (instances.containsKey(instanceKey)) {
-                            movePlayerToInstance(instanceKey);
-                        }
+                        travelToInstance(instanceKey);
                     });
         }
 
+        /**
+         * Moves the player to the running instance, the hibernated instance is resumed first.
+         */
+        public void travelToInstance(Key<Instance> instanceKey) {
+            if (instances.containsKey(instanceKey)) {
+                movePlayerToInstance(instanceKey);
+            } else if (instanceHibernation.isHibernated(instanceKey)) {
+                resumeInstance(instanceKey, () -> {
+                    if (connectedUsers.contains(userId) && instances.containsKey(instanceKey)) {
+                        movePlayerToInstance(instanceKey);
+                    }
+                });
+            }
+        }
+
         public void movePlayerToInstance(Key<Instance> newInstanceKey) {
             usersInstances.put(userId, newInstanceKey);
-            connector.onMessage(arbiterProtocol.serializeMessage(new ArbiterCommand.JoinToInstance(newInstanceKey)));
+            serverSend(new ArbiterCommand.JoinToInstance(newInstanceKey));
             arbiterStore.userJoinedInstance(userId, newInstanceKey);
         }
 
+        private void serverSend(Object message) {
+            if (connector instanceof MessageConnector) {
+                ((MessageConnector<String>) connector).onTypedMessage(message);
+            } else {
+                connector.onMessage(arbiterProtocol.serializeMessage(message));
+            }
+        }
+
         @Override
         public void close() {
             Key<Instance> lastInstanceKey = usersInstances.get(userId);
@@ -0,0 +1,87 @@
+package dzida.server.app.arbiter;
+
+import dzida.server.app.basic.entity.Key;
+import dzida.server.app.instance.Instance;
+import dzida.server.app.instance.InstanceSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Tracks for how long the instances are empty and keeps the snapshots of the hibernated instances. Snapshot is taken
+ * on the instance scheduler, so it's a future, and the instance can be resumed only when it's completed.
+ * Hibernation is confined to the arbiter scheduler, only the number of the hibernated instances can be read by others.
+ */
+final class InstanceHibernation {
+    private final long hibernationTime;
+    private final Map<Key<Instance>, Long> emptyInstancesSince = new HashMap<>();
+    // size is read by the metrics
+    private final Map<Key<Instance>, CompletableFuture<InstanceSnapshot>> hibernatedInstances = new ConcurrentHashMap<>();
+
+    InstanceHibernation(long hibernationTime) {
+        this.hibernationTime = hibernationTime;
+    }
+
+    /**
+     * Period in which the empty instances are checked. The instance is hibernated at most a quarter of the hibernation
+     * time after it was empty for the hibernation time.
+     */
+    long getCheckPeriod() {
+        return Math.max(1, hibernationTime / 4);
+    }
+
+    /**
+     * @return instances that are empty for at least the hibernation time.
+     */
+    List<Key<Instance>> findInstancesToHibernate(long now, Collection<Key<Instance>> instances, Set<Key<Instance>> occupiedInstances) {
+        emptyInstancesSince.keySet().retainAll(instances);
+        List<Key<Instance>> instancesToHibernate = new ArrayList<>();
+        for (Key<Instance> instanceKey : instances) {
+            if (occupiedInstances.contains(instanceKey)) {
+                emptyInstancesSince.remove(instanceKey);
+                continue;
+            }
+            long emptySince = emptyInstancesSince.computeIfAbsent(instanceKey, key -> now);
+            if (now - emptySince >= hibernationTime) {
+                instancesToHibernate.add(instanceKey);
+            }
+        }
+        return instancesToHibernate;
+    }
+
+    void hibernated(Key<Instance> instanceKey, CompletableFuture<InstanceSnapshot> snapshot) {
+        emptyInstancesSince.remove(instanceKey);
+        hibernatedInstances.put(instanceKey, snapshot);
+    }
+
+    boolean isHibernated(Key<Instance> instanceKey) {
+        return hibernatedInstances.containsKey(instanceKey);
+    }
+
+    int getHibernatedCount() {
+        return hibernatedInstances.size();
+    }
+
+    /**
+     * Starts the instance from its snapshot when the snapshot is ready. The instance is started once even if many
+     * players resume it before the snapshot is ready, the callback is run for each of them after the start.
+     *
+     * @param executor executor of the arbiter on which the instance is started and the callback is run.
+     */
+    void resume(Key<Instance> instanceKey, Executor executor, Consumer<InstanceSnapshot> startInstance, Runnable onResumed) {
+        hibernatedInstances.get(instanceKey).thenAcceptAsync(snapshot -> {
+            if (hibernatedInstances.remove(instanceKey) != null) {
+                startInstance.accept(snapshot);
+            }
+            onResumed.run();
+        }, executor);
+    }
+}
@@ -0,0 +1,358 @@
+package dzida.server.app.basic;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map that shares the structure with the map from which it was created. It's a hash array mapped trie,
+ * so {@link #plus(Object, Object)} and {@link #minus(Object)} copy only the nodes on the path to the key, that is
+ * at most 7 arrays of at most 32 entries, instead of the whole map.
+ * Keys and values can not be null. Mutating methods of {@link java.util.Map} throw {@link UnsupportedOperationException}.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final int bitsPerLevel = 5;
+    private static final int levelMask = (1 << bitsPerLevel) - 1;
+    // 7 levels of the trie are needed to consume the 32 bits of the hash, and a collision node can be below them
+    private static final int maxDepth = 8;
+    private static final PersistentHashMap<?, ?> emptyMap = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) emptyMap;
+    }
+
+    /**
+     * Returns the map with the key set to the value. The same map is returned if the key is already set to the same value.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        boolean[] added = new boolean[1];
+        Node currentRoot = root == null ? BitmapNode.empty : root;
+        Node newRoot = currentRoot.put(key, value, key.hashCode(), 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns the map without the key. The same map is returned if there is no such key.
+     */
+    public PersistentHashMap<K, V> minus(K key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.remove(key, key.hashCode(), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return (V) root.get(key, key.hashCode(), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Entries of a node are kept in a single array as pairs of the key and the value. Pair with the null key has a
+     * child node instead of the value.
+     */
+    private static abstract class Node {
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object get(Object key, int hash, int shift);
+
+        /**
+         * @param added set to true when the key was not in the map.
+         * @return this node if nothing has changed.
+         */
+        abstract Node put(Object key, Object value, int hash, int shift, boolean[] added);
+
+        /**
+         * @return this node if there was no such key, null if the node is empty.
+         */
+        abstract Node remove(Object key, int hash, int shift);
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode empty = new BitmapNode(0, new Object[0]);
+
+        // bit is set for each of the 32 hash fragments that has an entry in the node
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & levelMask);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) * 2;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = index(bit);
+            Object entryKey = array[index];
+            if (entryKey == null) {
+                return ((Node) array[index + 1]).get(key, hash, shift + bitsPerLevel);
+            }
+            return entryKey.equals(key) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                newArray[index] = key;
+                newArray[index + 1] = value;
+                System.arraycopy(array, index, newArray, index + 2, array.length - index);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            Object entryKey = array[index];
+            Object entryValue = array[index + 1];
+            if (entryKey == null) {
+                Node child = (Node) entryValue;
+                Node newChild = child.put(key, value, hash, shift + bitsPerLevel, added);
+                return newChild == child ? this : withEntry(index, null, newChild);
+            }
+            if (entryKey.equals(key)) {
+                return entryValue == value ? this : withEntry(index, key, value);
+            }
+            added[0] = true;
+            Node child = createNode(entryKey, entryValue, key, value, hash, shift + bitsPerLevel);
+            return withEntry(index, null, child);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object entryKey = array[index];
+            if (entryKey == null) {
+                Node child = (Node) array[index + 1];
+                Node newChild = child.remove(key, hash, shift + bitsPerLevel);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild != null) {
+                    return withEntry(index, null, newChild);
+                }
+            } else if (!entryKey.equals(key)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        private BitmapNode withEntry(int index, Object key, Object value) {
+            Object[] newArray = array.clone();
+            newArray[index] = key;
+            newArray[index + 1] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node createNode(Object key1, Object value1, Object key2, Object value2, int hash2, int shift) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return empty.put(key1, value1, hash1, shift, added).put(key2, value2, hash2, shift, added);
+        }
+    }
+
+    /**
+     * Node with the keys that have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // key goes to another branch, so this node is moved down to a new bitmap node
+                BitmapNode parent = new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[]{null, this});
+                return parent.put(key, value, hash, shift, added);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[index + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            added[0] = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new CollisionNode(hash, newArray);
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Object[][] arrays = new Object[maxDepth][];
+        private final int[] positions = new int[maxDepth];
+        private int depth = -1;
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                push(root);
+            }
+            advance();
+        }
+
+        private void push(Node node) {
+            depth++;
+            arrays[depth] = node.array;
+            positions[depth] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+                if (position >= array.length) {
+                    arrays[depth] = null;
+                    depth--;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                Object key = array[position];
+                Object value = array[position + 1];
+                if (key == null) {
+                    push((Node) value);
+                } else {
+                    next = new SimpleImmutableEntry<>((K) key, (V) value);
+                    return;
+                }
+            }
+            next = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -6,4 +6,12 @@ public interface Connector<T> {
     void onClose();
 
     void onMessage(T data);
+
+    /**
+     * Returns false if the client does not keep up with the messages. Server may then skip the messages that are
+     * replaced by the later ones and send the latest state when it's notified by {@link ServerConnection#onWritable()}.
+     */
+    default boolean isWritable() {
+        return true;
+    }
 }
@@ -0,0 +1,17 @@
+package dzida.server.app.basic.connection;
+
+/**
+ * Connector that takes the messages of the server as objects. They are serialized with the protocol of the server
+ * only when they are written to the client.
+ */
+public interface MessageConnector<T> extends Connector<T> {
+
+    void onTypedMessage(Object message);
+
+    /**
+     * Sends the message that the server sends to many clients at once.
+     */
+    default void onSharedMessage(SharedMessage message) {
+        onTypedMessage(message.getMessage());
+    }
+}
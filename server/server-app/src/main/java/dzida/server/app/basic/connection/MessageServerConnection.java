@@ -0,0 +1,10 @@
+package dzida.server.app.basic.connection;
+
+/**
+ * Connection that receives the messages already parsed with the protocol of the server, so they don't have to be
+ * passed to the server as a text.
+ */
+public interface MessageServerConnection<T> extends ServerConnection<T> {
+
+    void sendMessage(Object message);
+}
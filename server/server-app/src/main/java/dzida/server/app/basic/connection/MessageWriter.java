@@ -0,0 +1,14 @@
+package dzida.server.app.basic.connection;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes a single message to the stream, so the message does not have to be converted to the text before it's sent.
+ */
+@FunctionalInterface
+public interface MessageWriter {
+
+    void writeTo(JsonWriter out) throws IOException;
+}
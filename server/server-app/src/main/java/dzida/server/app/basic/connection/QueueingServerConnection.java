@@ -0,0 +1,14 @@
+package dzida.server.app.basic.connection;
+
+/**
+ * Message connection that takes the parsed messages straight on the thread of the client connection. The connection
+ * validates the message there and passes it to the server thread by itself, e.g. through a queue that the server
+ * drains, so the server thread does not spend the time on anything else than the processing of the message.
+ */
+public interface QueueingServerConnection<T> extends MessageServerConnection<T> {
+
+    /**
+     * Called on the thread of the client connection, possibly concurrently with the calls on the server thread.
+     */
+    void enqueueMessage(Object message);
+}
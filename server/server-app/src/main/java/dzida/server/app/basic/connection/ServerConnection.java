@@ -5,4 +5,10 @@ public interface ServerConnection<T> {
     void send(T data);
 
     void close();
+
+    /**
+     * Called when the client that was not writable can take the messages again.
+     */
+    default void onWritable() {
+    }
 }
@@ -0,0 +1,105 @@
+package dzida.server.app.basic.connection;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Message of the server that is sent to many clients at once. The packet with the message is encoded once for each
+ * packet encoding and channel and the encoded packet is shared by all the clients that use that encoding and channel.
+ * Message is used only on the thread of the server, the server releases it after it was passed to all the clients.
+ */
+public final class SharedMessage {
+    private final Object message;
+    private final MessageWriter writer;
+    private final List<EncodedPacket> packets = new ArrayList<>(2);
+    private final List<Variant> variants = new ArrayList<>(1);
+    private boolean released;
+
+    public SharedMessage(Object message, MessageWriter writer) {
+        this.message = message;
+        this.writer = writer;
+    }
+
+    public Object getMessage() {
+        return message;
+    }
+
+    public MessageWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Returns the packet encoded for the given encoding and channel. The packet is encoded only by the first client that asks for it.
+     * Returned buffer shares the content with the other clients, but it has own indexes and is retained for the caller.
+     */
+    public ByteBuf getPacket(String encoding, String serverKey, int channelId, Supplier<ByteBuf> encoder) {
+        if (released) {
+            throw new IllegalStateException("Shared message is already released");
+        }
+        for (EncodedPacket packet : packets) {
+            if (packet.encoding.equals(encoding) && packet.serverKey.equals(serverKey) && packet.channelId == channelId) {
+                return packet.buffer.duplicate().retain();
+            }
+        }
+        ByteBuf buffer = encoder.get();
+        packets.add(new EncodedPacket(encoding, serverKey, channelId, buffer));
+        return buffer.duplicate().retain();
+    }
+
+    /**
+     * Returns the same message written in another form, e.g. with numeric type ids. The variant is created by the first
+     * client that asks for it, the other clients share it. Variants are released together with this message.
+     */
+    public SharedMessage getVariant(String name, MessageWriter writer) {
+        if (released) {
+            throw new IllegalStateException("Shared message is already released");
+        }
+        for (Variant variant : variants) {
+            if (variant.name.equals(name)) {
+                return variant.message;
+            }
+        }
+        SharedMessage message = new SharedMessage(this.message, writer);
+        variants.add(new Variant(name, message));
+        return message;
+    }
+
+    /**
+     * Releases the encoded packets. Packets that are still written to the clients are freed when the last write completes.
+     */
+    public void release() {
+        released = true;
+        packets.forEach(packet -> packet.buffer.release());
+        packets.clear();
+        variants.forEach(variant -> variant.message.release());
+        variants.clear();
+    }
+
+    private static final class Variant {
+        private final String name;
+        private final SharedMessage message;
+
+        private Variant(String name, SharedMessage message) {
+            this.name = name;
+            this.message = message;
+        }
+    }
+
+    private static final class EncodedPacket {
+        private final String encoding;
+        private final String serverKey;
+        private final int channelId;
+        private final ByteBuf buffer;
+
+        private EncodedPacket(String encoding, String serverKey, int channelId, ByteBuf buffer) {
+            this.encoding = Objects.requireNonNull(encoding);
+            this.serverKey = serverKey;
+            this.channelId = channelId;
+            this.buffer = buffer;
+        }
+    }
+}
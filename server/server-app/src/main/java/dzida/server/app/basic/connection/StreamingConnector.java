@@ -0,0 +1,31 @@
+package dzida.server.app.basic.connection;
+
+/**
+ * Connector that writes the messages of the servers straight to the packet that is sent to the client.
+ * If the client connected to the server with a channel id, the channel id is written to the packet instead of
+ * the server key. Each method returns the size in bytes of the packet with the message, so the traffic can be measured.
+ */
+public interface StreamingConnector extends Connector<String> {
+    /**
+     * Channel id of the servers to which the client connected without the channel id.
+     */
+    int noChannel = -1;
+
+    /**
+     * Sends a text message of the server.
+     */
+    int onMessage(String serverKey, int channelId, String data);
+
+    /**
+     * Sends a message of the server that is written straight to the packet.
+     */
+    int onMessage(String serverKey, int channelId, MessageWriter message);
+
+    /**
+     * Sends a message of the server that is sent to many clients at once. Connector may reuse the packet that was
+     * already encoded for the other clients.
+     */
+    default int onMessage(String serverKey, int channelId, SharedMessage message) {
+        return onMessage(serverKey, channelId, message.getWriter());
+    }
+}
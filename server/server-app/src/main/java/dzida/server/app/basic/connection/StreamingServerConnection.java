@@ -0,0 +1,16 @@
+package dzida.server.app.basic.connection;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Connection that reads the packet straight from the stream, so the packet is not materialized as a string.
+ */
+public interface StreamingServerConnection extends ServerConnection<String> {
+
+    /**
+     * @param packetBytes size of the packet as it was received, the reader does not tell how many bytes it read.
+     */
+    void send(JsonReader packet, int packetBytes) throws IOException;
+}
@@ -0,0 +1,228 @@
+package dzida.server.app.basic.unit;
+
+import dzida.server.app.basic.PersistentHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index that divides the plane into square cells. Each key is registered in all the cells that its area
+ * covers, for a move these are the cells of the bounding boxes of all its segments, so the moving key is found in
+ * any cell that it crosses. Queries return the candidates from the cells, callers check the exact positions.
+ * Index is immutable and queries have no side effects, so it can be read from any thread. A change copies only the
+ * cells of the key, the other cells are shared with the previous index.
+ *
+ * @param <K> key of the indexed entity, e.g. id of the character.
+ */
+public final class GridIndex<K> {
+    private static final Entry<?>[] emptyCell = new Entry<?>[0];
+
+    private final double cellSize;
+    private final PersistentHashMap<Long, Entry<K>[]> cells;
+    private final PersistentHashMap<K, Entry<K>> entries;
+
+    public GridIndex(double cellSize) {
+        this(cellSize, PersistentHashMap.empty(), PersistentHashMap.empty());
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size has to be positive: " + cellSize);
+        }
+    }
+
+    private GridIndex(double cellSize, PersistentHashMap<Long, Entry<K>[]> cells, PersistentHashMap<K, Entry<K>> entries) {
+        this.cellSize = cellSize;
+        this.cells = cells;
+        this.entries = entries;
+    }
+
+    public static <K> GridIndex<K> ofMoves(double cellSize, Map<K, Move> moves) {
+        GridIndex<K> index = new GridIndex<>(cellSize);
+        for (Map.Entry<K, Move> entry : moves.entrySet()) {
+            index = index.putMove(entry.getKey(), entry.getValue());
+        }
+        return index;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Registers the key in the cells that are covered by the rectangle. Previous area of the key is replaced.
+     */
+    public GridIndex<K> putRectangle(K key, double minX, double minY, double maxX, double maxY) {
+        CellsBuilder cellsBuilder = new CellsBuilder();
+        cellsBuilder.add(minX, minY, maxX, maxY);
+        return put(key, cellsBuilder.build());
+    }
+
+    /**
+     * Registers the key in the cells that are crossed by any segment of the move. Previous area of the key is replaced.
+     */
+    public GridIndex<K> putMove(K key, Move move) {
+        CellsBuilder cellsBuilder = new CellsBuilder();
+        double[] points = move.getPoints();
+        if (points.length == 2) {
+            cellsBuilder.add(points[0], points[1], points[0], points[1]);
+        }
+        for (int i = 2; i < points.length; i += 2) {
+            double x1 = points[i - 2];
+            double y1 = points[i - 1];
+            double x2 = points[i];
+            double y2 = points[i + 1];
+            cellsBuilder.add(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        }
+        return put(key, cellsBuilder.build());
+    }
+
+    public GridIndex<K> remove(K key) {
+        Entry<K> entry = entries.get(key);
+        if (entry == null) {
+            return this;
+        }
+        return new GridIndex<>(cellSize, removeFromCells(cells, entry), entries.minus(key));
+    }
+
+    /**
+     * Passes each key that may be in the rectangle exactly once.
+     */
+    public void forEachCandidate(double minX, double minY, double maxX, double maxY, Consumer<K> consumer) {
+        int minCellX = cell(minX);
+        int maxCellX = cell(maxX);
+        int minCellY = cell(minY);
+        int maxCellY = cell(maxY);
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                long cellKey = cellKey(cellX, cellY);
+                Entry<K>[] cellEntries = cells.get(cellKey);
+                if (cellEntries == null) {
+                    continue;
+                }
+                for (Entry<K> entry : cellEntries) {
+                    // the entry from many cells is passed only in the first of its cells that is visited
+                    if (entry.cells.length == 1 || entry.firstCellIn(minCellX, maxCellX, minCellY, maxCellY) == cellKey) {
+                        consumer.accept(entry.key);
+                    }
+                }
+            }
+        }
+    }
+
+    private GridIndex<K> put(K key, long[] keyCells) {
+        Entry<K> previous = entries.get(key);
+        PersistentHashMap<Long, Entry<K>[]> newCells = previous == null ? cells : removeFromCells(cells, previous);
+        Entry<K> entry = new Entry<>(key, keyCells);
+        for (long cellKey : keyCells) {
+            Entry<K>[] cellEntries = newCells.get(cellKey);
+            if (cellEntries == null) {
+                cellEntries = emptyCell();
+            }
+            Entry<K>[] newCellEntries = Arrays.copyOf(cellEntries, cellEntries.length + 1);
+            newCellEntries[cellEntries.length] = entry;
+            newCells = newCells.plus(cellKey, newCellEntries);
+        }
+        return new GridIndex<>(cellSize, newCells, entries.plus(key, entry));
+    }
+
+    private static <K> PersistentHashMap<Long, Entry<K>[]> removeFromCells(PersistentHashMap<Long, Entry<K>[]> cells, Entry<K> entry) {
+        for (long cellKey : entry.cells) {
+            Entry<K>[] cellEntries = cells.get(cellKey);
+            if (cellEntries.length == 1) {
+                cells = cells.minus(cellKey);
+                continue;
+            }
+            Entry<K>[] newCellEntries = Arrays.copyOf(cellEntries, cellEntries.length - 1);
+            int index = 0;
+            for (Entry<K> cellEntry : cellEntries) {
+                if (cellEntry != entry) {
+                    newCellEntries[index++] = cellEntry;
+                }
+            }
+            cells = cells.plus(cellKey, newCellEntries);
+        }
+        return cells;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Entry<K>[] emptyCell() {
+        return (Entry<K>[]) emptyCell;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static int cellX(long cellKey) {
+        return (int) (cellKey >> 32);
+    }
+
+    private static int cellY(long cellKey) {
+        return (int) cellKey;
+    }
+
+    private static final class Entry<K> {
+        final K key;
+        final long[] cells;
+
+        Entry(K key, long[] cells) {
+            this.key = key;
+            this.cells = cells;
+        }
+
+        /**
+         * @return the first of the cells of the entry that is visited by the query, queries visit the cells by x and
+         * then by y.
+         */
+        long firstCellIn(int minCellX, int maxCellX, int minCellY, int maxCellY) {
+            int firstX = Integer.MAX_VALUE;
+            int firstY = Integer.MAX_VALUE;
+            for (long cellKey : cells) {
+                int cellX = cellX(cellKey);
+                int cellY = cellY(cellKey);
+                boolean isVisited = cellX >= minCellX && cellX <= maxCellX && cellY >= minCellY && cellY <= maxCellY;
+                if (isVisited && (cellX < firstX || (cellX == firstX && cellY < firstY))) {
+                    firstX = cellX;
+                    firstY = cellY;
+                }
+            }
+            return cellKey(firstX, firstY);
+        }
+    }
+
+    private final class CellsBuilder {
+        long[] cells = new long[4];
+        int cellsCount;
+
+        void add(double minX, double minY, double maxX, double maxY) {
+            for (int cellX = cell(minX); cellX <= cell(maxX); cellX++) {
+                for (int cellY = cell(minY); cellY <= cell(maxY); cellY++) {
+                    add(cellKey(cellX, cellY));
+                }
+            }
+        }
+
+        private void add(long cellKey) {
+            for (int i = 0; i < cellsCount; i++) {
+                if (cells[i] == cellKey) {
+                    return;
+                }
+            }
+            if (cellsCount == cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            cells[cellsCount++] = cellKey;
+        }
+
+        long[] build() {
+            return Arrays.copyOf(cells, cellsCount);
+        }
+    }
+}
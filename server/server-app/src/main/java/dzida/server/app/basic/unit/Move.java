@@ -15,7 +15,7 @@ public final class Move {
      */
     private final long[] times;
 
-    private Move(double[] points, long times[]) {
+    Move(double[] points, long times[]) {
         this.points = points;
         this.times = times;
     }
@@ -111,6 +111,20 @@ public final class Move {
         return new Move(newPoints, newTimes);
     }
 
+    /**
+     * Returns the move with the points rounded to the fraction of the tile, so the move can be sent with the
+     * {@link MoveCodec} of the same precision without any loss.
+     *
+     * @param precision number of steps in a tile.
+     */
+    public Move quantize(int precision) {
+        double[] quantizedPoints = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            quantizedPoints[i] = MoveCodec.dequantize(MoveCodec.quantize(points[i], precision), precision);
+        }
+        return new Move(quantizedPoints, times);
+    }
+
     public Move compactHistory(long removeBefore) {
         int segment = findSegment(removeBefore);
 
@@ -224,4 +238,12 @@ public final class Move {
     private boolean isSinglePoint() {
         return Geometry2D.isSinglePoint(points);
     }
+
+    double[] getPoints() {
+        return points;
+    }
+
+    long[] getTimes() {
+        return times;
+    }
 }
@@ -0,0 +1,89 @@
+package dzida.server.app.basic.unit;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact form of the move that is sent to the clients: {@code [precision, startTime, [timeDeltas], [coordinates]]}.
+ * Times are the millis from the start time of the move, the start time itself is not repeated. Coordinates are
+ * integers, that are the number of steps of the given precision in a tile. Move that was quantized with
+ * {@link Move#quantize(int)} with the same precision is read back without any loss.
+ */
+public final class MoveCodec extends TypeAdapter<Move> {
+    private final int precision;
+
+    /**
+     * @param precision number of steps in a tile.
+     */
+    public MoveCodec(int precision) {
+        if (precision <= 0) {
+            throw new IllegalArgumentException("Precision has to be positive: " + precision);
+        }
+        this.precision = precision;
+    }
+
+    static long quantize(double coordinate, int precision) {
+        return Math.round(coordinate * precision);
+    }
+
+    static double dequantize(long coordinate, int precision) {
+        return (double) coordinate / precision;
+    }
+
+    @Override
+    public void write(JsonWriter out, Move move) throws IOException {
+        long[] times = move.getTimes();
+        double[] points = move.getPoints();
+        out.beginArray();
+        out.value(precision);
+        out.value(times[0]);
+        out.beginArray();
+        for (int i = 1; i < times.length; i++) {
+            out.value(times[i] - times[0]);
+        }
+        out.endArray();
+        out.beginArray();
+        for (double coordinate : points) {
+            out.value(quantize(coordinate, precision));
+        }
+        out.endArray();
+        out.endArray();
+    }
+
+    @Override
+    public Move read(JsonReader in) throws IOException {
+        in.beginArray();
+        int movePrecision = in.nextInt();
+        long startTime = in.nextLong();
+        long[] times = new long[8];
+        times[0] = startTime;
+        int timesCount = 1;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (timesCount == times.length) {
+                times = Arrays.copyOf(times, times.length * 2);
+            }
+            times[timesCount++] = startTime + in.nextLong();
+        }
+        in.endArray();
+        double[] points = new double[timesCount * 2];
+        int pointsCount = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (pointsCount == points.length) {
+                throw new IOException("Move has more coordinates than times");
+            }
+            points[pointsCount++] = dequantize(in.nextLong(), movePrecision);
+        }
+        in.endArray();
+        in.endArray();
+        if (pointsCount != points.length) {
+            throw new IOException("Move has " + pointsCount + " coordinates for " + timesCount + " times");
+        }
+        return new Move(points, Arrays.copyOf(times, timesCount));
+    }
+}
@@ -0,0 +1,283 @@
+package dzida.server.app.basic.unit;
+
+import dzida.server.app.basic.PersistentHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Moves stored as columns of primitive arrays, so the positions of all the moves can be evaluated at the given time
+ * without any allocation. Each move has a slot in which a segment of the move is kept: start and end point and times.
+ * The segment is the one in which the move starts, so a move that has a single segment is always evaluated from the
+ * columns, and only the time out of the kept segment looks up the segment in the move.
+ * Columns are immutable and reads have no side effects, so they can be read from any thread. A change copies only the
+ * chunk of {@value #chunkSize} slots that contains the slot of the move and the array of the chunk references, the
+ * other chunks are shared with the previous columns.
+ *
+ * @param <K> key of the move, e.g. id of the character.
+ */
+public final class MoveColumns<K> {
+    private static final int chunkBits = 5;
+    private static final int chunkSize = 1 << chunkBits;
+    private static final int chunkMask = chunkSize - 1;
+    private static final MoveColumns<?> emptyColumns = new MoveColumns<>(PersistentHashMap.empty(), new Chunk[0], 0, null);
+
+    private final PersistentHashMap<K, Integer> slots;
+    private final Chunk[] chunks;
+    private final int slotCount;
+    private final FreeSlot freeSlots;
+
+    private MoveColumns(PersistentHashMap<K, Integer> slots, Chunk[] chunks, int slotCount, FreeSlot freeSlots) {
+        this.slots = slots;
+        this.chunks = chunks;
+        this.slotCount = slotCount;
+        this.freeSlots = freeSlots;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K> MoveColumns<K> empty() {
+        return (MoveColumns<K>) emptyColumns;
+    }
+
+    public static <K> MoveColumns<K> of(Map<K, Move> moves) {
+        MoveColumns<K> columns = empty();
+        for (Map.Entry<K, Move> entry : moves.entrySet()) {
+            columns = columns.put(entry.getKey(), entry.getValue());
+        }
+        return columns;
+    }
+
+    /**
+     * Number of the slots, including the free ones. Arrays passed to {@link #getPositionsAtTime} need to have at least
+     * this length.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return slot of the move with the key or -1 if there is no such move.
+     */
+    public int getSlot(K key) {
+        Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return key of the move in the slot or null if the slot is free.
+     */
+    @SuppressWarnings("unchecked")
+    public K getKey(int slot) {
+        return (K) chunk(slot).keys[slot & chunkMask];
+    }
+
+    public MoveColumns<K> put(K key, Move move) {
+        Integer slot = slots.get(key);
+        PersistentHashMap<K, Integer> newSlots = slots;
+        FreeSlot newFreeSlots = freeSlots;
+        int newSlotCount = slotCount;
+        if (slot == null) {
+            if (freeSlots != null) {
+                slot = freeSlots.slot;
+                newFreeSlots = freeSlots.next;
+            } else {
+                slot = newSlotCount++;
+            }
+            newSlots = slots.plus(key, slot);
+        }
+        Chunk[] newChunks = copyChunks(newSlotCount);
+        Chunk chunk = newChunks[slot >> chunkBits];
+        chunk = chunk == null ? new Chunk() : chunk.copy();
+        chunk.set(slot & chunkMask, key, move);
+        newChunks[slot >> chunkBits] = chunk;
+        return new MoveColumns<>(newSlots, newChunks, newSlotCount, newFreeSlots);
+    }
+
+    public MoveColumns<K> remove(K key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return this;
+        }
+        Chunk[] newChunks = copyChunks(slotCount);
+        Chunk chunk = newChunks[slot >> chunkBits].copy();
+        chunk.clear(slot & chunkMask);
+        newChunks[slot >> chunkBits] = chunk;
+        return new MoveColumns<>(slots.minus(key), newChunks, slotCount, new FreeSlot(slot, freeSlots));
+    }
+
+    public double getXAtTime(int slot, long time) {
+        return chunk(slot).getXAtTime(slot & chunkMask, time);
+    }
+
+    public double getYAtTime(int slot, long time) {
+        return chunk(slot).getYAtTime(slot & chunkMask, time);
+    }
+
+    public boolean areInDistance(int slot1, int slot2, double distance, long time) {
+        double dx = getXAtTime(slot1, time) - getXAtTime(slot2, time);
+        double dy = getYAtTime(slot1, time) - getYAtTime(slot2, time);
+        return dx * dx + dy * dy <= distance * distance;
+    }
+
+    /**
+     * Writes the positions of all the moves at the given time to the arrays under the indexes of their slots. Free
+     * slots get NaN.
+     */
+    public void getPositionsAtTime(long time, double[] xs, double[] ys) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            Chunk chunk = chunk(slot);
+            int index = slot & chunkMask;
+            if (chunk.moves[index] == null) {
+                xs[slot] = Double.NaN;
+                ys[slot] = Double.NaN;
+                continue;
+            }
+            xs[slot] = chunk.getXAtTime(index, time);
+            ys[slot] = chunk.getYAtTime(index, time);
+        }
+    }
+
+    private Chunk chunk(int slot) {
+        return chunks[slot >> chunkBits];
+    }
+
+    private Chunk[] copyChunks(int slotCount) {
+        int chunksCount = (slotCount + chunkMask) >> chunkBits;
+        return Arrays.copyOf(chunks, Math.max(chunksCount, chunks.length));
+    }
+
+    /**
+     * Same as the segment search of the {@link Move}, limited to the segments between the points.
+     */
+    private static int findSegment(long[] times, long time) {
+        if (times.length == 1) {
+            return 1;
+        }
+        int index = Arrays.binarySearch(times, time);
+        // first point with the time that is greater than the given time
+        int segment;
+        if (index >= 0) {
+            segment = index + 1;
+            while (segment < times.length && times[segment] <= time) {
+                segment++;
+            }
+        } else {
+            segment = -index - 1;
+        }
+        return Math.max(1, Math.min(segment, times.length - 1));
+    }
+
+    private static double ratio(long startTime, long endTime, long time) {
+        if (time >= endTime) {
+            return 1;
+        }
+        if (time <= startTime) {
+            return 0;
+        }
+        return (double) (time - startTime) / (endTime - startTime);
+    }
+
+    private static double interpolate(double v1, double v2, double ratio) {
+        return v1 + (v2 - v1) * ratio;
+    }
+
+    /**
+     * Slots of the columns, they are changed only before the chunk is published in the new columns.
+     */
+    private static final class Chunk {
+        final Object[] keys;
+        final Move[] moves;
+        final long[] startTimes;
+        final long[] endTimes;
+        final double[] startXs;
+        final double[] startYs;
+        final double[] endXs;
+        final double[] endYs;
+
+        Chunk() {
+            this(new Object[chunkSize], new Move[chunkSize], new long[chunkSize], new long[chunkSize],
+                    new double[chunkSize], new double[chunkSize], new double[chunkSize], new double[chunkSize]);
+        }
+
+        private Chunk(Object[] keys, Move[] moves, long[] startTimes, long[] endTimes,
+                      double[] startXs, double[] startYs, double[] endXs, double[] endYs) {
+            this.keys = keys;
+            this.moves = moves;
+            this.startTimes = startTimes;
+            this.endTimes = endTimes;
+            this.startXs = startXs;
+            this.startYs = startYs;
+            this.endXs = endXs;
+            this.endYs = endYs;
+        }
+
+        Chunk copy() {
+            return new Chunk(keys.clone(), moves.clone(), startTimes.clone(), endTimes.clone(),
+                    startXs.clone(), startYs.clone(), endXs.clone(), endYs.clone());
+        }
+
+        void set(int index, Object key, Move move) {
+            double[] points = move.getPoints();
+            long[] times = move.getTimes();
+            keys[index] = key;
+            moves[index] = move;
+            if (times.length == 1) {
+                startTimes[index] = endTimes[index] = times[0];
+                startXs[index] = endXs[index] = points[0];
+                startYs[index] = endYs[index] = points[1];
+                return;
+            }
+            startTimes[index] = times[0];
+            endTimes[index] = times[1];
+            startXs[index] = points[0];
+            startYs[index] = points[1];
+            endXs[index] = points[2];
+            endYs[index] = points[3];
+        }
+
+        void clear(int index) {
+            keys[index] = null;
+            moves[index] = null;
+        }
+
+        double getXAtTime(int index, long time) {
+            if (isInKeptSegment(index, time)) {
+                return interpolate(startXs[index], endXs[index], ratio(startTimes[index], endTimes[index], time));
+            }
+            return getCoordinateAtTime(moves[index], time, 0);
+        }
+
+        double getYAtTime(int index, long time) {
+            if (isInKeptSegment(index, time)) {
+                return interpolate(startYs[index], endYs[index], ratio(startTimes[index], endTimes[index], time));
+            }
+            return getCoordinateAtTime(moves[index], time, 1);
+        }
+
+        /**
+         * The kept segment is the first one, so it covers also the time before the move.
+         */
+        private boolean isInKeptSegment(int index, long time) {
+            return time < endTimes[index] || moves[index].getTimes().length <= 2;
+        }
+
+        private static double getCoordinateAtTime(Move move, long time, int coordinate) {
+            double[] points = move.getPoints();
+            long[] times = move.getTimes();
+            int segment = findSegment(times, time);
+            int start = segment - 1;
+            double ratio = ratio(times[start], times[segment], time);
+            return interpolate(points[start * 2 + coordinate], points[segment * 2 + coordinate], ratio);
+        }
+    }
+
+    private static final class FreeSlot {
+        final int slot;
+        final FreeSlot next;
+
+        FreeSlot(int slot, FreeSlot next) {
+            this.slot = slot;
+            this.next = next;
+        }
+    }
+}
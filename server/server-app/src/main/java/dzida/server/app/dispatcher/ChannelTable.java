@@ -0,0 +1,74 @@
+package dzida.server.app.dispatcher;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Channels of a single client connection. The channel id is made of the slot of the channel in the table and of the
+ * generation of the slot, that is increased each time the slot is freed. Freed slots are reused, so a client may open
+ * and close the channels forever, but a packet sent to the id of a closed channel is never routed to the channel
+ * that reuses the slot, as the generation of the id does not match.
+ * Channels are opened and looked up on the thread of the client connection, and closed also on the server executors,
+ * so the table is synchronized.
+ *
+ * @param <T> connector of the channel.
+ */
+final class ChannelTable<T> {
+    private static final int slotBits = 8;
+    static final int maxChannels = 1 << slotBits;
+    private static final int slotMask = maxChannels - 1;
+    // generation is kept in the rest of the bits, so the ids are never negative
+    private static final int generationMask = Integer.MAX_VALUE >>> slotBits;
+
+    private Object[] channels = new Object[0];
+    private int[] generations = new int[0];
+    private int[] freeSlots = new int[0];
+    private int freeSlotsCount;
+    private int usedSlotsCount;
+
+    /**
+     * @return id of the new channel, or -1 if all the channels are open.
+     */
+    synchronized int open(T channel) {
+        int slot;
+        if (freeSlotsCount > 0) {
+            slot = freeSlots[--freeSlotsCount];
+        } else if (usedSlotsCount < maxChannels) {
+            slot = usedSlotsCount++;
+            if (slot >= channels.length) {
+                int length = Math.min(maxChannels, Math.max(4, channels.length * 2));
+                channels = Arrays.copyOf(channels, length);
+                generations = Arrays.copyOf(generations, length);
+                freeSlots = Arrays.copyOf(freeSlots, length);
+            }
+        } else {
+            return -1;
+        }
+        channels[slot] = channel;
+        return generations[slot] << slotBits | slot;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    synchronized T get(int channelId) {
+        int slot = channelId & slotMask;
+        if (channelId < 0 || slot >= usedSlotsCount || channelId >>> slotBits != generations[slot]) {
+            return null;
+        }
+        return (T) channels[slot];
+    }
+
+    /**
+     * Closes the channel if it's still open. Channel may be closed by both the client and the server, only the
+     * first call frees the slot.
+     */
+    synchronized void close(int channelId, T channel) {
+        if (channel == null || get(channelId) != channel) {
+            return;
+        }
+        int slot = channelId & slotMask;
+        channels[slot] = null;
+        generations[slot] = (generations[slot] + 1) & generationMask;
+        freeSlots[freeSlotsCount++] = slot;
+    }
+}
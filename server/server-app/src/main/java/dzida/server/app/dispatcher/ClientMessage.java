@@ -11,10 +11,24 @@ public interface ClientMessage {
     final class ConnectToServer implements ClientMessage {
         final String serverKey;
         final String connectionData;
+        /**
+         * Whether the client wants the messages of the server with numeric type ids, instead of the type names.
+         */
+        final boolean typeIds;
+        /**
+         * Whether the client wants a numeric channel id of the server, that is used in the packets instead of the server key.
+         */
+        final boolean channelIds;
 
         public ConnectToServer(String serverKey, String connectionData) {
+            this(serverKey, connectionData, false, false);
+        }
+
+        public ConnectToServer(String serverKey, String connectionData, boolean typeIds, boolean channelIds) {
             this.serverKey = serverKey;
             this.connectionData = connectionData;
+            this.typeIds = typeIds;
+            this.channelIds = channelIds;
         }
     }
 
@@ -0,0 +1,107 @@
+package dzida.server.app.dispatcher;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Limits of the messages that a single client connection may send, as token buckets. The connection limit applies to
+ * every message in the packets, message type limits apply to the messages to the servers registered with a protocol
+ * and to the dispatcher commands. Messages over the limit are dropped, or the client is disconnected if the policy says so.
+ */
+public final class RateLimitPolicy {
+    private static final RateLimitPolicy unlimited = new RateLimitPolicy(null, ImmutableMap.of(), false);
+
+    @Nullable
+    private final Limit connectionLimit;
+    private final Map<String, Limit> messageTypeLimits;
+    private final boolean disconnectOnViolation;
+
+    public RateLimitPolicy(@Nullable Limit connectionLimit, Map<String, Limit> messageTypeLimits, boolean disconnectOnViolation) {
+        this.connectionLimit = connectionLimit;
+        this.messageTypeLimits = ImmutableMap.copyOf(messageTypeLimits);
+        this.disconnectOnViolation = disconnectOnViolation;
+    }
+
+    public static RateLimitPolicy unlimited() {
+        return unlimited;
+    }
+
+    /**
+     * @param connectionLimit limit in the form of {@code rate/burst}, empty means no limit.
+     * @param messageTypeLimits comma separated limits in the form of {@code Type=rate/burst}.
+     */
+    public static RateLimitPolicy parse(String connectionLimit, String messageTypeLimits, boolean disconnectOnViolation) {
+        Map<String, String> typeLimits = Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(messageTypeLimits);
+        ImmutableMap.Builder<String, Limit> parsedTypeLimits = ImmutableMap.builder();
+        typeLimits.forEach((type, limit) -> parsedTypeLimits.put(type, Limit.parse(limit)));
+        Limit parsedConnectionLimit = connectionLimit.trim().isEmpty() ? null : Limit.parse(connectionLimit);
+        return new RateLimitPolicy(parsedConnectionLimit, parsedTypeLimits.build(), disconnectOnViolation);
+    }
+
+    @Nullable
+    Limit getConnectionLimit() {
+        return connectionLimit;
+    }
+
+    @Nullable
+    Limit getMessageTypeLimit(String messageType) {
+        return messageTypeLimits.get(messageType);
+    }
+
+    boolean hasMessageTypeLimits() {
+        return !messageTypeLimits.isEmpty();
+    }
+
+    boolean isDisconnectOnViolation() {
+        return disconnectOnViolation;
+    }
+
+    @Override
+    public String toString() {
+        return "connection: " + (connectionLimit == null ? "unlimited" : connectionLimit) +
+                ", message types: " + messageTypeLimits +
+                ", disconnect on violation: " + disconnectOnViolation;
+    }
+
+    /**
+     * Bucket refills with the given number of messages per second and holds at most the burst number of messages.
+     */
+    public static final class Limit {
+        private final double messagesPerSecond;
+        private final int burst;
+
+        public Limit(double messagesPerSecond, int burst) {
+            if (messagesPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Limit has to have a positive rate and a burst of at least one message");
+            }
+            this.messagesPerSecond = messagesPerSecond;
+            this.burst = burst;
+        }
+
+        static Limit parse(String limit) {
+            int separator = limit.indexOf('/');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Limit has to be in the form of rate/burst, but was: " + limit);
+            }
+            double rate = Double.parseDouble(limit.substring(0, separator).trim());
+            int burst = Integer.parseInt(limit.substring(separator + 1).trim());
+            return new Limit(rate, burst);
+        }
+
+        double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        int getBurst() {
+            return burst;
+        }
+
+        @Override
+        public String toString() {
+            return messagesPerSecond + "/" + burst;
+        }
+    }
+}
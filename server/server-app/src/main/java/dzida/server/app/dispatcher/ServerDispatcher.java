@@ -1,46 +1,115 @@
 package dzida.server.app.dispatcher;
 
+import com.google.common.base.Ticker;
+import com.google.common.base.Utf8;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import dzida.server.app.basic.Result;
 import dzida.server.app.basic.connection.Connector;
+import dzida.server.app.basic.connection.MessageConnector;
+import dzida.server.app.basic.connection.MessageServerConnection;
+import dzida.server.app.basic.connection.MessageWriter;
+import dzida.server.app.basic.connection.QueueingServerConnection;
 import dzida.server.app.basic.connection.Server;
 import dzida.server.app.basic.connection.ServerConnection;
+import dzida.server.app.basic.connection.SharedMessage;
+import dzida.server.app.basic.connection.StreamingConnector;
+import dzida.server.app.basic.connection.StreamingServerConnection;
 import dzida.server.app.basic.connection.VerifyingConnectionServer;
+import dzida.server.app.metrics.Histogram;
+import dzida.server.app.metrics.MessageTypeMetrics;
+import dzida.server.app.metrics.Metrics;
 import dzida.server.app.protocol.json.JsonProtocol;
+import dzida.server.app.protocol.json.JsonStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 import static com.nurkiewicz.typeof.TypeOf.whenTypeOf;
 
+/**
+ * Dispatcher is called on the threads of the client connections. Each server is called only on its own executor,
+ * so a server that is busy does not stall the connections to the other servers.
+ * Packets are read as a stream. Messages to the servers that are registered with a protocol are parsed on the
+ * connection thread, straight from the packet. Messages from those servers are written straight to the packet
+ * if the client connector is a {@link StreamingConnector}.
+ * Messages of each client are rate limited with the {@link RateLimitPolicy} before they are dispatched, so a client
+ * that floods the server does not take the time of the servers shared with the other clients.
+ * Client may ask for a channel id when it connects to a server. Packets of both sides then have the numeric channel id
+ * instead of the server key, and the messages of the client are routed by the {@link ChannelTable}.
+ * Messages of the servers with a protocol are measured by their type, in {@code dispatcher.in} and {@code dispatcher.out}
+ * {@link MessageTypeMetrics}, text messages of the other servers are measured by the server key. Sizes are in UTF-8 or
+ * binary bytes as on the wire. Size of the parsed incoming messages is not known, as they are read from the packet as
+ * a stream, so the size of the whole incoming packets is in {@code dispatcher.in.packetBytes}.
+ */
 public class ServerDispatcher implements Server<String> {
+    private static final Logger log = LoggerFactory.getLogger(ServerDispatcher.class);
     private static final String dispatcherServerKey = "dispatcher";
     private static final Type packetType = new TypeToken<List<ServerMessage>>() {
     }.getType();
 
     private final Gson serializer;
     private final JsonProtocol dispatcherSerializer;
-    private final Map<String, VerifyingConnectionServer<String, String>> servers;
+    private final Executor defaultExecutor;
+    private final Map<String, RegisteredServer> servers;
+    private final RateLimiting rateLimiting;
+    private final MessageTraffic messageTraffic;
 
     public ServerDispatcher() {
-        servers = new HashMap<>();
+        this(MoreExecutors.directExecutor());
+    }
+
+    public ServerDispatcher(Executor defaultExecutor) {
+        this(defaultExecutor, RateLimitPolicy.unlimited(), new Metrics());
+    }
+
+    public ServerDispatcher(Executor defaultExecutor, RateLimitPolicy rateLimitPolicy, Metrics metrics) {
+        this(defaultExecutor, rateLimitPolicy, metrics, Ticker.systemTicker());
+    }
+
+    ServerDispatcher(Executor defaultExecutor, RateLimitPolicy rateLimitPolicy, Metrics metrics, Ticker ticker) {
+        this.defaultExecutor = defaultExecutor;
+        servers = new ConcurrentHashMap<>();
+        rateLimiting = new RateLimiting(rateLimitPolicy, ticker,
+                metrics.counter("dispatcher.rateLimitedMessages"),
+                metrics.counter("dispatcher.rateLimitDisconnections"));
+        messageTraffic = new MessageTraffic(new MessageTypeMetrics(metrics, "dispatcher.in"), new MessageTypeMetrics(metrics, "dispatcher.out"),
+                metrics.histogram("dispatcher.in.packetBytes"));
 
         serializer = new GsonBuilder().registerTypeAdapter(ServerMessage.class, new TypeAdapter<ServerMessage>() {
             @Override
             public void write(JsonWriter out, ServerMessage serverMessage) throws IOException {
-                out.beginArray()
-                        .value(serverMessage.serverKey)
-                        .value(serverMessage.data)
+                out.beginArray();
+                if (serverMessage.channelId >= 0) {
+                    out.value(serverMessage.channelId);
+                } else {
+                    out.value(serverMessage.serverKey);
+                }
+                out.value(serverMessage.data)
                         .endArray();
             }
 
@@ -50,64 +119,168 @@ public class ServerDispatcher implements Server<String> {
                 String serverKey = in.nextString();
                 String data = in.nextString();
                 in.endArray();
-                return new ServerMessage(serverKey, data);
+                return new ServerMessage(serverKey, StreamingConnector.noChannel, data);
             }
         }).create();
         dispatcherSerializer = JsonProtocol.create(ClientMessage.classes, dzida.server.app.dispatcher.ServerMessage.classes);
     }
 
     public void addServer(String serverKey, VerifyingConnectionServer<String, String> server) {
-        servers.put(serverKey, server);
+        addServer(serverKey, server, defaultExecutor);
+    }
+
+    /**
+     * @param executor executor on which all the calls to the server and to the server connections are made.
+     */
+    public void addServer(String serverKey, VerifyingConnectionServer<String, String> server, Executor executor) {
+        servers.put(serverKey, new RegisteredServer(server, executor, null));
+    }
+
+    /**
+     * @param protocol protocol with which the messages to the server are parsed. Server has to open {@link MessageServerConnection}s.
+     */
+    public void addServer(String serverKey, VerifyingConnectionServer<String, String> server, Executor executor, JsonProtocol protocol) {
+        servers.put(serverKey, new RegisteredServer(server, executor, protocol));
     }
 
     public void removeServer(String serverKey) {
-        System.out.println("remove server:" + serverKey);
         servers.remove(serverKey);
+        log.info("Removed server {}", serverKey);
     }
 
     @Override
     public void onConnection(Connector<String> connector) {
-        connector.onOpen(new DispatcherConnection(connector, serializer, dispatcherSerializer, servers));
+        connector.onOpen(new DispatcherConnection(connector, serializer, dispatcherSerializer, servers, rateLimiting, messageTraffic));
     }
 
-    private static final class DispatcherConnection implements ServerConnection<String> {
-        private final Map<String, ServerConnection<String>> connectionsToServers = new HashMap<>();
+    private static final class DispatcherConnection implements StreamingServerConnection {
+        private final Map<String, ServerConnector> connectionsToServers = new ConcurrentHashMap<>();
         private final Connector<String> connectionHandler;
         private final Gson serializer;
         private final JsonProtocol dispatcherSerializer;
-        private final Map<String, VerifyingConnectionServer<String, String>> servers;
+        private final Map<String, RegisteredServer> servers;
+        private final RateLimiting rateLimiting;
+        private final MessageTraffic messageTraffic;
+        @Nullable
+        private final TokenBucket connectionBucket;
+        private final Map<String, TokenBucket> messageTypeBuckets = new HashMap<>();
+        private boolean disconnectedForViolation;
+        private final ChannelTable<ServerConnector> channels = new ChannelTable<>();
 
-        private DispatcherConnection(Connector<String> connectionHandler, Gson serializer, JsonProtocol dispatcherSerializer, Map<String, VerifyingConnectionServer<String, String>> servers) {
+        private DispatcherConnection(Connector<String> connectionHandler, Gson serializer, JsonProtocol dispatcherSerializer, Map<String, RegisteredServer> servers,
+                                     RateLimiting rateLimiting, MessageTraffic messageTraffic) {
             this.connectionHandler = connectionHandler;
             this.serializer = serializer;
             this.dispatcherSerializer = dispatcherSerializer;
             this.servers = servers;
+            this.rateLimiting = rateLimiting;
+            this.messageTraffic = messageTraffic;
+            RateLimitPolicy.Limit connectionLimit = rateLimiting.policy.getConnectionLimit();
+            connectionBucket = connectionLimit == null ? null : new TokenBucket(connectionLimit, rateLimiting.ticker.read());
         }
 
         @Override
         public void send(String packet) {
-            List<ServerMessage> serverMessages = serializer.fromJson(packet, packetType);
-            serverMessages.forEach(serverMessage -> {
-                if (Objects.equals(serverMessage.serverKey, dispatcherServerKey)) {
-                    handleCommand(serverMessage.data);
-                    return;
+            try {
+                send(new JsonReader(new StringReader(packet)), Utf8.encodedLength(packet));
+            } catch (IOException e) {
+                throw new JsonSyntaxException(e);
+            }
+        }
+
+        /**
+         * Rest of the packet is dropped if the client is disconnected because it exceeded the rate limit.
+         */
+        @Override
+        public void send(JsonReader packet, int packetBytes) throws IOException {
+            if (disconnectedForViolation) return;
+            messageTraffic.inboundPacketBytes.record(packetBytes);
+            packet.beginArray();
+            while (packet.hasNext()) {
+                packet.beginArray();
+                boolean isChannel = packet.peek() == JsonToken.NUMBER;
+                int channelId = isChannel ? packet.nextInt() : StreamingConnector.noChannel;
+                String serverKey = isChannel ? null : packet.nextString();
+                if (!tryAcquire(connectionBucket)) {
+                    packet.skipValue();
+                } else if (Objects.equals(serverKey, dispatcherServerKey)) {
+                    Object command = dispatcherSerializer.parseMessage(packet, this::tryAcquireMessageType);
+                    if (command != null) {
+                        handleCommand(command);
+                    }
+                } else {
+                    ServerConnector connector = isChannel ? getChannel(channelId) : connectionsToServers.get(serverKey);
+                    if (connector == null) {
+                        packet.skipValue();
+                    } else {
+                        connector.send(packet, this::tryAcquireMessageType);
+                    }
                 }
-                if (!connectionsToServers.containsKey(serverMessage.serverKey)) return;
-                connectionsToServers.get(serverMessage.serverKey).send(serverMessage.data);
-            });
+                if (disconnectedForViolation) return;
+                packet.endArray();
+            }
+            packet.endArray();
+        }
+
+        @Nullable
+        private ServerConnector getChannel(int channelId) {
+            return channels.get(channelId);
+        }
+
+        /**
+         * @return id of the new channel, or no channel if the client has too many channels open already.
+         */
+        private int openChannel(ServerConnector connector) {
+            int channelId = channels.open(connector);
+            return channelId < 0 ? StreamingConnector.noChannel : channelId;
+        }
+
+        private void closeChannel(ServerConnector connector) {
+            if (connector.channelId != StreamingConnector.noChannel) {
+                channels.close(connector.channelId, connector);
+            }
+        }
+
+        private boolean tryAcquireMessageType(String messageType) {
+            if (!rateLimiting.policy.hasMessageTypeLimits()) return true;
+            TokenBucket bucket = messageTypeBuckets.get(messageType);
+            if (bucket == null) {
+                RateLimitPolicy.Limit limit = rateLimiting.policy.getMessageTypeLimit(messageType);
+                if (limit == null) return true;
+                bucket = new TokenBucket(limit, rateLimiting.ticker.read());
+                messageTypeBuckets.put(messageType, bucket);
+            }
+            return tryAcquire(bucket);
+        }
+
+        private boolean tryAcquire(@Nullable TokenBucket bucket) {
+            if (bucket == null || bucket.tryAcquire(rateLimiting.ticker.read())) {
+                return true;
+            }
+            rateLimiting.rateLimitedMessages.increment();
+            if (rateLimiting.policy.isDisconnectOnViolation() && !disconnectedForViolation) {
+                disconnectedForViolation = true;
+                rateLimiting.rateLimitDisconnections.increment();
+                connectionHandler.onClose();
+            }
+            return false;
         }
 
         @Override
         public void close() {
-            connectionsToServers.values().forEach(ServerConnection::close);
+            connectionsToServers.values().forEach(ServerConnector::close);
+        }
+
+        @Override
+        public void onWritable() {
+            connectionsToServers.values().forEach(ServerConnector::notifyWritable);
         }
 
-        private void handleCommand(String data) {
-            Object message = dispatcherSerializer.parseMessage(data);
+        private void handleCommand(Object message) {
             whenTypeOf(message)
                     .is(ClientMessage.ConnectToServer.class)
                     .then(connectToServer -> {
-                        connectToServer(connectToServer.serverKey, connectToServer.connectionData);
+                        connectToServer(connectToServer.serverKey, connectToServer.connectionData, connectToServer.typeIds, connectToServer.channelIds);
                     })
                     .is(ClientMessage.DisconnectFromServer.class)
                     .then(disconnectFromServer -> {
@@ -115,74 +288,304 @@ public class ServerDispatcher implements Server<String> {
                     });
         }
 
-        private void connectToServer(String serverKey, String connectionData) {
-            VerifyingConnectionServer<String, String> serverOptional = servers.get(serverKey);
+        private void connectToServer(String serverKey, String connectionData, boolean typeIds, boolean channelIds) {
+            RegisteredServer registeredServer = servers.get(serverKey);
 
-            if (serverOptional == null) {
+            if (registeredServer == null) {
                 String errorMessage = "Could not find a server with the key: " + serverKey + ".";
                 sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.NotConnectedToServer(serverKey, errorMessage));
                 return;
             }
 
-            Connector<String> connector = new ServerConnector(serverKey, this);
-            Result result = servers.get(serverKey).onConnection(connector, connectionData);
-            result.consume(() -> {
-            }, error -> {
-                sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.NotConnectedToServer(serverKey, error.getMessage()));
+            // Connector is registered before the server accepts it, so messages sent right after the connection request
+            // are queued on the server executor after the connection instead of being dropped.
+            // type ids can be used only with the servers that have a protocol, other servers send text messages
+            boolean useTypeIds = typeIds && registeredServer.protocol != null;
+            ServerConnector connector = new ServerConnector(serverKey, this, registeredServer.executor, registeredServer.protocol, useTypeIds);
+            if (channelIds) {
+                connector.channelId = openChannel(connector);
+            }
+            connectionsToServers.put(serverKey, connector);
+            registeredServer.executor.execute(() -> {
+                Result result = registeredServer.server.onConnection(connector, connectionData);
+                result.consume(() -> {
+                }, error -> {
+                    connectionsToServers.remove(serverKey, connector);
+                    closeChannel(connector);
+                    sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.NotConnectedToServer(serverKey, error.getMessage()));
+                });
             });
         }
 
-        private void sendToClient(String serverKey, String data) {
-            List<ServerMessage> messagesToServers = ImmutableList.of(new ServerMessage(serverKey, data));
+        /**
+         * @return size of the packet with the message.
+         */
+        private int sendToClient(String serverKey, int channelId, SharedMessage message) {
+            if (connectionHandler instanceof StreamingConnector) {
+                return ((StreamingConnector) connectionHandler).onMessage(serverKey, channelId, message);
+            }
+            return sendToClient(serverKey, channelId, message.getWriter());
+        }
+
+        private int sendToClient(String serverKey, int channelId, MessageWriter message) {
+            if (connectionHandler instanceof StreamingConnector) {
+                return ((StreamingConnector) connectionHandler).onMessage(serverKey, channelId, message);
+            }
+            StringWriter data = new StringWriter();
+            try {
+                message.writeTo(new JsonWriter(data));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sendToClient(serverKey, channelId, data.toString());
+        }
+
+        private int sendToClient(String serverKey, int channelId, String data) {
+            if (connectionHandler instanceof StreamingConnector) {
+                return ((StreamingConnector) connectionHandler).onMessage(serverKey, channelId, data);
+            }
+            List<ServerMessage> messagesToServers = ImmutableList.of(new ServerMessage(serverKey, channelId, data));
             String packet = serializer.toJson(messagesToServers, packetType);
             connectionHandler.onMessage(packet);
+            return Utf8.encodedLength(packet);
         }
 
         private void sendDispatcherMessageToClient(Object message) {
-            String data = dispatcherSerializer.serializeMessage(message);
-            sendToClient(dispatcherServerKey, data);
+            sendToClient(dispatcherServerKey, StreamingConnector.noChannel, out -> dispatcherSerializer.writeMessage(message, out));
         }
 
         private void disconnectFromServer(String serverKey) {
-            if (!connectionsToServers.containsKey(serverKey)) return;
-            connectionsToServers.get(serverKey).close();
-            connectionsToServers.remove(serverKey);
+            ServerConnector connector = connectionsToServers.remove(serverKey);
+            if (connector == null) return;
+            closeChannel(connector);
+            connector.close();
         }
     }
 
-    private final static class ServerConnector implements Connector<String> {
+    /**
+     * Connector is called by the server on its executor, the connection to the server is also called only on that executor.
+     * If the client asked for the type ids, the type tables of the protocol are sent to the client with the confirmation
+     * of the connection, and the messages of the server are written with the type ids.
+     * Channel id is set on the connection thread before the connector is passed to the server.
+     * Messages to a {@link QueueingServerConnection} are passed to it right on the connection thread once it's open.
+     * Parsed messages that come before the server opens the connection are kept until it's open and then passed the
+     * same way as the later ones, so they are not delivered around the queue of a {@link QueueingServerConnection}.
+     */
+    private final static class ServerConnector implements MessageConnector<String> {
+        private static final String typeIdsVariant = "typeIds";
+        private static final int maxPendingMessages = 32;
         private final String serverKey;
         private final DispatcherConnection dispatcherConnection;
+        private final Executor executor;
+        @Nullable
+        private final JsonProtocol protocol;
+        private final boolean typeIds;
+        private int channelId = StreamingConnector.noChannel;
+        private ServerConnection<String> serverConnection;
+        @Nullable
+        private volatile QueueingServerConnection<String> queueingConnection;
+        /**
+         * Messages parsed before the connection was opened, null once it's open. Guarded by the connector.
+         */
+        @Nullable
+        private List<Object> pendingMessages = new ArrayList<>();
 
-        private ServerConnector(String serverKey, DispatcherConnection dispatcherConnection) {
+        private ServerConnector(String serverKey, DispatcherConnection dispatcherConnection, Executor executor, @Nullable JsonProtocol protocol, boolean typeIds) {
             this.serverKey = serverKey;
             this.dispatcherConnection = dispatcherConnection;
+            this.executor = executor;
+            this.protocol = protocol;
+            this.typeIds = typeIds;
         }
 
         @Override
         public void onOpen(ServerConnection<String> serverConnection) {
-            dispatcherConnection.sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.ConnectedToServer(serverKey));
-            dispatcherConnection.connectionsToServers.put(serverKey, serverConnection);
+            if (protocol != null && !(serverConnection instanceof MessageServerConnection)) {
+                throw new IllegalStateException("Server " + serverKey + " is registered with a protocol, so it has to open a message connection");
+            }
+            dispatcherConnection.sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.ConnectedToServer(
+                    serverKey,
+                    typeIds ? protocol.getInputTypeNames() : null,
+                    typeIds ? protocol.getOutputTypeNames() : null,
+                    channelId == StreamingConnector.noChannel ? null : channelId));
+            this.serverConnection = serverConnection;
+            QueueingServerConnection<String> queueingConnection = serverConnection instanceof QueueingServerConnection
+                    ? (QueueingServerConnection<String>) serverConnection : null;
+            // the queueing connection is published after the pending messages are passed, so a message that comes
+            // meanwhile waits for the lock and is not passed before them
+            synchronized (this) {
+                for (Object message : pendingMessages) {
+                    passMessage(message, queueingConnection);
+                }
+                pendingMessages = null;
+                this.queueingConnection = queueingConnection;
+            }
         }
 
         @Override
         public void onClose() {
             dispatcherConnection.sendDispatcherMessageToClient(new dzida.server.app.dispatcher.ServerMessage.DisconnectedFromServer(serverKey));
-            dispatcherConnection.connectionsToServers.remove(serverKey);
+            dispatcherConnection.connectionsToServers.remove(serverKey, this);
+            dispatcherConnection.closeChannel(this);
+            serverConnection = null;
+            queueingConnection = null;
         }
 
         @Override
         public void onMessage(String data) {
-            dispatcherConnection.sendToClient(serverKey, data);
+            long start = System.nanoTime();
+            int bytes = dispatcherConnection.sendToClient(serverKey, channelId, data);
+            dispatcherConnection.messageTraffic.outbound.record(serverKey, bytes, System.nanoTime() - start);
+        }
+
+        @Override
+        public void onTypedMessage(Object message) {
+            if (protocol == null) {
+                throw new IllegalStateException("Server " + serverKey + " is registered without a protocol, so it has to send text messages");
+            }
+            long start = System.nanoTime();
+            int bytes;
+            if (typeIds) {
+                bytes = dispatcherConnection.sendToClient(serverKey, channelId, out -> protocol.writeMessageWithTypeId(message, out));
+            } else {
+                bytes = dispatcherConnection.sendToClient(serverKey, channelId, out -> protocol.writeMessage(message, out));
+            }
+            dispatcherConnection.messageTraffic.outbound.record(getTypeName(message), bytes, System.nanoTime() - start);
+        }
+
+        @Override
+        public void onSharedMessage(SharedMessage message) {
+            long start = System.nanoTime();
+            int bytes;
+            if (typeIds) {
+                Object typedMessage = message.getMessage();
+                bytes = dispatcherConnection.sendToClient(serverKey, channelId, message.getVariant(typeIdsVariant, out -> protocol.writeMessageWithTypeId(typedMessage, out)));
+            } else {
+                bytes = dispatcherConnection.sendToClient(serverKey, channelId, message);
+            }
+            // only the first client encodes the shared packet, for the other clients the time is of reusing the packet
+            dispatcherConnection.messageTraffic.outbound.record(getTypeName(message.getMessage()), bytes, System.nanoTime() - start);
+        }
+
+        @Override
+        public boolean isWritable() {
+            return dispatcherConnection.connectionHandler.isWritable();
+        }
+
+        /**
+         * Reads the message to the server from the packet. Message is parsed here if the server has a protocol,
+         * otherwise it's passed to the server as a text. Messages of the types rejected by the filter are skipped.
+         */
+        private void send(JsonReader packet, Predicate<String> messageTypeFilter) throws IOException {
+            if (protocol == null) {
+                long start = System.nanoTime();
+                String data = JsonStreams.readAsString(packet);
+                dispatcherConnection.messageTraffic.inbound.record(serverKey, Utf8.encodedLength(data), System.nanoTime() - start);
+                executor.execute(() -> {
+                    if (serverConnection == null) return;
+                    serverConnection.send(data);
+                });
+                return;
+            }
+            long start = System.nanoTime();
+            Object message = protocol.parseMessage(packet, messageTypeFilter);
+            if (message == null) return;
+            dispatcherConnection.messageTraffic.inbound.record(getTypeName(message), -1, System.nanoTime() - start);
+            QueueingServerConnection<String> queueingConnection = this.queueingConnection;
+            if (queueingConnection == null) {
+                synchronized (this) {
+                    if (pendingMessages != null) {
+                        // connection is not open yet, messages over the limit are dropped
+                        if (pendingMessages.size() < maxPendingMessages) {
+                            pendingMessages.add(message);
+                        }
+                        return;
+                    }
+                    queueingConnection = this.queueingConnection;
+                }
+            }
+            passMessage(message, queueingConnection);
+        }
+
+        private void passMessage(Object message, @Nullable QueueingServerConnection<String> queueingConnection) {
+            if (queueingConnection != null) {
+                queueingConnection.enqueueMessage(message);
+                return;
+            }
+            executor.execute(() -> {
+                if (serverConnection == null) return;
+                ((MessageServerConnection<String>) serverConnection).sendMessage(message);
+            });
+        }
+
+        private static String getTypeName(Object message) {
+            return message.getClass().getSimpleName();
+        }
+
+        private void notifyWritable() {
+            executor.execute(() -> {
+                if (serverConnection == null) return;
+                serverConnection.onWritable();
+            });
+        }
+
+        private void close() {
+            executor.execute(() -> {
+                if (serverConnection == null) return;
+                queueingConnection = null;
+                serverConnection.close();
+                serverConnection = null;
+            });
+        }
+    }
+
+    private final static class RateLimiting {
+        private final RateLimitPolicy policy;
+        private final Ticker ticker;
+        private final LongAdder rateLimitedMessages;
+        private final LongAdder rateLimitDisconnections;
+
+        private RateLimiting(RateLimitPolicy policy, Ticker ticker, LongAdder rateLimitedMessages, LongAdder rateLimitDisconnections) {
+            this.policy = policy;
+            this.ticker = ticker;
+            this.rateLimitedMessages = rateLimitedMessages;
+            this.rateLimitDisconnections = rateLimitDisconnections;
+        }
+    }
+
+    private final static class MessageTraffic {
+        private final MessageTypeMetrics inbound;
+        private final MessageTypeMetrics outbound;
+        private final Histogram inboundPacketBytes;
+
+        private MessageTraffic(MessageTypeMetrics inbound, MessageTypeMetrics outbound, Histogram inboundPacketBytes) {
+            this.inbound = inbound;
+            this.outbound = outbound;
+            this.inboundPacketBytes = inboundPacketBytes;
+        }
+    }
+
+    private final static class RegisteredServer {
+        private final VerifyingConnectionServer<String, String> server;
+        private final Executor executor;
+        @Nullable
+        private final JsonProtocol protocol;
+
+        private RegisteredServer(VerifyingConnectionServer<String, String> server, Executor executor, @Nullable JsonProtocol protocol) {
+            this.server = server;
+            this.executor = executor;
+            this.protocol = protocol;
         }
     }
 
     private final static class ServerMessage {
         private final String serverKey;
+        private final int channelId;
         private final String data;
 
-        private ServerMessage(String serverKey, String data) {
+        private ServerMessage(String serverKey, int channelId, String data) {
             this.serverKey = serverKey;
+            this.channelId = channelId;
             this.data = data;
         }
     }
@@ -2,6 +2,9 @@ package dzida.server.app.dispatcher;
 
 import com.google.common.collect.ImmutableSet;
 
+import javax.annotation.Nullable;
+import java.util.List;
+
 public interface ServerMessage {
     ImmutableSet<Class<?>> classes = ImmutableSet.of(
             ConnectedToServer.class,
@@ -11,9 +14,30 @@ public interface ServerMessage {
 
     final class ConnectedToServer implements ServerMessage {
         public final String serverKey;
+        /**
+         * Type names of the messages to and from the server at the positions of their ids. Present only if the client
+         * asked for the numeric type ids and the server has a protocol.
+         */
+        @Nullable
+        public final List<String> clientMessageTypes;
+        @Nullable
+        public final List<String> serverMessageTypes;
+        /**
+         * Id of the channel that is used instead of the server key in the packets of both sides. Present only if
+         * the client asked for the channel id.
+         */
+        @Nullable
+        public final Integer channelId;
 
         public ConnectedToServer(String serverKey) {
+            this(serverKey, null, null, null);
+        }
+
+        public ConnectedToServer(String serverKey, @Nullable List<String> clientMessageTypes, @Nullable List<String> serverMessageTypes, @Nullable Integer channelId) {
             this.serverKey = serverKey;
+            this.clientMessageTypes = clientMessageTypes;
+            this.serverMessageTypes = serverMessageTypes;
+            this.channelId = channelId;
         }
     }
 
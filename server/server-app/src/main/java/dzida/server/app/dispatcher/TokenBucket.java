@@ -0,0 +1,33 @@
+package dzida.server.app.dispatcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucket is not thread safe, it's used only on the thread of the client connection.
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(RateLimitPolicy.Limit limit, long nowNanos) {
+        capacity = limit.getBurst();
+        tokensPerNano = limit.getMessagesPerSecond() / TimeUnit.SECONDS.toNanos(1);
+        tokens = capacity;
+        lastRefillNanos = nowNanos;
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
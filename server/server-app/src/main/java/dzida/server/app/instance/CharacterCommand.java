@@ -26,6 +26,13 @@ public interface CharacterCommand {
 
     InstanceCommand getInstanceCommand(Id<Character> characterId);
 
+    /**
+     * Whether the parsed command has all the fields it needs. Called on the thread of the client connection.
+     */
+    default boolean isValid() {
+        return true;
+    }
+
     class Move implements CharacterCommand {
         public final double x;
         public final double y;
@@ -41,6 +48,11 @@ public interface CharacterCommand {
         public InstanceCommand getInstanceCommand(Id<Character> characterId) {
             return new MoveCommand(characterId, x, y, speed);
         }
+
+        @Override
+        public boolean isValid() {
+            return Double.isFinite(x) && Double.isFinite(y) && Double.isFinite(speed) && speed >= 0;
+        }
     }
 
     class UseSkillOnCharacter implements CharacterCommand {
@@ -56,6 +68,14 @@ public interface CharacterCommand {
         public InstanceCommand getInstanceCommand(Id<Character> characterId) {
             return new SkillUseOnCharacterCommand(characterId, skillId, target);
         }
+
+        /**
+         * The target may be omitted, then the nearest one in the range of the skill is used.
+         */
+        @Override
+        public boolean isValid() {
+            return skillId != null;
+        }
     }
 
     class BuildObject implements CharacterCommand {
@@ -73,6 +93,11 @@ public interface CharacterCommand {
         public InstanceCommand getInstanceCommand(Id<Character> characterId) {
             return new BuildObjectCommand(characterId, objectKindId, x, y);
         }
+
+        @Override
+        public boolean isValid() {
+            return objectKindId != null && Double.isFinite(x) && Double.isFinite(y);
+        }
     }
 
     class UseSkillOnWorldObject implements CharacterCommand {
@@ -88,6 +113,14 @@ public interface CharacterCommand {
         public InstanceCommand getInstanceCommand(Id<Character> characterId) {
             return new SkillUseOnWorldObjectCommand(characterId, skillId, target);
         }
+
+        /**
+         * The target may be omitted, then the nearest one in the range of the skill is used.
+         */
+        @Override
+        public boolean isValid() {
+            return skillId != null;
+        }
     }
 
     class EatApple implements CharacterCommand {
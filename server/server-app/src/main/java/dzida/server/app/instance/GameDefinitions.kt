@@ -5,9 +5,13 @@ import dzida.server.app.instance.skill.Skill
 import dzida.server.app.instance.world.`object`.WorldObjectKind
 
 
+/**
+ * @param movePrecision number of steps in a tile to which the coordinates of the moves are rounded.
+ */
 class GameDefinitions(
         private val skills: Map<Id<Skill>, Skill>,
-        private val worldObjectKinds: Map<Id<WorldObjectKind>, WorldObjectKind>
+        private val worldObjectKinds: Map<Id<WorldObjectKind>, WorldObjectKind>,
+        val movePrecision: Int
 ) {
     val BotSpeed = 1.0
     val PlayerSpeed = 4.0
@@ -1,37 +1,89 @@
 package dzida.server.app.instance;
 
+import com.google.common.collect.ImmutableSet;
 import dzida.server.app.Scheduler;
 import dzida.server.app.basic.entity.GeneralEntity;
+import dzida.server.app.basic.entity.Id;
 import dzida.server.app.instance.world.WorldObjectCreated;
 import dzida.server.app.instance.world.WorldObjectRemoved;
 import dzida.server.app.instance.world.object.WorldObject;
 import dzida.server.app.instance.world.object.WorldObjectKind;
+import dzida.server.app.time.TimeService;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 public class GameLogic {
     private final Scheduler scheduler;
     private final Instance instance;
+    private final TimeService timeService;
+    // scheduled decays are cancelled when the object is removed earlier or when the instance is stopped
+    private final Map<Id<WorldObject>, Future<?>> decayTasks = new HashMap<>();
+    private boolean stopped;
 
-    public GameLogic(
-            Scheduler scheduler, Instance instance) {
+    public GameLogic(Scheduler scheduler, Instance instance, TimeService timeService) {
         this.scheduler = scheduler;
         this.instance = instance;
+        this.timeService = timeService;
     }
 
-    public void start() {
+    /**
+     * @param decayingObjects objects restored from the snapshot that were decaying when the instance was hibernated,
+     *                        they decay in the time that was left.
+     */
+    public void start(Set<Id<WorldObject>> decayingObjects) {
+        instance.getState().getWorld().getWorldObjects().forEach((id, worldObject) -> {
+            if (decayingObjects.contains(id)) {
+                scheduleDecay(new GeneralEntity<>(id, worldObject));
+            }
+        });
         instance.subscribeChange((event -> {
-            if (!(event instanceof WorldObjectCreated)) {
+            if (stopped) {
                 return;
             }
-            WorldObjectCreated worldObjectCreated = (WorldObjectCreated) event;
-            GeneralEntity<WorldObject> worldObject = worldObjectCreated.getWorldObject();
-            WorldObjectKind kind = instance.getGameDefinitions().getObjectKind(worldObject.getData().getKind());
-            if (kind.getDecay() > 0) {
-                scheduler.schedule(() -> {
-                    instance.updateState(new WorldObjectRemoved(worldObject));
-                }, Duration.ofSeconds(kind.getDecay()));
+            if (event instanceof WorldObjectCreated) {
+                scheduleDecay(((WorldObjectCreated) event).getWorldObject());
+            } else if (event instanceof WorldObjectRemoved) {
+                cancelDecay(((WorldObjectRemoved) event).getWorldObject().getId());
             }
         }));
     }
+
+    public void stop() {
+        stopped = true;
+        decayTasks.values().forEach(decayTask -> decayTask.cancel(false));
+        decayTasks.clear();
+    }
+
+    /**
+     * Objects for which the decay is scheduled.
+     */
+    public Set<Id<WorldObject>> getDecayingObjects() {
+        return ImmutableSet.copyOf(decayTasks.keySet());
+    }
+
+    private void scheduleDecay(GeneralEntity<WorldObject> worldObject) {
+        WorldObjectKind kind = instance.getGameDefinitions().getObjectKind(worldObject.getData().getKind());
+        if (kind.getDecay() <= 0) {
+            return;
+        }
+        Instant decayTime = worldObject.getData().getCreated().plus(Duration.ofSeconds(kind.getDecay()));
+        long delay = Math.max(0, Duration.between(timeService.getCurrentTime(), decayTime).toMillis());
+        Future<?> decayTask = scheduler.schedule(() -> {
+            decayTasks.remove(worldObject.getId());
+            instance.updateState(new WorldObjectRemoved(worldObject));
+        }, delay);
+        decayTasks.put(worldObject.getId(), decayTask);
+    }
+
+    private void cancelDecay(Id<WorldObject> worldObjectId) {
+        Future<?> decayTask = decayTasks.remove(worldObjectId);
+        if (decayTask != null) {
+            decayTask.cancel(false);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package dzida.server.app.instance;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import dzida.server.app.Configuration;
 import dzida.server.app.Scheduler;
 import dzida.server.app.basic.Outcome;
@@ -34,24 +35,39 @@ import dzida.server.app.timesync.TimeServiceImpl;
 import dzida.server.app.user.User;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.ws.rs.NotSupportedException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Instance {
 
     private final Publisher<GameEvent> eventPublisher = new Publisher<>();
+    private final Publisher<List<GameEvent>> eventBatchPublisher = new Publisher<>();
+    // events of the current tick, they are published when the tick ends
+    private final List<GameEvent> tickEvents = new ArrayList<>();
 
     private final String instanceKey;
+    private final Scenario scenario;
     private final TimeService timeService;
     private final GameDefinitions gameDefinitions;
     private final GameLogic gameLogic;
+    // objects of the snapshot that decay when the instance is started
+    private final Set<Id<WorldObject>> restoredDecayingObjects;
 
     private GameState gameState;
+    private boolean inTick;
+    private long tickTime;
 
-    public Instance(String instanceKey, Scenario scenario, Scheduler scheduler, GameDefinitions gameDefinitions) {
+    /**
+     * @param snapshot state of the hibernated instance that is resumed, null if the instance is started for the first time.
+     */
+    public Instance(String instanceKey, Scenario scenario, Scheduler scheduler, GameDefinitions gameDefinitions, @Nullable InstanceSnapshot snapshot) {
         this.instanceKey = instanceKey;
+        this.scenario = scenario;
         this.gameDefinitions = gameDefinitions;
 
         Key<WorldMap> worldMapKey = scenario.getWorldMapKey();
@@ -67,10 +83,37 @@ public class Instance {
 
         gameState = new GameState(new CharacterState(), new WorldState(worldMap), new PositionState(collisionBitMap), new SkillSate(), new ParcelState());
 
-        this.gameLogic = new GameLogic(scheduler, this);
+        this.gameLogic = new GameLogic(scheduler, this, timeService);
 
-        updateState(createSpawningParcel(worldMap));
-        updateState(initGameObjects(worldMapKey, worldMapStore));
+        if (snapshot != null) {
+            updateState(snapshot.getEvents());
+            restoredDecayingObjects = snapshot.getDecayingObjects();
+        } else {
+            restoredDecayingObjects = ImmutableSet.of();
+            updateState(createSpawningParcel(worldMap));
+            updateState(initGameObjects(worldMapKey, worldMapStore));
+        }
+    }
+
+    /**
+     * Instance that starts from the given state instead of the state of the loaded world map.
+     *
+     * @param snapshot state of the hibernated instance that is applied on top of the initial state, may be null.
+     */
+    Instance(String instanceKey, Scenario scenario, Scheduler scheduler, GameDefinitions gameDefinitions, TimeService timeService, GameState initialState, @Nullable InstanceSnapshot snapshot) {
+        this.instanceKey = instanceKey;
+        this.scenario = scenario;
+        this.gameDefinitions = gameDefinitions;
+        this.timeService = timeService;
+        gameState = initialState;
+        gameLogic = new GameLogic(scheduler, this, timeService);
+
+        if (snapshot != null) {
+            updateState(snapshot.getEvents());
+            restoredDecayingObjects = snapshot.getDecayingObjects();
+        } else {
+            restoredDecayingObjects = ImmutableSet.of();
+        }
     }
 
     private ParcelChange.ParcelClaimed createSpawningParcel(WorldMap worldMap) {
@@ -97,7 +140,21 @@ public class Instance {
     }
 
     public void start() {
-        gameLogic.start();
+        gameLogic.start(restoredDecayingObjects);
+    }
+
+    /**
+     * Stops the scheduled changes of the instance, after that the state is not changed anymore.
+     */
+    public void stop() {
+        gameLogic.stop();
+    }
+
+    public InstanceSnapshot createSnapshot() {
+        List<GameEvent> events = new ArrayList<>(gameState.getParcel().getParcelChanges());
+        gameState.getWorld().getWorldObjects().forEach((id, worldObject) ->
+                events.add(new WorldObjectCreated(new GeneralEntity<>(id, worldObject))));
+        return new InstanceSnapshot(scenario, events, gameLogic.getDecayingObjects());
     }
 
     public GameState getState() {
@@ -108,21 +165,66 @@ public class Instance {
         eventPublisher.subscribe(subscriber);
     }
 
+    /**
+     * Subscriber gets the events that were produced together: all the events of the tick, or a single event when it's
+     * not produced in a tick.
+     */
+    public void subscribeChanges(Consumer<List<GameEvent>> subscriber) {
+        eventBatchPublisher.subscribe(subscriber);
+    }
+
     public Result handleCommand(InstanceCommand command) {
         // temporary validation done here. Eventually this will be asynchronous so it couldn't return any response.
         // in that case validation would have to be performed on InstanceServer on a copy of the state that may be a bit outdated.
-        Outcome<List<GameEvent>> optionalGameEvents = command.process(gameState, gameDefinitions, timeService.getCurrentMillis());
+        Outcome<List<GameEvent>> optionalGameEvents = command.process(gameState, gameDefinitions, getCurrentMillis());
         optionalGameEvents.toOptional().ifPresent(this::updateState);
         return optionalGameEvents.toResult();
     }
 
+    /**
+     * Runs the commands of a single tick. All the commands get the same time and the state is updated by each of them
+     * right away, but the events are published together when the tick ends.
+     */
+    public void tick(Runnable processCommands) {
+        tickTime = timeService.getCurrentMillis();
+        inTick = true;
+        try {
+            processCommands.run();
+        } finally {
+            inTick = false;
+            publishTickEvents();
+        }
+    }
+
+    private void publishTickEvents() {
+        if (tickEvents.isEmpty()) {
+            return;
+        }
+        List<GameEvent> events = ImmutableList.copyOf(tickEvents);
+        tickEvents.clear();
+        events.forEach(eventPublisher::notify);
+        eventBatchPublisher.notify(events);
+    }
+
+    /**
+     * Time of the current tick, or the current time outside of a tick.
+     */
+    long getCurrentMillis() {
+        return inTick ? tickTime : timeService.getCurrentMillis();
+    }
+
     private void updateState(List<GameEvent> gameEvents) {
         gameEvents.forEach(this::updateState);
     }
 
     void updateState(GameEvent gameEvent) {
         gameState = gameEvent.updateState(gameState, gameDefinitions);
+        if (inTick) {
+            tickEvents.add(gameEvent);
+            return;
+        }
         eventPublisher.notify(gameEvent);
+        eventBatchPublisher.notify(ImmutableList.of(gameEvent));
     }
 
     public String getKey() {
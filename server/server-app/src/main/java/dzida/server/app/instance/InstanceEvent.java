@@ -29,6 +29,8 @@ public interface InstanceEvent {
             WorldObjectRemoved.class,
             Instance.UserCharacter.class,
             CharacterHealed.class,
-            ParcelChange.ParcelClaimed.class
+            ParcelChange.ParcelClaimed.class,
+            StateSynchroniser.CharacterEnteredView.class,
+            StateSynchroniser.CharacterLeftView.class
     );
 }
@@ -1,15 +1,20 @@
 package dzida.server.app.instance;
 
 import com.google.common.util.concurrent.Runnables;
+import com.google.gson.Gson;
 import dzida.server.app.Scheduler;
 import dzida.server.app.arbiter.Arbiter;
 import dzida.server.app.basic.Publisher;
 import dzida.server.app.basic.Result;
 import dzida.server.app.basic.connection.Connector;
-import dzida.server.app.basic.connection.ServerConnection;
+import dzida.server.app.basic.connection.MessageConnector;
+import dzida.server.app.basic.connection.QueueingServerConnection;
+import dzida.server.app.basic.connection.SharedMessage;
 import dzida.server.app.basic.connection.VerifyingConnectionServer;
 import dzida.server.app.basic.entity.Id;
 import dzida.server.app.basic.entity.Key;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.MoveCodec;
 import dzida.server.app.instance.character.model.Character;
 import dzida.server.app.instance.command.InstanceCommand;
 import dzida.server.app.instance.command.KillCharacterCommand;
@@ -19,7 +24,9 @@ import dzida.server.app.instance.event.GameEvent;
 import dzida.server.app.instance.event.ServerMessage;
 import dzida.server.app.instance.position.event.CharacterMoved;
 import dzida.server.app.map.descriptor.Scenario;
+import dzida.server.app.parcel.ParcelCommand;
 import dzida.server.app.protocol.json.JsonProtocol;
+import dzida.server.app.serialization.BasicJsonSerializer;
 import dzida.server.app.user.EncryptedLoginToken;
 import dzida.server.app.user.LoginToken;
 import dzida.server.app.user.User;
@@ -27,15 +34,29 @@ import dzida.server.app.user.UserTokenVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.nurkiewicz.typeof.TypeOf.whenTypeOf;
 
 public class InstanceServer implements VerifyingConnectionServer<String, String> {
     private static final Logger log = LoggerFactory.getLogger(InstanceServer.class);
+    // characters move between their move events, so the views of the players are checked periodically
+    private static final long visibilityUpdatePeriod = 200;
 
     public final Publisher<UserMessage.UserGameEvent> userGameEventPublisher = new Publisher<>();
     public final Publisher<UserMessage.UserCommand> userCommandPublisher = new Publisher<>();
@@ -50,26 +71,48 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
     private final Key<Instance> instanceKey;
     private final Map<Id<User>, ContainerConnection> connections = new HashMap<>();
     private final Map<Id<Character>, Id<User>> userIds = new HashMap<>();
+    private final Scheduler scheduler;
+    // commands of all the players, that are parsed and validated on the connection threads, are drained by the instance thread
+    private final Queue<QueuedCommand> commandQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean commandDrainScheduled = new AtomicBoolean();
+    private final int tickRate;
+    private final double viewRadius;
+    @Nullable
+    private Future<?> tickTask;
+    @Nullable
+    private Future<?> visibilityTask;
 
-    public InstanceServer(Scheduler scheduler, InstanceStore instanceStore, Arbiter arbiter, Key<Instance> instanceKey, Scenario scenario, GameDefinitions gameDefinitions) {
+    /**
+     * @param tickRate number of ticks per second in which the commands are processed, zero processes each command as soon as it arrives.
+     * @param viewRadius distance in tiles in which the players get the events of the characters, zero sends all the events to all the players.
+     * @param snapshot state of the hibernated instance that is resumed, null if the instance is started for the first time.
+     */
+    public InstanceServer(Scheduler scheduler, InstanceStore instanceStore, Arbiter arbiter, Key<Instance> instanceKey, Scenario scenario, GameDefinitions gameDefinitions, int tickRate, double viewRadius, @Nullable InstanceSnapshot snapshot) {
         this.instanceStore = instanceStore;
         this.arbiter = arbiter;
+        this.scheduler = scheduler;
+        this.tickRate = tickRate;
+        this.viewRadius = viewRadius;
         userTokenVerifier = new UserTokenVerifier();
 
-        serializer = JsonProtocol.create(CharacterCommand.classes, InstanceEvent.classes);
-        instance = new Instance(instanceKey.getValue(), scenario, scheduler, gameDefinitions);
-        stateSynchroniser = new StateSynchroniser(instance, scenario);
+        // moves are sent in the compact form, events are still stored with the basic serializer
+        Gson protocolSerializer = BasicJsonSerializer.createSerializerBuilder()
+                .registerTypeAdapter(Move.class, new MoveCodec(gameDefinitions.getMovePrecision()))
+                .create();
+        serializer = JsonProtocol.create(protocolSerializer, CharacterCommand.classes, InstanceEvent.classes);
+        instance = new Instance(instanceKey.getValue(), scenario, scheduler, gameDefinitions, snapshot);
+        stateSynchroniser = new StateSynchroniser(instance, scenario, viewRadius);
 
         this.instanceKey = instanceKey;
     }
 
     public void start() {
-        instance.subscribeChange(stateSynchroniser::syncStateChange);
-        instance.subscribeChange(gameEvent -> {
-            if (gameEvent instanceof CharacterMoved) {
-                return;
-            }
-            instanceStore.saveEvent(instanceKey, gameEvent);
+        instance.subscribeChange(gameEvent -> stateSynchroniser.syncStateChange(gameEvent, this::broadcast));
+        instance.subscribeChanges(gameEvents -> {
+            List<GameEvent> eventsToSave = gameEvents.stream()
+                    .filter(gameEvent -> !(gameEvent instanceof CharacterMoved))
+                    .collect(Collectors.toList());
+            instanceStore.saveEvents(instanceKey, eventsToSave);
         });
         instance.subscribeChange(gameEvent -> {
             if (gameEvent instanceof CharacterEvent) {
@@ -82,10 +125,34 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
             }
         });
         instance.start();
+        if (isTickMode()) {
+            long tickPeriod = Math.max(1, 1000 / tickRate);
+            tickTask = scheduler.scheduleAtFixedRate(() -> instance.tick(this::drainCommands), tickPeriod, tickPeriod);
+        }
+        if (viewRadius > 0) {
+            visibilityTask = scheduler.scheduleAtFixedRate(stateSynchroniser::updateVisibility, visibilityUpdatePeriod, visibilityUpdatePeriod);
+        }
+    }
+
+    private boolean isTickMode() {
+        return tickRate > 0;
     }
 
     private void sendMessageToPlayer(Id<User> userId, GameEvent data) {
-        connections.get(userId).serverSend(serializer.serializeMessage(data));
+        connections.get(userId).sendEvent(data);
+    }
+
+    /**
+     * Sends the event to all the given players. The event is serialized once and the encoded packet is shared by
+     * all the players, instead of serializing the event for each of them.
+     */
+    public void broadcast(Collection<Id<User>> userIds, GameEvent event) {
+        SharedMessage message = new SharedMessage(event, out -> serializer.writeMessage(event, out));
+        try {
+            userIds.forEach(userId -> connections.get(userId).sendEvent(event, message));
+        } finally {
+            message.release();
+        }
     }
 
     @Override
@@ -115,7 +182,7 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
 
         instance.handleCommand(new SpawnCharacterCommand(character));
         sendMessageToPlayer(userId, new Instance.UserCharacter(characterId, userId, userNick));
-        stateSynchroniser.registerCharacter(userId, sendToPlayer);
+        stateSynchroniser.registerCharacter(userId, characterId, sendToPlayer);
         log.info("Instance: " + instanceKey + " - user " + userId + " joined \n");
         return Result.ok();
     }
@@ -124,7 +191,66 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
         return connections.isEmpty();
     }
 
+    private void enqueueCommand(ContainerConnection connection, Object command) {
+        commandQueue.add(new QueuedCommand(connection, command));
+        // in the tick mode the queue is drained by the tick
+        if (!isTickMode() && commandDrainScheduled.compareAndSet(false, true)) {
+            scheduler.execute(this::drainCommands);
+        }
+    }
+
+    /**
+     * All the commands that are in the queue are processed in a single task or tick. Commands of the players that already
+     * left the instance are dropped.
+     */
+    private void drainCommands() {
+        commandDrainScheduled.set(false);
+        QueuedCommand queuedCommand;
+        while ((queuedCommand = commandQueue.poll()) != null) {
+            ContainerConnection connection = queuedCommand.connection;
+            if (connections.get(connection.userId) == connection) {
+                connection.sendMessage(queuedCommand.command);
+            }
+        }
+    }
+
+    /**
+     * Checks the shape of the command, that is not checked by the parser, e.g. missing fields.
+     */
+    private static boolean isValidCommand(Object command) {
+        if (command instanceof CharacterCommand) {
+            return ((CharacterCommand) command).isValid();
+        }
+        if (command instanceof ParcelCommand.ClaimParcel) {
+            ParcelCommand.ClaimParcel claimParcel = (ParcelCommand.ClaimParcel) command;
+            //noinspection ConstantConditions fields are not checked by the parser
+            return claimParcel.getOwner() != null && claimParcel.getOwnerName() != null && claimParcel.getParcelName() != null;
+        }
+        return true;
+    }
+
     public void closeInstance() {
+        scheduler.execute(this::stop);
+    }
+
+    private void stop() {
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        if (visibilityTask != null) {
+            visibilityTask.cancel(false);
+        }
+        instance.stop();
+    }
+
+    /**
+     * Closes the instance on its scheduler and returns the snapshot from which the instance can be resumed.
+     */
+    public CompletableFuture<InstanceSnapshot> hibernate() {
+        return CompletableFuture.supplyAsync(() -> {
+            stop();
+            return instance.createSnapshot();
+        }, scheduler);
     }
 
 //    public void disconnectPlayer(Id<User> userId) {
@@ -135,10 +261,19 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
         return instanceKey;
     }
 
-    private final class ContainerConnection implements ServerConnection<String> {
+    /**
+     * Protocol of the messages from the players.
+     */
+    public JsonProtocol getProtocol() {
+        return serializer;
+    }
+
+    private final class ContainerConnection implements QueueingServerConnection<String> {
         private final Id<User> userId;
         private final Id<Character> characterId;
         private final Connector<String> connector;
+        // Moves that were not sent while the client was not writable. Only the latest move of each character is kept.
+        private final Map<Id<Character>, CharacterMoved> conflatedMoves = new LinkedHashMap<>();
 
         private ContainerConnection(Id<User> userId, Id<Character> characterId, Connector<String> connector) {
             this.userId = userId;
@@ -148,7 +283,20 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
 
         @Override
         public void send(String data) {
-            Object commandToProcess = serializer.parseMessage(data);
+            sendMessage(serializer.parseMessage(data));
+        }
+
+        @Override
+        public void enqueueMessage(Object message) {
+            if (!isValidCommand(message)) {
+                log.debug("Instance: " + instanceKey + " - dropped invalid command of user " + userId);
+                return;
+            }
+            enqueueCommand(this, message);
+        }
+
+        @Override
+        public void sendMessage(Object commandToProcess) {
             whenTypeOf(commandToProcess)
                     .is(CharacterCommand.class)
                     .then(command -> {
@@ -176,6 +324,54 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
             userIds.remove(characterId);
         }
 
+        @Override
+        public void onWritable() {
+            List<CharacterMoved> moves = new ArrayList<>(conflatedMoves.values());
+            conflatedMoves.clear();
+            moves.forEach(this::sendEvent);
+        }
+
+        public void sendEvent(GameEvent event) {
+            sendEvent(event, null);
+        }
+
+        /**
+         * @param message the event shared with the other players, it's used only during this call.
+         */
+        public void sendEvent(GameEvent event, @Nullable SharedMessage message) {
+            if (event instanceof CharacterMoved) {
+                CharacterMoved characterMoved = (CharacterMoved) event;
+                conflatedMoves.remove(characterMoved.characterId);
+                if (!connector.isWritable()) {
+                    conflatedMoves.put(characterMoved.characterId, characterMoved);
+                    return;
+                }
+            } else if (event instanceof StateSynchroniser.CharacterLeftView) {
+                // the player doesn't know the character anymore, so its move is not needed
+                conflatedMoves.remove(((StateSynchroniser.CharacterLeftView) event).getCharacterId());
+            } else if (event instanceof CharacterEvent) {
+                // the move is sent before any other event of the character, so the client never gets it after e.g. the death of the character
+                CharacterMoved conflatedMove = conflatedMoves.remove(((CharacterEvent) event).getCharacterId());
+                if (conflatedMove != null) {
+                    serverSend(conflatedMove);
+                }
+            }
+            if (message != null && connector instanceof MessageConnector) {
+                ((MessageConnector<String>) connector).onSharedMessage(message);
+            } else {
+                serverSend(event);
+            }
+        }
+
+        private void serverSend(GameEvent event) {
+            if (connector instanceof MessageConnector) {
+                // event is serialized only when it's written to the client
+                ((MessageConnector<String>) connector).onTypedMessage(event);
+            } else {
+                serverSend(serializer.serializeMessage(event));
+            }
+        }
+
         public void serverSend(String data) {
             connector.onMessage(data);
         }
@@ -185,4 +381,14 @@ public class InstanceServer implements VerifyingConnectionServer<String, String>
 //            connector.onClose();
 //        }
     }
+
+    private static final class QueuedCommand {
+        private final ContainerConnection connection;
+        private final Object command;
+
+        private QueuedCommand(ContainerConnection connection, Object command) {
+            this.connection = connection;
+            this.command = command;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package dzida.server.app.instance;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.instance.event.GameEvent;
+import dzida.server.app.instance.world.object.WorldObject;
+import dzida.server.app.map.descriptor.Scenario;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * State of the hibernated instance that is kept while the instance is unloaded. Only the changes made on the
+ * instance are kept, the world map, collision map and other data that is derived from the scenario are loaded again
+ * when the instance is resumed.
+ */
+public final class InstanceSnapshot {
+    private final Scenario scenario;
+    private final List<GameEvent> events;
+    private final Set<Id<WorldObject>> decayingObjects;
+
+    InstanceSnapshot(Scenario scenario, List<GameEvent> events, Set<Id<WorldObject>> decayingObjects) {
+        this.scenario = scenario;
+        this.events = ImmutableList.copyOf(events);
+        this.decayingObjects = ImmutableSet.copyOf(decayingObjects);
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    /**
+     * Events that recreate the state of the instance when they are applied on the fresh state.
+     */
+    List<GameEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Objects that were decaying when the instance was hibernated. Other objects, e.g. the initial objects of the map,
+     * don't decay.
+     */
+    Set<Id<WorldObject>> getDecayingObjects() {
+        return decayingObjects;
+    }
+}
@@ -3,6 +3,12 @@ package dzida.server.app.instance;
 import dzida.server.app.basic.entity.Key;
 import dzida.server.app.instance.event.GameEvent;
 
+import java.util.List;
+
 public interface InstanceStore {
     void saveEvent(Key<Instance> instanceKey, GameEvent gameEvent);
+
+    default void saveEvents(Key<Instance> instanceKey, List<GameEvent> gameEvents) {
+        gameEvents.forEach(gameEvent -> saveEvent(instanceKey, gameEvent));
+    }
 }
@@ -2,35 +2,190 @@ package dzida.server.app.instance
 
 import dzida.server.app.basic.entity.GeneralEntity
 import dzida.server.app.basic.entity.Id
+import dzida.server.app.basic.unit.Move
+import dzida.server.app.instance.character.CharacterDied
+import dzida.server.app.instance.character.CharacterSpawned
 import dzida.server.app.instance.character.model.Character
+import dzida.server.app.instance.event.CharacterEvent
 import dzida.server.app.instance.event.GameEvent
 import dzida.server.app.instance.position.event.CharacterMoved
 import dzida.server.app.instance.skill.SkillSate
+import dzida.server.app.instance.skill.event.SkillUsedOnCharacter
+import dzida.server.app.instance.world.`object`.WorldObject
 import dzida.server.app.map.descriptor.Scenario
 import dzida.server.app.user.User
 import java.util.*
+import java.util.function.BiConsumer
 import java.util.function.Consumer
 import javax.ws.rs.NotSupportedException
+import kotlin.comparisons.compareBy
 
-class StateSynchroniser(private val instance: Instance, private val scenario: Scenario) {
-    private val listeners = HashMap<Id<User>, Consumer<GameEvent>>()
+/**
+ * Sends the changes of the instance to the players. With the positive view radius a player gets only the events of the
+ * characters that are in the view of the player's character, and is notified when a character enters or leaves the view.
+ * Events that are not about characters, e.g. of world objects and parcels, are sent to all the players.
+ *
+ * @param viewRadius distance in tiles in which the characters are seen, zero means that the whole instance is seen.
+ */
+class StateSynchroniser(private val instance: Instance, private val scenario: Scenario, private val viewRadius: Double) {
+    companion object {
+        /**
+         * Seen character leaves the view when it's farther than the view radius by the margin, so the character that
+         * walks along the edge of the view doesn't enter and leave it all the time.
+         */
+        val leaveMargin = 4.0
+    }
+
+    private val listeners = HashMap<Id<User>, Listener>()
+    // players by their characters, so the players that see a character are found by the characters in its range
+    private val characterListeners = HashMap<Id<Character>, Id<User>>()
+    // players that see the character, reverse of the visible characters of the listeners
+    private val watchers = HashMap<Id<Character>, MutableSet<Id<User>>>()
+
+    private val isViewLimited: Boolean get() = viewRadius > 0
 
-    fun registerCharacter(listenerId: Id<User>, send: Consumer<GameEvent>) {
-        listeners.put(listenerId, send)
+    fun registerCharacter(listenerId: Id<User>, characterId: Id<Character>, send: Consumer<GameEvent>) {
+        unregisterListener(listenerId)
+        listeners.put(listenerId, Listener(characterId, send))
+        characterListeners.put(characterId, listenerId)
         sendInitialPacket(listenerId)
     }
 
     fun unregisterListener(listenerId: Id<User>) {
-        listeners.remove(listenerId)
+        val listener = listeners.remove(listenerId) ?: return
+        characterListeners.remove(listener.characterId)
+        listener.visibleCharacters.forEach { unwatch(listenerId, it) }
     }
 
     fun sendInitialPacket(userId: Id<User>) {
-        val initialData = InitialData(prepareData(instance.state), scenario)
-        listeners[userId]!!.accept(initialData)
+        val listener = listeners[userId]!!
+        val state = instance.state
+        if (!isViewLimited) {
+            listener.send.accept(InitialData(prepareData(state, null), scenario))
+            return
+        }
+        listener.visibleCharacters.forEach { unwatch(userId, it) }
+        listener.visibleCharacters.clear()
+        findCharactersInView(listener, state, viewRadius, instance.currentMillis).forEach { watch(userId, listener, it) }
+        listener.send.accept(InitialData(prepareData(state, listener.visibleCharacters), scenario))
+    }
+
+    /**
+     * Passes the change to the broadcast with all the listeners that should get it at once, so the change can be
+     * serialized once for all of them.
+     */
+    fun syncStateChange(gameEvent: GameEvent, broadcast: BiConsumer<Collection<Id<User>>, GameEvent>) {
+        if (!isViewLimited || gameEvent !is CharacterEvent) {
+            broadcast.accept(listeners.keys, gameEvent)
+            return
+        }
+        // CharacterMoved has also the Java field, so the id is taken before the event is cast to it
+        val characterId = gameEvent.characterId
+        when (gameEvent) {
+            is CharacterSpawned -> {
+                val recipients = findListenersInView(characterId, instance.state, instance.currentMillis)
+                recipients.forEach { watch(it, listeners[it]!!, characterId) }
+                broadcast.accept(recipients, gameEvent)
+            }
+            is CharacterDied -> {
+                val recipients = watchers.remove(characterId) ?: return
+                recipients.forEach { listeners[it]?.visibleCharacters?.remove(characterId) }
+                broadcast.accept(recipients, gameEvent)
+            }
+            is CharacterMoved -> {
+                broadcast.accept(getWatchers(characterId), gameEvent)
+                // the move is the most common way in which the characters get into the views, so they are shown at
+                // once: the moved character to the players that see it now, and the characters that the moved
+                // character sees now to its player
+                val state = instance.state
+                val time = instance.currentMillis
+                findListenersInView(characterId, state, time)
+                        .filter { !listeners[it]!!.visibleCharacters.contains(characterId) }
+                        .forEach { enterView(it, listeners[it]!!, characterId, state) }
+                val moverId = characterListeners[characterId] ?: return
+                val mover = listeners[moverId]!!
+                findCharactersInView(mover, state, viewRadius, time)
+                        .filter { !mover.visibleCharacters.contains(it) }
+                        .forEach { enterView(moverId, mover, it, state) }
+            }
+            is SkillUsedOnCharacter -> {
+                val targetWatchers = getWatchers(gameEvent.targetId)
+                broadcast.accept(getWatchers(gameEvent.casterId).filter { targetWatchers.contains(it) }, gameEvent)
+            }
+            else -> broadcast.accept(getWatchers(characterId), gameEvent)
+        }
+    }
+
+    /**
+     * Shows the characters that got into the view and hides the ones that got out of it since the last update. Should be
+     * called periodically, because the characters move also between their move events.
+     */
+    fun updateVisibility() {
+        if (!isViewLimited) {
+            return
+        }
+        val state = instance.state
+        val time = instance.currentMillis
+        for ((userId, listener) in listeners) {
+            findCharactersInView(listener, state, viewRadius, time)
+                    .filter { !listener.visibleCharacters.contains(it) }
+                    .forEach { enterView(userId, listener, it, state) }
+            val stillVisible = findCharactersInView(listener, state, viewRadius + leaveMargin, time).toSet()
+            listener.visibleCharacters
+                    .filter { !stillVisible.contains(it) }
+                    .forEach {
+                        listener.visibleCharacters.remove(it)
+                        unwatch(userId, it)
+                        listener.send.accept(CharacterLeftView(it))
+                    }
+        }
+    }
+
+    private fun findCharactersInView(listener: Listener, state: GameState, radius: Double, time: Long): List<Id<Character>> {
+        val position = state.position
+        if (!position.state.containsKey(listener.characterId)) {
+            return emptyList()
+        }
+        val center = position.getMove(listener.characterId).getPositionAtTime(time)
+        return position.getCharactersInRange(center, radius, time)
+    }
+
+    /**
+     * The view is symmetric, so the players that see the character are the players of the characters in its range.
+     */
+    private fun findListenersInView(characterId: Id<Character>, state: GameState, time: Long): List<Id<User>> {
+        val position = state.position
+        if (!position.state.containsKey(characterId)) {
+            return emptyList()
+        }
+        val center = position.getMove(characterId).getPositionAtTime(time)
+        return position.getCharactersInRange(center, viewRadius, time).mapNotNull { characterListeners[it] }
+    }
+
+    private fun enterView(userId: Id<User>, listener: Listener, characterId: Id<Character>, state: GameState) {
+        val character = state.character.state[characterId] ?: return
+        watch(userId, listener, characterId)
+        val skillData = state.skill.state[characterId]!!
+        listener.send.accept(CharacterEnteredView(character, state.position.getMove(characterId), skillData))
     }
 
-    fun syncStateChange(gameEvent: GameEvent) {
-        listeners.values.forEach { consumer -> consumer.accept(gameEvent) }
+    private fun watch(userId: Id<User>, listener: Listener, characterId: Id<Character>) {
+        listener.visibleCharacters.add(characterId)
+        watchers.getOrPut(characterId, { HashSet() }).add(userId)
+    }
+
+    private fun unwatch(userId: Id<User>, characterId: Id<Character>) {
+        val characterWatchers = watchers[characterId] ?: return
+        characterWatchers.remove(userId)
+        if (characterWatchers.isEmpty()) {
+            watchers.remove(characterId)
+        }
+    }
+
+    private fun getWatchers(characterId: Id<Character>): Collection<Id<User>> = watchers[characterId] ?: emptySet()
+
+    private class Listener(val characterId: Id<Character>, val send: Consumer<GameEvent>) {
+        val visibleCharacters: MutableSet<Id<Character>> = HashSet()
     }
 
     class InitialData(val state: Map<String, Any>, @Suppress("unused") val scenario: Scenario) : GameEvent {
@@ -39,19 +194,44 @@ class StateSynchroniser(private val instance: Instance, private val scenario: Sc
         }
     }
 
-    fun prepareData(state: GameState): Map<String, Any> {
+    /**
+     * Character that was not seen by the player got into the view, it has the same data as the spawn.
+     */
+    class CharacterEnteredView(val character: Character, @Suppress("unused") val move: Move,
+                               @Suppress("unused") val skillData: SkillSate.SkillData) : CharacterEvent {
+        override val characterId: Id<Character>
+            get() = character.id
+
+        override fun updateState(state: GameState, definitions: GameDefinitions): GameState {
+            throw NotSupportedException()
+        }
+    }
+
+    class CharacterLeftView(override val characterId: Id<Character>) : CharacterEvent {
+        override fun updateState(state: GameState, definitions: GameDefinitions): GameState {
+            throw NotSupportedException()
+        }
+    }
+
+    /**
+     * Maps of the state are iterated in the hash order, so the entries are sorted to be sent in a stable order: the
+     * characters by their ids and the world objects in order of their creation, in which they were sent before.
+     *
+     * @param visibleCharacters characters to include, null includes all of them.
+     */
+    fun prepareData(state: GameState, visibleCharacters: Set<Id<Character>>?): Map<String, Any> {
+        fun isVisible(characterId: Id<Character>) = visibleCharacters == null || visibleCharacters.contains(characterId)
         return mapOf(
-                Pair("character", state.character.state.values),
-                Pair("skill", state.skill.state.entries.map({ SkillCharacterState(it.key, it.value) })),
-                Pair("move", state.position.state.entries.map({ CharacterMoved(it.key, it.value) })),
+                Pair("character", state.character.state.values.filter { isVisible(it.id) }.sortedBy { it.id.value }),
+                Pair("skill", state.skill.state.entries.filter { isVisible(it.key) }.sortedBy { it.key.value }.map({ SkillCharacterState(it.key, it.value) })),
+                Pair("move", state.position.state.entries.filter { isVisible(it.key) }.sortedBy { it.key.value }.map({ CharacterMoved(it.key, it.value) })),
                 Pair("world", state.world.worldMap),
-                Pair("worldObject", state.world.worldObjects.entries.map({ GeneralEntity(it.key, it.value) })),
+                Pair("worldObject", state.world.worldObjects.entries
+                        .sortedWith(compareBy<Map.Entry<Id<WorldObject>, WorldObject>>({ it.value.created }, { it.key.value }))
+                        .map({ GeneralEntity(it.key, it.value) })),
                 Pair("parcel", state.parcel.parcelChanges)
         )
     }
 
     class SkillCharacterState(val characterId: Id<Character>, @Suppress("unused") val skillData: SkillSate.SkillData)
 }
-
-
-
@@ -1,18 +1,20 @@
 package dzida.server.app.instance.character
 
+import dzida.server.app.basic.PersistentHashMap
 import dzida.server.app.basic.entity.Id
 import dzida.server.app.instance.character.model.Character
-import java.util.*
 
 
-class CharacterState private constructor(val state: Map<Id<Character>, Character>) {
-    constructor() : this(mapOf())
+class CharacterState private constructor(private val characters: PersistentHashMap<Id<Character>, Character>) {
+    constructor() : this(PersistentHashMap.empty())
+
+    val state: Map<Id<Character>, Character> get() = characters
 
     fun add(character: Character): CharacterState =
-            CharacterState(state.plus(Pair(character.id, character)))
+            CharacterState(characters.plus(character.id, character))
 
     fun remove(characterId: Id<Character>): CharacterState =
-            CharacterState(LinkedHashMap(state).apply { remove(characterId) })
+            CharacterState(characters.minus(characterId))
 
     fun isCharacterLive(characterId: Id<Character>) =
             state.containsKey(characterId)
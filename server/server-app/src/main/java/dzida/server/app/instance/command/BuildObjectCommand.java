@@ -37,7 +37,17 @@ public class BuildObjectCommand implements InstanceCommand {
         if (state.getSkill().isOnCooldown(casterId, currentTime)) {
             return Outcome.error("You are not ready yet to use ability");
         }
-        GeneralEntity<WorldObject> worldObject = state.getWorld().createWorldObject(objectKindId, (int) x, (int) y, currentTime);
+        WorldObjectKind kind = definitions.getObjectKind(objectKindId);
+        int objectX = (int) x;
+        int objectY = (int) y;
+        if (!state.getWorld().getWorldObjectsInRectangle(objectX, objectY, objectX + kind.getWidth(), objectY + kind.getHeight()).isEmpty()) {
+            return Outcome.error("There is already an object in that place");
+        }
+        // a character would be stuck in the collidable object
+        if (kind.isCollidable() && !state.getPosition().getCharactersInRectangle(objectX, objectY, objectX + kind.getWidth(), objectY + kind.getHeight(), currentTime).isEmpty()) {
+            return Outcome.error("There is a character in that place");
+        }
+        GeneralEntity<WorldObject> worldObject = state.getWorld().createWorldObject(objectKindId, objectX, objectY, currentTime);
         return Outcome.ok(ImmutableList.of(
                 new WorldObjectCreated(worldObject)
         ));
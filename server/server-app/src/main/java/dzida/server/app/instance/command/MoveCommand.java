@@ -39,7 +39,8 @@ public class MoveCommand implements InstanceCommand {
 
         Point[] positions = pathToDestination.toArray(new Point[pathToDestination.size()]);
         Move newMove = move.continueMoveTo(currentTime, speed, positions);
-        Move newCompactedMove = newMove.compactHistory(currentTime - 1000);
+        // move is sent to the clients with the quantized coordinates, so the clients have exactly the same move
+        Move newCompactedMove = newMove.compactHistory(currentTime - 1000).quantize(definitions.getMovePrecision());
         return Outcome.ok(ImmutableList.of(new CharacterMoved(characterId, newCompactedMove)));
     }
 }
@@ -2,6 +2,7 @@ package dzida.server.app.instance.command;
 
 import dzida.server.app.basic.Outcome;
 import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Point;
 import dzida.server.app.instance.GameDefinitions;
 import dzida.server.app.instance.GameState;
 import dzida.server.app.instance.character.CharacterDied;
@@ -12,15 +13,20 @@ import dzida.server.app.instance.skill.Skills;
 import dzida.server.app.instance.skill.event.CharacterGotDamage;
 import dzida.server.app.instance.skill.event.SkillUsedOnCharacter;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SkillUseOnCharacterCommand implements InstanceCommand {
     public final Id<Skill> skillId;
+    /**
+     * Target of the skill, if it's null the skill is used on the nearest enemy in the range of the skill.
+     */
+    @Nullable
     public final Id<Character> target;
     public final Id<Character> characterId;
 
-    public SkillUseOnCharacterCommand(Id<Character> characterId, Id<Skill> skillId, Id<Character> target) {
+    public SkillUseOnCharacterCommand(Id<Character> characterId, Id<Skill> skillId, @Nullable Id<Character> target) {
         this.skillId = skillId;
         this.target = target;
         this.characterId = characterId;
@@ -32,9 +38,6 @@ public class SkillUseOnCharacterCommand implements InstanceCommand {
         if (!state.getCharacter().isCharacterLive(casterId)) {
             return Outcome.error("Skill can not be used by a not living character.");
         }
-        if (!state.getCharacter().isCharacterLive(target)) {
-            return Outcome.error("Skill can not be used on a character that is not alive.");
-        }
 
         Skill skill = definitions.getSkill(skillId);
         if (state.getSkill().isOnCooldown(casterId, currentTime)) {
@@ -43,6 +46,13 @@ public class SkillUseOnCharacterCommand implements InstanceCommand {
         if (skill.getType() != Skills.Types.ATTACK) {
             return Outcome.error("Server can not understand received message");
         }
+        Id<Character> target = this.target != null ? this.target : findNearestTarget(state, skill, casterId, currentTime);
+        if (target == null) {
+            return Outcome.error("There is no target in range");
+        }
+        if (!state.getCharacter().isCharacterLive(target)) {
+            return Outcome.error("Skill can not be used on a character that is not alive.");
+        }
         if (!state.getPosition().areCharactersInDistance(casterId, target, skill.getRange(), currentTime)) {
             return Outcome.error("You are out of range");
         }
@@ -64,6 +74,13 @@ public class SkillUseOnCharacterCommand implements InstanceCommand {
         return events;
     }
 
+    private Id<Character> findNearestTarget(GameState state, Skill skill, Id<Character> casterId, Long currentTime) {
+        Point casterPosition = state.getPosition().getMove(casterId).getPositionAtTime(currentTime);
+        return state.getPosition().findNearestCharacter(casterPosition, skill.getRange(), currentTime, characterId ->
+                !characterId.equals(casterId) && state.getCharacter().isCharacterLive(characterId)
+                        && canTargetBeTargeted(state, skill, casterId, characterId));
+    }
+
     private boolean canTargetBeTargeted(GameState state, Skill skill, Id<Character> casterId, Id<Character> targetId) {
         switch (skill.getTarget()) {
             case Skills.Target.ENEMIES:
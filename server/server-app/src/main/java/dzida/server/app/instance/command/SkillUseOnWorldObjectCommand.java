@@ -3,6 +3,7 @@ package dzida.server.app.instance.command;
 import com.google.common.collect.ImmutableList;
 import dzida.server.app.basic.Outcome;
 import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Point;
 import dzida.server.app.instance.GameDefinitions;
 import dzida.server.app.instance.GameState;
 import dzida.server.app.instance.character.model.Character;
@@ -13,14 +14,19 @@ import dzida.server.app.instance.skill.event.SkillUsedOnWorldObject;
 import dzida.server.app.instance.world.WorldObjectRemoved;
 import dzida.server.app.instance.world.object.WorldObject;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 public class SkillUseOnWorldObjectCommand implements InstanceCommand {
     public final Id<Skill> skillId;
+    /**
+     * Target of the skill, if it's null the skill is used on the nearest object in the range of the skill.
+     */
+    @Nullable
     public final Id<WorldObject> target;
     public final Id<Character> characterId;
 
-    public SkillUseOnWorldObjectCommand(Id<Character> characterId, Id<Skill> skillId, Id<WorldObject> target) {
+    public SkillUseOnWorldObjectCommand(Id<Character> characterId, Id<Skill> skillId, @Nullable Id<WorldObject> target) {
         this.skillId = skillId;
         this.target = target;
         this.characterId = characterId;
@@ -40,6 +46,14 @@ public class SkillUseOnWorldObjectCommand implements InstanceCommand {
         if (skill.getType() != Skills.Types.GATHER) {
             return Outcome.error("Server can not understand received message");
         }
+        Point casterPosition = state.getPosition().getMove(casterId).getPositionAtTime(currentTime);
+        Id<WorldObject> target = this.target != null ? this.target : state.getWorld().findNearestWorldObject(casterPosition, skill.getRange());
+        if (target == null) {
+            return Outcome.error("There is no object in range");
+        }
+        if (!state.getWorld().getWorldObjectsInRange(casterPosition, skill.getRange()).contains(target)) {
+            return Outcome.error("You are out of range");
+        }
         return Outcome.ok(ImmutableList.of(
                 new SkillUsedOnWorldObject(casterId, skill.getId(), target, currentTime),
                 new WorldObjectRemoved(state.getWorld().getObject(target))
@@ -23,7 +23,8 @@ public class SpawnCharacterCommand implements InstanceCommand {
     @Override
     public Outcome<List<GameEvent>> process(GameState state, GameDefinitions definitions, Long currentTime) {
         SkillSate.SkillData initialSkillData = state.getSkill().getInitialSkillData(character.getType());
-        Move initialMove = state.getPosition().getInitialMove(state.getWorld().getSpawnPoint(), currentTime, definitions.getPlayerSpeed());
+        Move initialMove = state.getPosition().getInitialMove(state.getWorld().getSpawnPoint(), currentTime, definitions.getPlayerSpeed())
+                .quantize(definitions.getMovePrecision());
         return Outcome.ok(singletonList(new CharacterSpawned(character, initialMove, initialSkillData)));
     }
 }
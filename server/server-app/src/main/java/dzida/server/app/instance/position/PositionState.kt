@@ -1,28 +1,104 @@
 package dzida.server.app.instance.position
 
+import dzida.server.app.basic.PersistentHashMap
 import dzida.server.app.basic.entity.Id
 import dzida.server.app.basic.unit.BitMap
+import dzida.server.app.basic.unit.Geometry2D
+import dzida.server.app.basic.unit.GridIndex
 import dzida.server.app.basic.unit.Move
+import dzida.server.app.basic.unit.MoveColumns
 import dzida.server.app.basic.unit.Point
 import dzida.server.app.instance.character.model.Character
 import dzida.server.app.instance.world.`object`.WorldObject
 import dzida.server.app.instance.world.`object`.WorldObjectKind
 import dzida.server.app.instance.world.pathfinding.CollisionMapFactory
 import dzida.server.app.instance.world.pathfinding.PathFinder
-import java.util.*
+import java.util.ArrayList
 
+/**
+ * Moves are kept in the immutable map and also in the columns and the grid index, that are immutable as well and share
+ * the structure with the ones of the previous state. So every state, not only the latest one, can be queried without
+ * rebuilding them, and from any thread.
+ */
 class PositionState private constructor(
         private val collisionBitMap: BitMap,
         private val pathFinder: PathFinder,
-        val state: Map<Id<Character>, Move>
+        private val moves: PersistentHashMap<Id<Character>, Move>,
+        private val moveColumns: MoveColumns<Id<Character>>,
+        private val characterGrid: GridIndex<Id<Character>>
 ) {
-    constructor(collisionBitMap: BitMap) : this(collisionBitMap, PathFinder(CollisionMapFactory(5).createCollisionMap(collisionBitMap)), mapOf())
+    constructor(collisionBitMap: BitMap) : this(collisionBitMap, PathFinder(CollisionMapFactory(5).createCollisionMap(collisionBitMap)), PersistentHashMap.empty(), MoveColumns.empty(), GridIndex(gridCellSize))
+
+    companion object {
+        /**
+         * Size of the cell of the grid index in tiles.
+         */
+        val gridCellSize = 8.0
+    }
+
+    val state: Map<Id<Character>, Move> get() = moves
 
     fun put(characterId: Id<Character>, move: Move): PositionState =
-            PositionState(collisionBitMap, pathFinder, state.plus(Pair(characterId, move)))
+            PositionState(collisionBitMap, pathFinder, moves.plus(characterId, move), moveColumns.put(characterId, move), characterGrid.putMove(characterId, move))
 
     fun remove(characterId: Id<Character>): PositionState =
-            PositionState(collisionBitMap, pathFinder, LinkedHashMap(state).apply { remove(characterId) })
+            PositionState(collisionBitMap, pathFinder, moves.minus(characterId), moveColumns.remove(characterId), characterGrid.remove(characterId))
+
+    fun getColumns(): MoveColumns<Id<Character>> = moveColumns
+
+    fun getGrid(): GridIndex<Id<Character>> = characterGrid
+
+    fun getCharactersInRectangle(minX: Double, minY: Double, maxX: Double, maxY: Double, time: Long): List<Id<Character>> {
+        val characters = ArrayList<Id<Character>>()
+        characterGrid.forEachCandidate(minX, minY, maxX, maxY) { characterId ->
+            val slot = moveColumns.getSlot(characterId)
+            val x = moveColumns.getXAtTime(slot, time)
+            val y = moveColumns.getYAtTime(slot, time)
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                characters.add(characterId)
+            }
+        }
+        return characters
+    }
+
+    fun getCharactersInRange(center: Point, range: Double, time: Long): List<Id<Character>> {
+        val characters = ArrayList<Id<Character>>()
+        forEachCharacterInRange(center, range, time) { characterId, distance -> characters.add(characterId) }
+        return characters
+    }
+
+    /**
+     * @return the closest character that is not farther than the max distance and is accepted by the filter, or null
+     * if there is no such character.
+     */
+    fun findNearestCharacter(center: Point, maxDistance: Double, time: Long, filter: (Id<Character>) -> Boolean): Id<Character>? {
+        // range grows until a character is found, any closer character would be in the range
+        var range = Math.min(gridCellSize, maxDistance)
+        while (true) {
+            var nearest: Id<Character>? = null
+            var nearestDistance = Double.MAX_VALUE
+            forEachCharacterInRange(center, range, time) { characterId, distance ->
+                if (distance < nearestDistance && filter(characterId)) {
+                    nearest = characterId
+                    nearestDistance = distance
+                }
+            }
+            if (nearest != null || range >= maxDistance) {
+                return nearest
+            }
+            range = Math.min(range * 2, maxDistance)
+        }
+    }
+
+    private inline fun forEachCharacterInRange(center: Point, range: Double, time: Long, crossinline consumer: (Id<Character>, Double) -> Unit) {
+        characterGrid.forEachCandidate(center.x - range, center.y - range, center.x + range, center.y + range) { characterId ->
+            val slot = moveColumns.getSlot(characterId)
+            val distance = Geometry2D.distance(center.x, center.y, moveColumns.getXAtTime(slot, time), moveColumns.getYAtTime(slot, time))
+            if (distance <= range) {
+                consumer(characterId, distance)
+            }
+        }
+    }
 
     fun setWorldObjectCollision(worldObject: WorldObject, worldObjectKind: WorldObjectKind) =
             setWorldObjectCollision(worldObject, worldObjectKind, true)
@@ -30,11 +106,8 @@ class PositionState private constructor(
     fun removeWorldObjectCollision(worldObject: WorldObject, worldObjectKind: WorldObjectKind) =
             setWorldObjectCollision(worldObject, worldObjectKind, false)
 
-    fun areCharactersInDistance(character1: Id<Character>, character2: Id<Character>, distance: Double, time: Long): Boolean {
-        val char1Pos = state[character1]!!.getPositionAtTime(time)
-        val char2Pos = state[character2]!!.getPositionAtTime(time)
-        return char1Pos.isInRange(char2Pos, distance)
-    }
+    fun areCharactersInDistance(character1: Id<Character>, character2: Id<Character>, distance: Double, time: Long): Boolean =
+            moveColumns.areInDistance(moveColumns.getSlot(character1), moveColumns.getSlot(character2), distance, time)
 
     fun getMove(characterId: Id<Character>) = state[characterId]!!
 
@@ -73,6 +146,6 @@ class PositionState private constructor(
         val newBitMap = collisionBitMapBuilder.build()
         val collisionMap = CollisionMapFactory(5).createCollisionMap(newBitMap)
         val newPathFinder = PathFinder(collisionMap)
-        return PositionState(newBitMap, newPathFinder, state)
+        return PositionState(newBitMap, newPathFinder, moves, moveColumns, characterGrid)
     }
 }
\ No newline at end of file
@@ -1,29 +1,31 @@
 package dzida.server.app.instance.skill
 
+import dzida.server.app.basic.PersistentHashMap
 import dzida.server.app.basic.entity.Id
 import dzida.server.app.instance.character.model.Character
-import java.util.*
 
-class SkillSate private constructor(val state: Map<Id<Character>, SkillData>) {
-    constructor() : this(mapOf())
+class SkillSate private constructor(private val skills: PersistentHashMap<Id<Character>, SkillData>) {
+    constructor() : this(PersistentHashMap.empty())
+
+    val state: Map<Id<Character>, SkillData> get() = skills
 
     fun add(characterId: Id<Character>, skillData: SkillData): SkillSate =
-            SkillSate(state.plus(Pair(characterId, skillData)))
+            SkillSate(skills.plus(characterId, skillData))
 
     fun remove(characterId: Id<Character>): SkillSate =
-            SkillSate(LinkedHashMap(state).apply { remove(characterId) })
+            SkillSate(skills.minus(characterId))
 
     fun setCharacterCooldown(characterId: Id<Character>, skill: Skill, timestamp: Long): SkillSate {
         val newCooldownTill = timestamp + skill.cooldown
         val newSkillData = state[characterId]!!.updateCooldown(newCooldownTill)
-        return SkillSate(state.plus(Pair(characterId, newSkillData)))
+        return SkillSate(skills.plus(characterId, newSkillData))
     }
 
     fun changeCharacterHealth(characterId: Id<Character>, change: Int): SkillSate {
         val skillData = state[characterId]!!
         val newHealth = skillData.health + change
         val newSkillData = skillData.updateHealth(newHealth)
-        return SkillSate(state.plus(Pair(characterId, newSkillData)))
+        return SkillSate(skills.plus(characterId, newSkillData))
     }
 
     fun isOnCooldown(casterId: Id<Character>, time: Long): Boolean {
@@ -9,7 +9,7 @@ import dzida.server.app.instance.world.`object`.WorldObject
 
 class WorldObjectCreated(val worldObject: GeneralEntity<WorldObject>) : GameEvent {
     override fun updateState(state: GameState, definitions: GameDefinitions): GameState =
-            state.updateWorld { addObject(worldObject.id, worldObject.data) }
+            state.updateWorld { addObject(worldObject.id, worldObject.data, definitions.getObjectKind(worldObject.data.kind)) }
                     .updatePositions {
                         val worldObjectData = worldObject.data
                         setWorldObjectCollision(worldObjectData, definitions.getObjectKind(worldObjectData.kind))
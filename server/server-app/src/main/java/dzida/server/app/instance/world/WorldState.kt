@@ -1,7 +1,9 @@
 package dzida.server.app.instance.world
 
+import dzida.server.app.basic.PersistentHashMap
 import dzida.server.app.basic.entity.GeneralEntity
 import dzida.server.app.basic.entity.Id
+import dzida.server.app.basic.unit.GridIndex
 import dzida.server.app.basic.unit.Point
 import dzida.server.app.instance.world.`object`.WorldObject
 import dzida.server.app.instance.world.`object`.WorldObjectKind
@@ -10,17 +12,97 @@ import java.time.Instant
 import java.util.*
 
 
+/**
+ * Objects are indexed by the grid of their areas, that is immutable and shares the structure with the grid of the
+ * previous state, like the characters of the position state.
+ */
 class WorldState private constructor(
-        val worldObjects: Map<Id<WorldObject>, WorldObject>,
+        private val objects: PersistentHashMap<Id<WorldObject>, WorldObject>,
+        private val objectKinds: PersistentHashMap<Id<WorldObject>, WorldObjectKind>,
+        private val objectGrid: GridIndex<Id<WorldObject>>,
         val worldMap: WorldMap
 ) {
-    constructor(worldMap: WorldMap) : this(mapOf(), worldMap)
+    constructor(worldMap: WorldMap) : this(PersistentHashMap.empty(), PersistentHashMap.empty(), GridIndex(gridCellSize), worldMap)
 
-    fun addObject(worldObjectId: Id<WorldObject>, worldObject: WorldObject): WorldState =
-            WorldState(worldObjects.plus(Pair(worldObjectId, worldObject)), worldMap)
+    companion object {
+        /**
+         * Size of the cell of the grid index in tiles.
+         */
+        val gridCellSize = 8.0
+    }
+
+    val worldObjects: Map<Id<WorldObject>, WorldObject> get() = objects
+
+    fun addObject(worldObjectId: Id<WorldObject>, worldObject: WorldObject, kind: WorldObjectKind): WorldState =
+            WorldState(objects.plus(worldObjectId, worldObject), objectKinds.plus(worldObjectId, kind),
+                    objectGrid.putRectangle(worldObjectId, worldObject.x.toDouble(), worldObject.y.toDouble(),
+                            (worldObject.x + kind.width).toDouble(), (worldObject.y + kind.height).toDouble()),
+                    worldMap)
 
     fun removeObject(worldObjectId: Id<WorldObject>): WorldState =
-            WorldState(LinkedHashMap(worldObjects).apply { remove(worldObjectId) }, worldMap)
+            WorldState(objects.minus(worldObjectId), objectKinds.minus(worldObjectId), objectGrid.remove(worldObjectId), worldMap)
+
+    fun getGrid(): GridIndex<Id<WorldObject>> = objectGrid
+
+    /**
+     * Objects which area overlaps the rectangle. Objects that only touch the rectangle with an edge are not included,
+     * so the rectangle of a new object does not overlap the objects next to it.
+     */
+    fun getWorldObjectsInRectangle(minX: Double, minY: Double, maxX: Double, maxY: Double): List<Id<WorldObject>> {
+        val worldObjects = ArrayList<Id<WorldObject>>()
+        objectGrid.forEachCandidate(minX, minY, maxX, maxY) { id ->
+            val worldObject = objects[id]!!
+            val kind = objectKinds[id]!!
+            if (worldObject.x < maxX && worldObject.x + kind.width > minX && worldObject.y < maxY && worldObject.y + kind.height > minY) {
+                worldObjects.add(id)
+            }
+        }
+        return worldObjects
+    }
+
+    /**
+     * Objects which area is in the range from the center.
+     */
+    fun getWorldObjectsInRange(center: Point, range: Double): List<Id<WorldObject>> {
+        val worldObjects = ArrayList<Id<WorldObject>>()
+        objectGrid.forEachCandidate(center.x - range, center.y - range, center.x + range, center.y + range) { id ->
+            if (distanceToObject(center, id) <= range) {
+                worldObjects.add(id)
+            }
+        }
+        return worldObjects
+    }
+
+    /**
+     * @return the object which area is the closest to the center and not farther than the max distance, or null if there is no such object.
+     */
+    fun findNearestWorldObject(center: Point, maxDistance: Double): Id<WorldObject>? {
+        // range grows until an object is found, any closer object would be in the range
+        var range = Math.min(gridCellSize, maxDistance)
+        while (true) {
+            var nearest: Id<WorldObject>? = null
+            var nearestDistance = Double.MAX_VALUE
+            objectGrid.forEachCandidate(center.x - range, center.y - range, center.x + range, center.y + range) { id ->
+                val distance = distanceToObject(center, id)
+                if (distance <= range && distance < nearestDistance) {
+                    nearest = id
+                    nearestDistance = distance
+                }
+            }
+            if (nearest != null || range >= maxDistance) {
+                return nearest
+            }
+            range = Math.min(range * 2, maxDistance)
+        }
+    }
+
+    private fun distanceToObject(point: Point, id: Id<WorldObject>): Double {
+        val worldObject = objects[id]!!
+        val kind = objectKinds[id]!!
+        val dx = Math.max(0.0, Math.max(worldObject.x - point.x, point.x - (worldObject.x + kind.width)))
+        val dy = Math.max(0.0, Math.max(worldObject.y - point.y, point.y - (worldObject.y + kind.height)))
+        return Math.sqrt(dx * dx + dy * dy)
+    }
 
     fun getObject(id: Id<WorldObject>) = GeneralEntity(id, worldObjects[id]!!)
 
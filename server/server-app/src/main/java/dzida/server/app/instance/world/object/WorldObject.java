@@ -32,6 +32,10 @@ public final class WorldObject implements GeneralData<WorldObject> {
                 return y;
         }
 
+    public Instant getCreated() {
+        return created;
+    }
+
         @Override
         public boolean equals(Object o) {
                 if (this == o) return true;
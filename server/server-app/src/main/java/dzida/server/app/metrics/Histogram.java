@@ -0,0 +1,82 @@
+package dzida.server.app.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with the buckets of the powers of two, so recording a value is a single adder increment and it can be done
+ * from any thread. Percentiles are the upper bounds of the buckets, so they are accurate to the factor of two.
+ */
+public final class Histogram {
+    private static final int bucketsCount = 64;
+
+    private final LongAdder[] buckets = new LongAdder[bucketsCount];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < bucketsCount; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Bucket i contains the values from 2^(i-1) to 2^i - 1, the bucket 0 contains only zero.
+     */
+    private static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @param value non negative value, negative values are recorded as zero.
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        buckets[Math.min(bucket(recorded), bucketsCount - 1)].increment();
+        count.increment();
+        sum.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the upper bound of the bucket in which the given percentile of the values is.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < bucketsCount; i++) {
+            seen += buckets[i].sum();
+            if (seen >= threshold) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        long total = count.sum();
+        snapshot.put("count", total);
+        snapshot.put("mean", total == 0 ? 0 : sum.sum() / total);
+        snapshot.put("p50", getPercentile(50));
+        snapshot.put("p90", getPercentile(90));
+        snapshot.put("p99", getPercentile(99));
+        snapshot.put("max", max.get());
+        return snapshot;
+    }
+}
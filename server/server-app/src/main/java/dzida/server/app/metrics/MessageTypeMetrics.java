@@ -0,0 +1,49 @@
+package dzida.server.app.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Traffic of the messages of a single direction, split by the message type. Metrics of a type are registered when
+ * the first message of the type is recorded, under the names {@code <prefix>.<type>.count}, {@code .bytes} and
+ * {@code .nanos}. Bytes and nanos are histograms of the single messages.
+ */
+public final class MessageTypeMetrics {
+    private final Metrics metrics;
+    private final String prefix;
+    private final Map<String, TypeMetrics> types = new ConcurrentHashMap<>();
+
+    public MessageTypeMetrics(Metrics metrics, String prefix) {
+        this.metrics = metrics;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param bytes size of the message, negative if it's not known.
+     * @param nanos time of encoding or decoding the message.
+     */
+    public void record(String type, long bytes, long nanos) {
+        TypeMetrics typeMetrics = types.computeIfAbsent(type, this::register);
+        typeMetrics.nanos.record(nanos);
+        if (bytes >= 0) {
+            typeMetrics.bytes.record(bytes);
+        }
+    }
+
+    private TypeMetrics register(String type) {
+        String name = prefix + "." + type;
+        return new TypeMetrics(metrics.histogram(name + ".bytes"), metrics.histogram(name + ".nanos"), metrics, name + ".count");
+    }
+
+    private static final class TypeMetrics {
+        private final Histogram bytes;
+        private final Histogram nanos;
+
+        private TypeMetrics(Histogram bytes, Histogram nanos, Metrics metrics, String countName) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+            // every message has the time recorded, so the count of the time histogram is the count of the messages
+            metrics.gauge(countName, nanos::getCount);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dzida.server.app.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the server metrics. Metrics are read only when the snapshot is requested, so updating them is cheap
+ * and can be done from any thread.
+ */
+public final class Metrics {
+    private final Map<String, Supplier<?>> gauges = new ConcurrentSkipListMap<>();
+
+    public LongAdder counter(String name) {
+        LongAdder counter = new LongAdder();
+        gauge(name, counter::sum);
+        return counter;
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        gauge(name, histogram::snapshot);
+        return histogram;
+    }
+
+    public void gauge(String name, Supplier<?> gauge) {
+        if (gauges.putIfAbsent(name, gauge) != null) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered");
+        }
+    }
+
+    public void remove(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Returns current values of all the metrics sorted by the name.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+        return snapshot;
+    }
+}
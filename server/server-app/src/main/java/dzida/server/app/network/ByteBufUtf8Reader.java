@@ -0,0 +1,78 @@
+package dzida.server.app.network;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8 characters straight from the buffer, without copying the bytes and without a decoder buffer.
+ * Reader moves the reader index of the buffer, but it does not release the buffer.
+ */
+final class ByteBufUtf8Reader extends Reader {
+    private final ByteBuf buffer;
+    private char pendingLowSurrogate;
+
+    ByteBufUtf8Reader(ByteBuf buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = 0;
+        if (pendingLowSurrogate != 0) {
+            chars[offset + read++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+        while (read < length && buffer.isReadable()) {
+            int codePoint = readCodePoint();
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + read++] = (char) codePoint;
+                continue;
+            }
+            chars[offset + read++] = Character.highSurrogate(codePoint);
+            char lowSurrogate = Character.lowSurrogate(codePoint);
+            if (read < length) {
+                chars[offset + read++] = lowSurrogate;
+            } else {
+                pendingLowSurrogate = lowSurrogate;
+            }
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int readCodePoint() throws IOException {
+        int b = buffer.readUnsignedByte();
+        if (b < 0x80) {
+            return b;
+        }
+        if ((b & 0xe0) == 0xc0) {
+            return ((b & 0x1f) << 6) | readContinuation();
+        }
+        if ((b & 0xf0) == 0xe0) {
+            return ((b & 0x0f) << 12) | (readContinuation() << 6) | readContinuation();
+        }
+        if ((b & 0xf8) == 0xf0) {
+            return ((b & 0x07) << 18) | (readContinuation() << 12) | (readContinuation() << 6) | readContinuation();
+        }
+        throw new IOException("Malformed UTF-8 byte: " + b);
+    }
+
+    private int readContinuation() throws IOException {
+        if (!buffer.isReadable()) {
+            throw new IOException("Truncated UTF-8 sequence");
+        }
+        int b = buffer.readUnsignedByte();
+        if ((b & 0xc0) != 0x80) {
+            throw new IOException("Malformed UTF-8 continuation byte: " + b);
+        }
+        return b & 0x3f;
+    }
+}
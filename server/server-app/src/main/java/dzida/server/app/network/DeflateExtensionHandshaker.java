@@ -0,0 +1,57 @@
+package dzida.server.app.network;
+
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionDecoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+
+/**
+ * Negotiates the permessage-deflate extension using the netty handshaker, but replaces its encoder with the one that
+ * compresses only the frames above the threshold. Server does not accept the requests for a smaller window or for no
+ * context takeover, as the encoder always keeps the full context.
+ */
+final class DeflateExtensionHandshaker implements WebSocketServerExtensionHandshaker {
+    private static final int COMPRESSION_LEVEL = 6;
+    private static final int CLIENT_WINDOW_SIZE = 15;
+
+    private final PerMessageDeflateServerExtensionHandshaker handshaker = new PerMessageDeflateServerExtensionHandshaker(
+            COMPRESSION_LEVEL, false, CLIENT_WINDOW_SIZE, false, false);
+    private final int threshold;
+    private final DeflateFrameEncoder.Counters counters;
+
+    DeflateExtensionHandshaker(int threshold, DeflateFrameEncoder.Counters counters) {
+        this.threshold = threshold;
+        this.counters = counters;
+    }
+
+    @Override
+    public WebSocketServerExtension handshakeExtension(WebSocketExtensionData extensionData) {
+        WebSocketServerExtension extension = handshaker.handshakeExtension(extensionData);
+        if (extension == null) {
+            return null;
+        }
+        return new WebSocketServerExtension() {
+            @Override
+            public WebSocketExtensionData newReponseData() {
+                return extension.newReponseData();
+            }
+
+            @Override
+            public int rsv() {
+                return extension.rsv();
+            }
+
+            @Override
+            public WebSocketExtensionEncoder newExtensionEncoder() {
+                return new DeflateFrameEncoder(COMPRESSION_LEVEL, threshold, counters);
+            }
+
+            @Override
+            public WebSocketExtensionDecoder newExtensionDecoder() {
+                return extension.newExtensionDecoder();
+            }
+        };
+    }
+}
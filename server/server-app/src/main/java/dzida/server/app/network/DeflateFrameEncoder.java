@@ -0,0 +1,90 @@
+package dzida.server.app.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Permessage-deflate encoder that compresses only the data frames that are at least of the threshold size. Small
+ * frames are sent as they are, what is allowed by the extension, as the compression is marked per message with RSV1.
+ * Compression context is taken over between the messages.
+ */
+final class DeflateFrameEncoder extends WebSocketExtensionEncoder {
+    private static final int TAIL_LENGTH = 4; // 0x00 0x00 0xff 0xff of the sync flush that is removed from the message
+
+    private final Deflater deflater;
+    private final int threshold;
+    private final Counters counters;
+    private final byte[] deflateBuffer = new byte[8192];
+
+    DeflateFrameEncoder(int compressionLevel, int threshold, Counters counters) {
+        this.deflater = new Deflater(compressionLevel, true);
+        this.threshold = threshold;
+        this.counters = counters;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        if (!shouldCompress(frame)) {
+            out.add(frame.retain());
+            return;
+        }
+
+        ByteBuf content = frame.content();
+        int uncompressedSize = content.readableBytes();
+        ByteBuf compressed = deflate(ctx, content);
+        counters.frames.increment();
+        counters.bytesSaved.add(uncompressedSize - compressed.readableBytes());
+
+        int rsv = frame.rsv() | WebSocketExtension.RSV1;
+        if (frame instanceof TextWebSocketFrame) {
+            out.add(new TextWebSocketFrame(true, rsv, compressed));
+        } else {
+            out.add(new BinaryWebSocketFrame(true, rsv, compressed));
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        deflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+    private boolean shouldCompress(WebSocketFrame frame) {
+        return (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame)
+                && frame.isFinalFragment()
+                && (frame.rsv() & WebSocketExtension.RSV1) == 0
+                && frame.content().readableBytes() >= threshold;
+    }
+
+    private ByteBuf deflate(ChannelHandlerContext ctx, ByteBuf content) {
+        byte[] input = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), input);
+        deflater.setInput(input);
+
+        ByteBuf compressed = ctx.alloc().buffer(input.length / 2 + TAIL_LENGTH);
+        int written;
+        do {
+            written = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            compressed.writeBytes(deflateBuffer, 0, written);
+        } while (written == deflateBuffer.length);
+        compressed.writerIndex(compressed.writerIndex() - TAIL_LENGTH);
+        return compressed;
+    }
+
+    /**
+     * Counters shared by all the channels of the server.
+     */
+    static final class Counters {
+        final LongAdder frames = new LongAdder();
+        final LongAdder bytesSaved = new LongAdder();
+    }
+}
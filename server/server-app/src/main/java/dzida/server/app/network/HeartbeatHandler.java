@@ -0,0 +1,57 @@
+package dzida.server.app.network;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends a ping when the channel is idle and closes the channel when the client misses too many pongs in a row.
+ * Any message from the client counts as a pong. Has to be placed after an {@link io.netty.handler.timeout.IdleStateHandler}
+ * that detects the reader idle state.
+ */
+final class HeartbeatHandler extends ChannelHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatHandler.class);
+
+    private final int maxMissedPongs;
+    private final LongAdder deadClientDisconnections;
+    private int missedPongs;
+
+    HeartbeatHandler(int maxMissedPongs, LongAdder deadClientDisconnections) {
+        this.maxMissedPongs = maxMissedPongs;
+        this.deadClientDisconnections = deadClientDisconnections;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        missedPongs = 0;
+        if (msg instanceof PongWebSocketFrame) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent) || ((IdleStateEvent) evt).state() != IdleState.READER_IDLE) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        if (missedPongs >= maxMissedPongs) {
+            log.info("Disconnecting client " + ctx.channel().remoteAddress() + " that did not answer " + missedPongs + " pings");
+            deadClientDisconnections.increment();
+            ctx.close();
+            return;
+        }
+        missedPongs += 1;
+        ctx.writeAndFlush(new PingWebSocketFrame());
+    }
+}
@@ -0,0 +1,27 @@
+package dzida.server.app.network;
+
+/**
+ * Server pings the client that did not send anything for the interval. Client that does not answer the given number
+ * of pings in a row is considered dead and disconnected.
+ */
+public final class HeartbeatPolicy {
+    private final long intervalMillis;
+    private final int maxMissedPongs;
+
+    public HeartbeatPolicy(long intervalMillis, int maxMissedPongs) {
+        this.intervalMillis = intervalMillis;
+        this.maxMissedPongs = maxMissedPongs;
+    }
+
+    boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    int getMaxMissedPongs() {
+        return maxMissedPongs;
+    }
+}
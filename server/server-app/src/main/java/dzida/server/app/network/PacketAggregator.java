@@ -0,0 +1,90 @@
+package dzida.server.app.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Joins the dispatcher packets that are sent to the client in the same event loop iteration into a single packet, so
+ * the messages of all the servers go out in one frame. Packets are not copied, the joined packet is composed of the
+ * slices of the packets without the brackets between them. Each packet is an array of the server messages that
+ * starts and ends with a single byte, what is true for both JSON and binary packets.
+ * Aggregator is confined to the event loop of the channel.
+ */
+final class PacketAggregator {
+    static final int maxPacketBytes = 64 * 1024;
+    private static final ByteBuf jsonSeparator = Unpooled.unreleasableBuffer(Unpooled.directBuffer(1).writeByte(','));
+
+    private final List<ByteBuf> packets = new ArrayList<>();
+    private final ByteBuf separator;
+    private final Function<ByteBuf, WebSocketFrame> framer;
+    private int readableBytes;
+
+    private PacketAggregator(ByteBuf separator, Function<ByteBuf, WebSocketFrame> framer) {
+        this.separator = separator;
+        this.framer = framer;
+    }
+
+    static PacketAggregator json() {
+        return new PacketAggregator(jsonSeparator, TextWebSocketFrame::new);
+    }
+
+    static PacketAggregator binary() {
+        return new PacketAggregator(Unpooled.EMPTY_BUFFER, BinaryWebSocketFrame::new);
+    }
+
+    /**
+     * Takes over the packet, it's released when the joined frame is written.
+     */
+    void add(ByteBuf packet) {
+        packets.add(packet);
+        readableBytes += packet.readableBytes();
+    }
+
+    boolean isEmpty() {
+        return packets.isEmpty();
+    }
+
+    boolean isFull() {
+        return readableBytes >= maxPacketBytes;
+    }
+
+    /**
+     * Returns the frame with all the added packets and clears the aggregator.
+     */
+    WebSocketFrame take(ByteBufAllocator alloc) {
+        if (packets.size() == 1) {
+            return framer.apply(clear().get(0));
+        }
+        List<ByteBuf> taken = clear();
+        int last = taken.size() - 1;
+        CompositeByteBuf joined = alloc.compositeDirectBuffer(taken.size() * 2);
+        for (int i = 0; i <= last; i++) {
+            ByteBuf packet = taken.get(i);
+            // the opening bracket is left only in the first packet and the closing one only in the last packet
+            int start = i == 0 ? 0 : 1;
+            int end = i == last ? packet.readableBytes() : packet.readableBytes() - 1;
+            if (i > 0 && separator.isReadable()) {
+                joined.addComponent(separator.duplicate());
+            }
+            joined.addComponent(packet.slice(packet.readerIndex() + start, end - start));
+        }
+        joined.writerIndex(joined.capacity());
+        return framer.apply(joined);
+    }
+
+    private List<ByteBuf> clear() {
+        List<ByteBuf> taken = new ArrayList<>(packets);
+        packets.clear();
+        readableBytes = 0;
+        return taken;
+    }
+}
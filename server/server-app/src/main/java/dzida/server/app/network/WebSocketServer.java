@@ -1,8 +1,17 @@
 package dzida.server.app.network;
 
-import dzida.server.app.basic.connection.Connector;
+import com.google.gson.stream.JsonReader;
+import dzida.server.app.basic.connection.MessageWriter;
 import dzida.server.app.basic.connection.Server;
 import dzida.server.app.basic.connection.ServerConnection;
+import dzida.server.app.basic.connection.SharedMessage;
+import dzida.server.app.basic.connection.StreamingConnector;
+import dzida.server.app.basic.connection.StreamingServerConnection;
+import dzida.server.app.metrics.Metrics;
+import dzida.server.app.protocol.binary.BinaryEnvelopeCodec;
+import dzida.server.app.protocol.binary.BinaryJsonReader;
+import dzida.server.app.protocol.json.JsonEnvelopeEncoder;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -11,10 +20,19 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -26,6 +44,7 @@ import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
@@ -33,12 +52,23 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
 import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
@@ -50,33 +80,115 @@ public class WebSocketServer {
     private final EventLoopGroup workerGroup;
     private final EventLoopGroup bossGroup;
     private final EventLoop eventLoop;
-
-    public WebSocketServer() {
-        workerGroup = new NioEventLoopGroup(1);
-        bossGroup = new NioEventLoopGroup();
+    private final boolean epoll;
+    private final int acceptorThreads;
+    private final long flushMaxDelayMillis;
+    private final WriteCoalescer.Counters writeCounters;
+    private final int compressionThreshold;
+    private final DeflateFrameEncoder.Counters compressionCounters;
+    private final WriteBufferPolicy writeBufferPolicy;
+    private final ChannelGroup connections = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final LongAdder slowClientDisconnections;
+    private final HeartbeatPolicy heartbeatPolicy;
+    private final LongAdder deadClientDisconnections;
+
+    /**
+     * @param useEpoll if the native epoll transport should be used. Server falls back to NIO if epoll is not available on the system.
+     * @param acceptorThreads number of threads that accept connections. More than one is used only by epoll transport with SO_REUSEPORT.
+     * @param flushMaxDelayMillis max time the messages to the client are buffered before the flush. With 0 they are flushed once per event loop iteration.
+     * @param compressionThreshold minimal size in bytes of the frame that is compressed with the permessage-deflate extension. Negative value disables the extension.
+     * @param writeBufferPolicy limits of the data buffered for each client.
+     * @param heartbeatPolicy how the dead clients are detected.
+     */
+    public WebSocketServer(int workerThreads, int acceptorThreads, boolean useEpoll, long flushMaxDelayMillis, int compressionThreshold,
+                           WriteBufferPolicy writeBufferPolicy, HeartbeatPolicy heartbeatPolicy, Metrics metrics) {
+        epoll = useEpoll && Epoll.isAvailable();
+        if (useEpoll && !epoll) {
+            log.warn("Epoll transport is not available on this system, falling back to NIO");
+        }
+        this.acceptorThreads = epoll ? acceptorThreads : 1;
+        if (epoll) {
+            workerGroup = new EpollEventLoopGroup(workerThreads);
+            bossGroup = new EpollEventLoopGroup(this.acceptorThreads);
+        } else {
+            workerGroup = new NioEventLoopGroup(workerThreads);
+            bossGroup = new NioEventLoopGroup(this.acceptorThreads);
+        }
         eventLoop = workerGroup.next();
+        this.flushMaxDelayMillis = flushMaxDelayMillis;
+
+        writeCounters = new WriteCoalescer.Counters();
+        metrics.gauge("network.writes", writeCounters.writes::sum);
+        metrics.gauge("network.flushes", writeCounters.flushes::sum);
+        metrics.gauge("network.flushesSaved", writeCounters::flushesSaved);
+        metrics.gauge("network.packetsAggregated", writeCounters::packetsAggregated);
+
+        this.compressionThreshold = compressionThreshold;
+        compressionCounters = new DeflateFrameEncoder.Counters();
+        metrics.gauge("network.compressedFrames", compressionCounters.frames::sum);
+        metrics.gauge("network.compressionBytesSaved", compressionCounters.bytesSaved::sum);
+
+        this.writeBufferPolicy = writeBufferPolicy;
+        slowClientDisconnections = metrics.counter("network.slowClientDisconnections");
+        metrics.gauge("network.connections", connections::size);
+        metrics.gauge("network.pendingWriteBytes", this::getPendingWriteBytes);
+
+        this.heartbeatPolicy = heartbeatPolicy;
+        deadClientDisconnections = metrics.counter("network.deadClientDisconnections");
+    }
+
+    /**
+     * Returns bytes that are queued to be sent for each client connection, including the joined packets that are not
+     * written to the channel yet.
+     */
+    private Map<String, Long> getPendingWriteBytes() {
+        Map<String, Long> pendingWriteBytes = new TreeMap<>();
+        connections.forEach(channel -> {
+            ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+            WebSocketHandler handler = channel.pipeline().get(WebSocketHandler.class);
+            if (outboundBuffer != null) {
+                long aggregatedBytes = handler == null ? 0 : handler.getAggregatedBytes();
+                pendingWriteBytes.put(channel.id().asShortText(), outboundBuffer.totalPendingWriteBytes() + aggregatedBytes);
+            }
+        });
+        return pendingWriteBytes;
     }
 
     public void start(int port, Server<String> server) {
 
         try {
             ServerBootstrap b = new ServerBootstrap();
+            Class<? extends ServerChannel> channelClass = epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(channelClass)
                     .handler(new LoggingHandler(LogLevel.INFO))
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         public void initChannel(SocketChannel ch) throws Exception {
+                            writeBufferPolicy.apply(ch.config());
                             ChannelPipeline pipeline = ch.pipeline();
                             pipeline.addLast("encoder", new HttpResponseEncoder());
                             pipeline.addLast("decoder", new HttpRequestDecoder());
                             pipeline.addLast("aggregator", new HttpObjectAggregator(65536));
+                            if (compressionThreshold >= 0) {
+                                pipeline.addLast("extensions", new WebSocketServerExtensionHandler(
+                                        new DeflateExtensionHandshaker(compressionThreshold, compressionCounters)));
+                            }
                             //noinspection unchecked
-                            pipeline.addLast("handler", new WebSocketHandler(server));
+                            pipeline.addLast("handler", new WebSocketHandler(server, flushMaxDelayMillis, writeCounters, writeBufferPolicy.getMaxUnwritableMillis(), connections, slowClientDisconnections,
+                                    heartbeatPolicy, deadClientDisconnections));
                         }
                     });
 
-            b.bind(port).sync();
+            if (epoll && acceptorThreads > 1) {
+                // Each bind creates a separate listening socket on the next acceptor thread and kernel balances connections between them.
+                b.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            for (int i = 0; i < acceptorThreads; i++) {
+                b.bind(port).sync();
+            }
+            log.info("Game server is listening on port " + port + " using " + (epoll ? "epoll" : "nio") + " transport with " + acceptorThreads + " acceptor thread(s)");
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -86,6 +198,13 @@ public class WebSocketServer {
         return eventLoop;
     }
 
+    /**
+     * Returns the worker event loops in the round robin fashion, so the work assigned to them is spread across all the worker threads.
+     */
+    public EventLoop nextEventLoop() {
+        return workerGroup.next();
+    }
+
     public void shootDown() {
         try {
             bossGroup.shutdownGracefully().sync();
@@ -98,12 +217,33 @@ public class WebSocketServer {
     private static class WebSocketHandler extends SimpleChannelInboundHandler<Object> {
 
         private static final String WEBSOCKET_PATH = "/websocket";
+        private static final String JSON_SUBPROTOCOL = "dzida-json";
+        private static final String NESTED_JSON_SUBPROTOCOL = "dzida-json-nested";
+        private static final String BINARY_SUBPROTOCOL = "dzida-binary";
         private final Server<String> server;
+        private final long flushMaxDelayMillis;
+        private final WriteCoalescer.Counters writeCounters;
+        private final long maxUnwritableMillis;
+        private final ChannelGroup connections;
+        private final LongAdder slowClientDisconnections;
+        private final HeartbeatPolicy heartbeatPolicy;
+        private final LongAdder deadClientDisconnections;
         private WebSocketServerHandshaker handshaker;
         private ServerConnection<String> serverConnection;
+        private volatile WriteCoalescer writeCoalescer;
+        private ScheduledFuture<?> slowClientDisconnection;
 
-        public WebSocketHandler(Server<String> server) {
+        public WebSocketHandler(Server<String> server, long flushMaxDelayMillis, WriteCoalescer.Counters writeCounters,
+                                long maxUnwritableMillis, ChannelGroup connections, LongAdder slowClientDisconnections,
+                                HeartbeatPolicy heartbeatPolicy, LongAdder deadClientDisconnections) {
             this.server = server;
+            this.flushMaxDelayMillis = flushMaxDelayMillis;
+            this.writeCounters = writeCounters;
+            this.maxUnwritableMillis = maxUnwritableMillis;
+            this.connections = connections;
+            this.slowClientDisconnections = slowClientDisconnections;
+            this.heartbeatPolicy = heartbeatPolicy;
+            this.deadClientDisconnections = deadClientDisconnections;
         }
 
         private static void sendHttpResponse(ChannelHandlerContext ctx, FullHttpRequest req, FullHttpResponse res) {
@@ -127,7 +267,7 @@ public class WebSocketServer {
         }
 
         @Override
-        protected void messageReceived(ChannelHandlerContext ctx, Object msg) {
+        protected void messageReceived(ChannelHandlerContext ctx, Object msg) throws IOException {
             if (msg instanceof FullHttpRequest) {
                 if (serverConnection != null) {
                     fail(ctx, "Can not handle http request if connection is already established");
@@ -145,14 +285,47 @@ public class WebSocketServer {
 
         @Override
         public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+            if (slowClientDisconnection != null) {
+                slowClientDisconnection.cancel(false);
+                slowClientDisconnection = null;
+            }
             if (serverConnection != null) {
                 serverConnection.close();
             }
         }
 
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) {
+                if (slowClientDisconnection != null) {
+                    slowClientDisconnection.cancel(false);
+                    slowClientDisconnection = null;
+                }
+                if (serverConnection != null) {
+                    serverConnection.onWritable();
+                }
+            } else if (slowClientDisconnection == null) {
+                slowClientDisconnection = ctx.executor().schedule(() -> {
+                    log.warn("Disconnecting client " + ctx.channel().remoteAddress() + " that did not read the messages for " + maxUnwritableMillis + "ms");
+                    slowClientDisconnections.increment();
+                    ctx.close();
+                }, maxUnwritableMillis, TimeUnit.MILLISECONDS);
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        long getAggregatedBytes() {
+            WriteCoalescer writeCoalescer = this.writeCoalescer;
+            return writeCoalescer == null ? 0 : writeCoalescer.getAggregatedBytes();
+        }
+
         @Override
         public void channelReadComplete(ChannelHandlerContext ctx) {
-            ctx.flush();
+            if (writeCoalescer != null) {
+                writeCoalescer.flush();
+            } else {
+                ctx.flush();
+            }
         }
 
         private void handleHttpRequest(ChannelHandlerContext ctx, FullHttpRequest req) {
@@ -168,20 +341,33 @@ public class WebSocketServer {
                 return;
             }
 
-            // Handshake
+            // Handshake. Clients that do not request any sub protocol are using the legacy JSON.
             WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(
-                    getWebSocketLocation(req), null, true);
+                    getWebSocketLocation(req), BINARY_SUBPROTOCOL + "," + NESTED_JSON_SUBPROTOCOL + "," + JSON_SUBPROTOCOL, true);
             handshaker = wsFactory.newHandshaker(req);
             if (handshaker == null) {
                 WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
             } else {
-                Connector<String> connector = new Connector<String>() {
+                StreamingConnector connector = new StreamingConnector() {
                     private Channel channel;
+                    private String encoding;
+                    private boolean binary;
+                    private boolean nestedJson;
 
                     @Override
                     public void onOpen(ServerConnection<String> serverConnection) {
                         setServerConnection(serverConnection);
                         channel = handshaker.handshake(ctx.channel(), req).channel();
+                        encoding = handshaker.selectedSubprotocol() == null ? JSON_SUBPROTOCOL : handshaker.selectedSubprotocol();
+                        binary = BINARY_SUBPROTOCOL.equals(encoding);
+                        nestedJson = NESTED_JSON_SUBPROTOCOL.equals(encoding);
+                        writeCoalescer = new WriteCoalescer(channel, flushMaxDelayMillis, writeCounters, binary ? PacketAggregator.binary() : PacketAggregator.json());
+                        connections.add(channel);
+                        if (heartbeatPolicy.isEnabled()) {
+                            // pings can be sent only after the handshake. Closing the channel removes this handler, what closes the server connection.
+                            channel.pipeline().addBefore("handler", "idle", new IdleStateHandler(heartbeatPolicy.getIntervalMillis(), 0, 0, TimeUnit.MILLISECONDS));
+                            channel.pipeline().addBefore("handler", "heartbeat", new HeartbeatHandler(heartbeatPolicy.getMaxMissedPongs(), deadClientDisconnections));
+                        }
                     }
 
                     @Override
@@ -189,9 +375,80 @@ public class WebSocketServer {
                         channel.disconnect();
                     }
 
+                    @Override
+                    public boolean isWritable() {
+                        return channel.isWritable();
+                    }
+
+                    /**
+                     * Packets of the binary connections are encoded straight from the messages by the methods that
+                     * take the server key, the text packet would have to be parsed again.
+                     */
                     @Override
                     public void onMessage(String data) {
-                        channel.writeAndFlush(new TextWebSocketFrame(data));
+                        if (binary) {
+                            throw new UnsupportedOperationException("Binary connection takes only the messages of the servers, not the text packets");
+                        }
+                        writeCoalescer.write(new TextWebSocketFrame(data));
+                    }
+
+                    @Override
+                    public int onMessage(String serverKey, int channelId, String data) {
+                        return writePacket(encodePacket(out -> {
+                            if (binary) {
+                                BinaryEnvelopeCodec.encode(serverKey, channelId, data, out);
+                            } else if (nestedJson) {
+                                JsonEnvelopeEncoder.encodeNested(serverKey, channelId, data, out);
+                            } else {
+                                JsonEnvelopeEncoder.encode(serverKey, channelId, data, out);
+                            }
+                        }));
+                    }
+
+                    @Override
+                    public int onMessage(String serverKey, int channelId, MessageWriter message) {
+                        return writePacket(encodePacket(out -> encode(serverKey, channelId, message, out)));
+                    }
+
+                    /**
+                     * Packet is encoded only by the first client with the same encoding and channel, the others write the same buffer.
+                     */
+                    @Override
+                    public int onMessage(String serverKey, int channelId, SharedMessage message) {
+                        return writePacket(message.getPacket(encoding, serverKey, channelId, () -> encodePacket(out -> encode(serverKey, channelId, message.getWriter(), out))));
+                    }
+
+                    /**
+                     * Size is read before the packet is passed to the event loop, that may already write and release it.
+                     */
+                    private int writePacket(ByteBuf packet) {
+                        int size = packet.readableBytes();
+                        writeCoalescer.writePacket(packet);
+                        return size;
+                    }
+
+                    private void encode(String serverKey, int channelId, MessageWriter message, ByteBuf out) {
+                        if (binary) {
+                            BinaryEnvelopeCodec.encode(serverKey, channelId, message, out);
+                        } else if (nestedJson) {
+                            JsonEnvelopeEncoder.encodeNested(serverKey, channelId, message, out);
+                        } else {
+                            JsonEnvelopeEncoder.encode(serverKey, channelId, message, out);
+                        }
+                    }
+
+                    /**
+                     * Encodes the packet straight to a pooled direct buffer, that is passed to the socket without a copy.
+                     */
+                    private ByteBuf encodePacket(Consumer<ByteBuf> encoder) {
+                        ByteBuf buffer = channel.alloc().directBuffer();
+                        try {
+                            encoder.accept(buffer);
+                            return buffer;
+                        } catch (RuntimeException e) {
+                            buffer.release();
+                            throw e;
+                        }
                     }
                 };
                 server.onConnection(connector);
@@ -199,7 +456,7 @@ public class WebSocketServer {
             }
         }
 
-        private void handleWebSocketFrame(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        private void handleWebSocketFrame(ChannelHandlerContext ctx, WebSocketFrame frame) throws IOException {
 
             // Check for closing frame
             if (frame instanceof CloseWebSocketFrame) {
@@ -207,7 +464,20 @@ public class WebSocketServer {
                 return;
             }
             if (frame instanceof PingWebSocketFrame) {
-                ctx.channel().write(new PongWebSocketFrame(frame.content().retain()));
+                writeCoalescer.write(new PongWebSocketFrame(frame.content().retain()));
+                return;
+            }
+            if (frame instanceof PongWebSocketFrame) {
+                return;
+            }
+            // size is read before the readers consume the frame
+            int packetBytes = frame.content().readableBytes();
+            if (frame instanceof BinaryWebSocketFrame) {
+                if (serverConnection instanceof StreamingServerConnection) {
+                    ((StreamingServerConnection) serverConnection).send(new BinaryJsonReader(frame.content()), packetBytes);
+                } else {
+                    serverConnection.send(BinaryEnvelopeCodec.decode(frame.content()));
+                }
                 return;
             }
             if (!(frame instanceof TextWebSocketFrame)) {
@@ -215,9 +485,12 @@ public class WebSocketServer {
                         .getName()));
             }
 
-            // Send the uppercase string back.
-            String request = ((TextWebSocketFrame) frame).text();
-            serverConnection.send(request);
+            if (serverConnection instanceof StreamingServerConnection) {
+                // the frame is read before it's released, so the reader does not have to copy it
+                ((StreamingServerConnection) serverConnection).send(new JsonReader(new ByteBufUtf8Reader(frame.content())), packetBytes);
+            } else {
+                serverConnection.send(((TextWebSocketFrame) frame).text());
+            }
         }
 
         @Override
@@ -0,0 +1,37 @@
+package dzida.server.app.network;
+
+import io.netty.channel.ChannelConfig;
+
+/**
+ * Limits of the data buffered for a single client. Channel becomes not writable above the high water mark and writable
+ * again below the low one. Client that is not writable for longer than the max unwritable time is disconnected.
+ */
+public final class WriteBufferPolicy {
+    private final int lowWaterMark;
+    private final int highWaterMark;
+    private final long maxUnwritableMillis;
+
+    public WriteBufferPolicy(int lowWaterMark, int highWaterMark, long maxUnwritableMillis) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("Low water mark " + lowWaterMark + " is greater than the high water mark " + highWaterMark);
+        }
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+        this.maxUnwritableMillis = maxUnwritableMillis;
+    }
+
+    void apply(ChannelConfig config) {
+        // config validates each mark against the current other one, so the order depends on the current values
+        if (lowWaterMark > config.getWriteBufferHighWaterMark()) {
+            config.setWriteBufferHighWaterMark(highWaterMark);
+            config.setWriteBufferLowWaterMark(lowWaterMark);
+        } else {
+            config.setWriteBufferLowWaterMark(lowWaterMark);
+            config.setWriteBufferHighWaterMark(highWaterMark);
+        }
+    }
+
+    long getMaxUnwritableMillis() {
+        return maxUnwritableMillis;
+    }
+}
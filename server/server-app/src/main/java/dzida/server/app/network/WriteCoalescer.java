@@ -0,0 +1,177 @@
+package dzida.server.app.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoop;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers the writes to the channel and flushes them together. With no delay the flush happens once the event loop
+ * is done with the tasks that were queued before the first buffered write, otherwise at most after the given delay.
+ * Dispatcher packets written until the flush are joined by the {@link PacketAggregator} and written as a single frame.
+ * Other writes are buffered in order after the packets written before them.
+ * Joined packets are not in the outbound buffer of the channel yet, so the channel is made not writable when they
+ * would take the buffered bytes above the high water mark, until they are written.
+ * All the state is confined to the event loop of the channel.
+ */
+final class WriteCoalescer {
+    private static final int aggregatedPacketsWritabilityIndex = 1;
+
+    private final Channel channel;
+    private final EventLoop eventLoop;
+    private final long maxDelayMillis;
+    private final Counters counters;
+    @Nullable
+    private final PacketAggregator packetAggregator;
+    private final Runnable flushTask = this::flush;
+    private boolean flushScheduled;
+    private int pendingWrites;
+    private volatile int aggregatedBytes;
+    private boolean aggregatedPacketsUnwritable;
+
+    WriteCoalescer(Channel channel, long maxDelayMillis, Counters counters) {
+        this(channel, maxDelayMillis, counters, null);
+    }
+
+    WriteCoalescer(Channel channel, long maxDelayMillis, Counters counters, @Nullable PacketAggregator packetAggregator) {
+        this.channel = channel;
+        this.eventLoop = channel.eventLoop();
+        this.maxDelayMillis = maxDelayMillis;
+        this.counters = counters;
+        this.packetAggregator = packetAggregator;
+    }
+
+    public void write(Object message) {
+        if (eventLoop.inEventLoop()) {
+            bufferWrite(message);
+        } else {
+            eventLoop.execute(() -> bufferWrite(message));
+        }
+    }
+
+    /**
+     * Writes the dispatcher packet, that is joined with the other packets written until the flush.
+     */
+    public void writePacket(ByteBuf packet) {
+        if (packetAggregator == null) {
+            throw new IllegalStateException("Packets can be written only if the coalescer has an aggregator");
+        }
+        if (eventLoop.inEventLoop()) {
+            bufferPacket(packet);
+        } else {
+            eventLoop.execute(() -> bufferPacket(packet));
+        }
+    }
+
+    /**
+     * Flushes the buffered writes immediately. Has to be called on the event loop of the channel.
+     */
+    public void flush() {
+        flushScheduled = false;
+        writeAggregatedPackets();
+        if (pendingWrites == 0) {
+            return;
+        }
+        counters.flushes.increment();
+        pendingWrites = 0;
+        channel.flush();
+    }
+
+    /**
+     * Bytes of the joined packets that are not written to the channel yet. Can be read from any thread.
+     */
+    int getAggregatedBytes() {
+        return aggregatedBytes;
+    }
+
+    private void bufferWrite(Object message) {
+        writeAggregatedPackets();
+        writeToChannel(message);
+        scheduleFlush();
+    }
+
+    /**
+     * Packets are written early if the joined packet is already big, so the frames do not grow without a limit.
+     */
+    private void bufferPacket(ByteBuf packet) {
+        aggregatedBytes += packet.readableBytes();
+        packetAggregator.add(packet);
+        counters.packets.increment();
+        if (packetAggregator.isFull()) {
+            writeAggregatedPackets();
+        } else if (!aggregatedPacketsUnwritable && isAboveHighWaterMark()) {
+            setAggregatedPacketsWritable(false);
+        }
+        scheduleFlush();
+    }
+
+    private void writeAggregatedPackets() {
+        if (packetAggregator == null || packetAggregator.isEmpty()) {
+            return;
+        }
+        writeToChannel(packetAggregator.take(channel.alloc()));
+        counters.packetFrames.increment();
+        aggregatedBytes = 0;
+        // written bytes are counted by the outbound buffer of the channel from now on
+        if (aggregatedPacketsUnwritable) {
+            setAggregatedPacketsWritable(true);
+        }
+    }
+
+    private boolean isAboveHighWaterMark() {
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        long pendingBytes = outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+        return pendingBytes + aggregatedBytes > channel.config().getWriteBufferHighWaterMark();
+    }
+
+    private void setAggregatedPacketsWritable(boolean writable) {
+        aggregatedPacketsUnwritable = !writable;
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        if (outboundBuffer != null) {
+            outboundBuffer.setUserDefinedWritability(aggregatedPacketsWritabilityIndex, writable);
+        }
+    }
+
+    private void writeToChannel(Object message) {
+        channel.write(message, channel.voidPromise());
+        counters.writes.increment();
+        pendingWrites += 1;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        if (maxDelayMillis > 0) {
+            eventLoop.schedule(flushTask, maxDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            eventLoop.execute(flushTask);
+        }
+    }
+
+    /**
+     * Counters shared by all the channels of the server.
+     */
+    static final class Counters {
+        final LongAdder writes = new LongAdder();
+        final LongAdder flushes = new LongAdder();
+        final LongAdder packets = new LongAdder();
+        final LongAdder packetFrames = new LongAdder();
+
+        long flushesSaved() {
+            return writes.sum() - flushes.sum();
+        }
+
+        /**
+         * Packets that were joined with another packet instead of being written in an own frame.
+         */
+        long packetsAggregated() {
+            return packets.sum() - packetFrames.sum();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package dzida.server.app.protocol.binary;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dzida.server.app.basic.connection.MessageWriter;
+import dzida.server.app.protocol.json.JsonStreams;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Converts dispatcher packets between the JSON text and the binary format.
+ * In the text packet messages to servers are JSON strings. In the binary packet messages that are JSON documents
+ * are nested in the packet as binary values, so they are not encoded as a text at all. Other messages stay strings.
+ * Numeric channel ids, that are used instead of the server keys, stay numbers in both formats.
+ */
+public final class BinaryEnvelopeCodec {
+
+    private BinaryEnvelopeCodec() {
+        //no instance
+    }
+
+    public static void encode(String packet, ByteBuf out) {
+        try {
+            JsonReader in = new JsonReader(new StringReader(packet));
+            BinaryJsonWriter writer = new BinaryJsonWriter(out);
+            in.beginArray();
+            writer.beginArray();
+            while (in.hasNext()) {
+                in.beginArray();
+                writer.beginArray();
+                if (in.peek() == JsonToken.NUMBER) {
+                    writer.value(in.nextLong());
+                } else {
+                    writer.value(in.nextString());
+                }
+                writeMessage(in.nextString(), writer, out);
+                in.endArray();
+                writer.endArray();
+            }
+            in.endArray();
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the packet with a single message of the server.
+     */
+    public static void encode(String serverKey, String message, ByteBuf out) {
+        encode(serverKey, -1, message, out);
+    }
+
+    /**
+     * @param channelId id of the channel of the server that is written instead of the server key, ignored if it's negative.
+     */
+    public static void encode(String serverKey, int channelId, String message, ByteBuf out) {
+        try {
+            BinaryJsonWriter writer = new BinaryJsonWriter(out);
+            writer.beginArray();
+            writer.beginArray();
+            writeKey(serverKey, channelId, writer);
+            writeMessage(message, writer, out);
+            writer.endArray();
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the packet with a single message of the server, the message is nested in the packet.
+     */
+    public static void encode(String serverKey, MessageWriter message, ByteBuf out) {
+        encode(serverKey, -1, message, out);
+    }
+
+    public static void encode(String serverKey, int channelId, MessageWriter message, ByteBuf out) {
+        try {
+            BinaryJsonWriter writer = new BinaryJsonWriter(out);
+            writer.beginArray();
+            writer.beginArray();
+            writeKey(serverKey, channelId, writer);
+            message.writeTo(writer);
+            writer.endArray();
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String decode(ByteBuf in) {
+        try {
+            BinaryJsonReader reader = new BinaryJsonReader(in);
+            StringWriter packet = new StringWriter();
+            JsonWriter writer = new JsonWriter(packet);
+            reader.beginArray();
+            writer.beginArray();
+            while (reader.hasNext()) {
+                reader.beginArray();
+                writer.beginArray();
+                if (reader.peek() == JsonToken.NUMBER) {
+                    writer.value(reader.nextLong());
+                } else {
+                    writer.value(reader.nextString());
+                }
+                writer.value(readMessage(reader));
+                reader.endArray();
+                writer.endArray();
+            }
+            reader.endArray();
+            writer.endArray();
+            return packet.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeKey(String serverKey, int channelId, BinaryJsonWriter writer) throws IOException {
+        if (channelId >= 0) {
+            writer.value(channelId);
+        } else {
+            writer.value(serverKey);
+        }
+    }
+
+    private static void writeMessage(String message, BinaryJsonWriter writer, ByteBuf out) throws IOException {
+        if (!message.isEmpty() && (message.charAt(0) == '[' || message.charAt(0) == '{')) {
+            int writerIndex = out.writerIndex();
+            try {
+                JsonReader messageReader = new JsonReader(new StringReader(message));
+                // separate writer, so a failed copy does not leave a state in the packet writer
+                JsonStreams.copyValue(messageReader, new BinaryJsonWriter(out));
+                if (messageReader.peek() == JsonToken.END_DOCUMENT) {
+                    return;
+                }
+                out.writerIndex(writerIndex);
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                // message only looks like a JSON, it's sent as a string
+                out.writerIndex(writerIndex);
+            }
+        }
+        writer.value(message);
+    }
+
+    private static String readMessage(BinaryJsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        StringWriter message = new StringWriter();
+        JsonStreams.copyValue(reader, new JsonWriter(message));
+        return message.toString();
+    }
+}
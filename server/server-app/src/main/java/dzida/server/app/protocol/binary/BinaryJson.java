@@ -0,0 +1,69 @@
+package dzida.server.app.protocol.binary;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary representation of JSON values.
+ * Every value starts with a one byte tag. Integers are written as zig-zag var ints, doubles as 8 bytes and strings
+ * as a var int length followed by UTF-8 bytes. Object names are written as strings.
+ */
+final class BinaryJson {
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte INTEGER = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte BEGIN_ARRAY = 6;
+    static final byte END_ARRAY = 7;
+    static final byte BEGIN_OBJECT = 8;
+    static final byte END_OBJECT = 9;
+
+    private BinaryJson() {
+        //no instance
+    }
+
+    static void writeVarLong(ByteBuf out, long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    static long readVarLong(ByteBuf in) {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed var int in the binary packet");
+            }
+            b = in.readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    static void writeString(ByteBuf out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    static String readString(ByteBuf in) {
+        int length = (int) readVarLong(in);
+        String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+
+    static boolean isIntegral(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1L << 53
+                && !(value == 0.0 && Double.doubleToRawLongBits(value) != 0L);
+    }
+}
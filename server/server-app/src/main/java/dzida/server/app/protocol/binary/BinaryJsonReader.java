@@ -0,0 +1,282 @@
+package dzida.server.app.protocol.binary;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.netty.buffer.ByteBuf;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static dzida.server.app.protocol.binary.BinaryJson.BEGIN_ARRAY;
+import static dzida.server.app.protocol.binary.BinaryJson.BEGIN_OBJECT;
+import static dzida.server.app.protocol.binary.BinaryJson.DOUBLE;
+import static dzida.server.app.protocol.binary.BinaryJson.END_ARRAY;
+import static dzida.server.app.protocol.binary.BinaryJson.END_OBJECT;
+import static dzida.server.app.protocol.binary.BinaryJson.FALSE;
+import static dzida.server.app.protocol.binary.BinaryJson.INTEGER;
+import static dzida.server.app.protocol.binary.BinaryJson.NULL;
+import static dzida.server.app.protocol.binary.BinaryJson.STRING;
+import static dzida.server.app.protocol.binary.BinaryJson.TRUE;
+
+/**
+ * Json reader that reads values in the {@link BinaryJson} format straight from the buffer, so any Gson type adapter can read the binary format.
+ * Gson internal access to the text reader state (used only for the maps with complex keys) is not supported.
+ */
+public final class BinaryJsonReader extends JsonReader {
+    private static final int ARRAY = 0;
+    private static final int OBJECT_NAME = 1;
+    private static final int OBJECT_VALUE = 2;
+
+    private final ByteBuf in;
+    private int[] stack = new int[16];
+    private int stackSize = 0;
+
+    public BinaryJsonReader(ByteBuf in) {
+        super(new StringReader(""));
+        this.in = in;
+    }
+
+    @Override
+    public void beginArray() {
+        expect(BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+        push(ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+        expect(END_ARRAY, JsonToken.END_ARRAY);
+        stackSize--;
+        afterValue();
+    }
+
+    @Override
+    public void beginObject() {
+        expect(BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+        push(OBJECT_NAME);
+    }
+
+    @Override
+    public void endObject() {
+        expect(END_OBJECT, JsonToken.END_OBJECT);
+        stackSize--;
+        afterValue();
+    }
+
+    @Override
+    public boolean hasNext() {
+        JsonToken token = peek();
+        return token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() {
+        if (!in.isReadable()) {
+            return JsonToken.END_DOCUMENT;
+        }
+        byte tag = in.getByte(in.readerIndex());
+        switch (tag) {
+            case NULL:
+                return JsonToken.NULL;
+            case FALSE:
+            case TRUE:
+                return JsonToken.BOOLEAN;
+            case INTEGER:
+            case DOUBLE:
+                return JsonToken.NUMBER;
+            case STRING:
+                return isNameExpected() ? JsonToken.NAME : JsonToken.STRING;
+            case BEGIN_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case END_ARRAY:
+                return JsonToken.END_ARRAY;
+            case BEGIN_OBJECT:
+                return JsonToken.BEGIN_OBJECT;
+            case END_OBJECT:
+                return JsonToken.END_OBJECT;
+            default:
+                throw new IllegalStateException("Unknown tag " + tag + " in the binary packet");
+        }
+    }
+
+    @Override
+    public String nextName() {
+        if (!isNameExpected()) {
+            throw new IllegalStateException("Expected a name but was " + peek());
+        }
+        expect(STRING, JsonToken.NAME);
+        stack[stackSize - 1] = OBJECT_VALUE;
+        return BinaryJson.readString(in);
+    }
+
+    @Override
+    public String nextString() {
+        JsonToken token = peek();
+        String value;
+        if (token == JsonToken.STRING) {
+            in.skipBytes(1);
+            value = BinaryJson.readString(in);
+        } else if (token == JsonToken.NUMBER) {
+            value = readNumber().toString();
+        } else {
+            throw new IllegalStateException("Expected a string but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        JsonToken token = peek();
+        if (token != JsonToken.BOOLEAN) {
+            throw new IllegalStateException("Expected a boolean but was " + token);
+        }
+        boolean value = in.readByte() == TRUE;
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public void nextNull() {
+        expect(NULL, JsonToken.NULL);
+        afterValue();
+    }
+
+    @Override
+    public double nextDouble() {
+        JsonToken token = peek();
+        double value;
+        if (token == JsonToken.NUMBER) {
+            value = readNumber().doubleValue();
+        } else if (token == JsonToken.STRING) {
+            in.skipBytes(1);
+            value = parseDouble(BinaryJson.readString(in));
+        } else {
+            throw new IllegalStateException("Expected a double but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public long nextLong() {
+        JsonToken token = peek();
+        long value;
+        if (token == JsonToken.NUMBER) {
+            Number number = readNumber();
+            value = number.longValue();
+            if (number instanceof Double && value != number.doubleValue()) {
+                throw new NumberFormatException("Expected a long but was " + number);
+            }
+        } else if (token == JsonToken.STRING) {
+            in.skipBytes(1);
+            value = Long.parseLong(BinaryJson.readString(in));
+        } else {
+            throw new IllegalStateException("Expected a long but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public int nextInt() {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Names and values are tagged the same way, so the tokens are skipped until the end of the current value without tracking objects.
+     */
+    @Override
+    public void skipValue() {
+        int depth = 0;
+        do {
+            if (!in.isReadable()) {
+                throw new IllegalStateException("Unexpected end of the binary packet");
+            }
+            byte tag = in.readByte();
+            switch (tag) {
+                case INTEGER:
+                    BinaryJson.readVarLong(in);
+                    break;
+                case DOUBLE:
+                    in.skipBytes(8);
+                    break;
+                case STRING:
+                    in.skipBytes((int) BinaryJson.readVarLong(in));
+                    break;
+                case BEGIN_ARRAY:
+                case BEGIN_OBJECT:
+                    depth++;
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    depth--;
+                    break;
+            }
+        } while (depth > 0);
+        if (isNameExpected()) {
+            // skipped value was a name
+            stack[stackSize - 1] = OBJECT_VALUE;
+        } else {
+            afterValue();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return "$";
+    }
+
+    @Override
+    public void close() {
+        stackSize = 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " at " + in.readerIndex();
+    }
+
+    private Number readNumber() {
+        byte tag = in.readByte();
+        if (tag == INTEGER) {
+            return BinaryJson.readVarLong(in);
+        }
+        return in.readDouble();
+    }
+
+    private double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Expected a double but was " + value);
+        }
+    }
+
+    private boolean isNameExpected() {
+        return stackSize > 0 && stack[stackSize - 1] == OBJECT_NAME;
+    }
+
+    private void expect(byte tag, JsonToken token) {
+        if (!in.isReadable() || in.getByte(in.readerIndex()) != tag) {
+            throw new IllegalStateException("Expected " + token + " but was " + peek());
+        }
+        in.skipBytes(1);
+    }
+
+    private void push(int context) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = context;
+    }
+
+    private void afterValue() {
+        if (stackSize > 0 && stack[stackSize - 1] == OBJECT_VALUE) {
+            stack[stackSize - 1] = OBJECT_NAME;
+        }
+    }
+}
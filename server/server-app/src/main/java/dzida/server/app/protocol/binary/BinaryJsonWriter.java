@@ -0,0 +1,151 @@
+package dzida.server.app.protocol.binary;
+
+import com.google.common.io.CharStreams;
+import com.google.gson.stream.JsonWriter;
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigDecimal;
+
+import static dzida.server.app.protocol.binary.BinaryJson.BEGIN_ARRAY;
+import static dzida.server.app.protocol.binary.BinaryJson.BEGIN_OBJECT;
+import static dzida.server.app.protocol.binary.BinaryJson.DOUBLE;
+import static dzida.server.app.protocol.binary.BinaryJson.END_ARRAY;
+import static dzida.server.app.protocol.binary.BinaryJson.END_OBJECT;
+import static dzida.server.app.protocol.binary.BinaryJson.FALSE;
+import static dzida.server.app.protocol.binary.BinaryJson.INTEGER;
+import static dzida.server.app.protocol.binary.BinaryJson.NULL;
+import static dzida.server.app.protocol.binary.BinaryJson.STRING;
+import static dzida.server.app.protocol.binary.BinaryJson.TRUE;
+
+/**
+ * Json writer that writes values in the {@link BinaryJson} format, so any Gson type adapter can write directly to the binary format.
+ */
+public final class BinaryJsonWriter extends JsonWriter {
+    private final ByteBuf out;
+    private String deferredName;
+
+    public BinaryJsonWriter(ByteBuf out) {
+        super(CharStreams.nullWriter());
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        writeDeferredName();
+        out.writeByte(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        out.writeByte(END_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        writeDeferredName();
+        out.writeByte(BEGIN_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        out.writeByte(END_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (deferredName != null) {
+            throw new IllegalStateException("Name is already written: " + deferredName);
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        out.writeByte(STRING);
+        BinaryJson.writeString(out, value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if (deferredName != null && !getSerializeNulls()) {
+            // same as in the text writer, the name and the value are skipped
+            deferredName = null;
+            return this;
+        }
+        writeDeferredName();
+        out.writeByte(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        writeDeferredName();
+        out.writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        writeDeferredName();
+        if (BinaryJson.isIntegral(value)) {
+            out.writeByte(INTEGER);
+            BinaryJson.writeVarLong(out, (long) value);
+        } else {
+            out.writeByte(DOUBLE);
+            out.writeDouble(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        writeDeferredName();
+        out.writeByte(INTEGER);
+        BinaryJson.writeVarLong(out, value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        if (value instanceof BigDecimal) {
+            return value(value.toString());
+        }
+        return value(value.doubleValue());
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void writeDeferredName() {
+        if (deferredName == null) {
+            return;
+        }
+        out.writeByte(STRING);
+        BinaryJson.writeString(out, deferredName);
+        deferredName = null;
+    }
+}
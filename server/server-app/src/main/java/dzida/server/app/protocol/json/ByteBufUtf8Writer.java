@@ -0,0 +1,83 @@
+package dzida.server.app.protocol.json;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Writer;
+
+/**
+ * Encodes the characters straight to the buffer in UTF-8. Unpaired surrogates are written as '?'.
+ */
+final class ByteBufUtf8Writer extends Writer {
+    private final ByteBuf buffer;
+    private char pendingHighSurrogate;
+
+    ByteBufUtf8Writer(ByteBuf buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String string) {
+        write(string, 0, string.length());
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(string.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            buffer.writeByte('?');
+        }
+    }
+
+    private void writeChar(char c) {
+        if (pendingHighSurrogate != 0) {
+            char highSurrogate = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(highSurrogate, c);
+                buffer.writeByte(0xf0 | (codePoint >> 18));
+                buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                buffer.writeByte(0x80 | (codePoint & 0x3f));
+                return;
+            }
+            buffer.writeByte('?');
+        }
+        if (c < 0x80) {
+            buffer.writeByte(c);
+        } else if (c < 0x800) {
+            buffer.writeByte(0xc0 | (c >> 6));
+            buffer.writeByte(0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.writeByte('?');
+        } else {
+            buffer.writeByte(0xe0 | (c >> 12));
+            buffer.writeByte(0x80 | ((c >> 6) & 0x3f));
+            buffer.writeByte(0x80 | (c & 0x3f));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package dzida.server.app.protocol.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dzida.server.app.basic.connection.MessageWriter;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the dispatcher packet with a single message straight to the buffer, as the UTF-8 JSON text.
+ * In the legacy JSON packet the message is a string, so the message is escaped while it's written.
+ * In the nested JSON packet messages that are JSON documents are nested in the packet as they are, so the client
+ * reads the whole packet in a single pass. Other messages stay strings.
+ * Packets of the servers to which the client connected with a channel id, have the numeric channel id instead of
+ * the server key.
+ */
+public final class JsonEnvelopeEncoder {
+
+    private JsonEnvelopeEncoder() {
+        //no instance
+    }
+
+    public static void encode(String serverKey, String message, ByteBuf out) {
+        encode(serverKey, -1, message, out);
+    }
+
+    /**
+     * @param channelId id of the channel of the server that is written instead of the server key, ignored if it's negative.
+     */
+    public static void encode(String serverKey, int channelId, String message, ByteBuf out) {
+        try {
+            ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+            JsonStringEscapingWriter escapingWriter = new JsonStringEscapingWriter(writer);
+            writeStart(serverKey, channelId, writer, escapingWriter);
+            escapingWriter.write(message);
+            writeEnd(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void encode(String serverKey, MessageWriter message, ByteBuf out) {
+        encode(serverKey, -1, message, out);
+    }
+
+    public static void encode(String serverKey, int channelId, MessageWriter message, ByteBuf out) {
+        try {
+            ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+            JsonStringEscapingWriter escapingWriter = new JsonStringEscapingWriter(writer);
+            writeStart(serverKey, channelId, writer, escapingWriter);
+            JsonWriter messageWriter = new JsonWriter(escapingWriter);
+            message.writeTo(messageWriter);
+            messageWriter.flush();
+            writeEnd(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void encodeNested(String serverKey, String message, ByteBuf out) {
+        encodeNested(serverKey, -1, message, out);
+    }
+
+    public static void encodeNested(String serverKey, int channelId, String message, ByteBuf out) {
+        try {
+            ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+            writeNestedStart(serverKey, channelId, writer);
+            if (!writeJsonDocument(message, out)) {
+                JsonStringEscapingWriter escapingWriter = new JsonStringEscapingWriter(writer);
+                writer.write('"');
+                escapingWriter.write(message);
+                writer.write('"');
+            }
+            writer.write("]]");
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void encodeNested(String serverKey, MessageWriter message, ByteBuf out) {
+        encodeNested(serverKey, -1, message, out);
+    }
+
+    public static void encodeNested(String serverKey, int channelId, MessageWriter message, ByteBuf out) {
+        try {
+            ByteBufUtf8Writer writer = new ByteBufUtf8Writer(out);
+            writeNestedStart(serverKey, channelId, writer);
+            JsonWriter messageWriter = new JsonWriter(writer);
+            message.writeTo(messageWriter);
+            messageWriter.flush();
+            writer.write("]]");
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNestedStart(String serverKey, int channelId, ByteBufUtf8Writer writer) throws IOException {
+        writer.write("[[");
+        writeKey(serverKey, channelId, writer, new JsonStringEscapingWriter(writer));
+        writer.write(',');
+    }
+
+    /**
+     * Copies the message to the buffer if it's a single JSON array or object. Otherwise the buffer is left untouched.
+     */
+    private static boolean writeJsonDocument(String message, ByteBuf out) {
+        if (message.isEmpty() || (message.charAt(0) != '[' && message.charAt(0) != '{')) {
+            return false;
+        }
+        int writerIndex = out.writerIndex();
+        try {
+            JsonReader messageReader = new JsonReader(new StringReader(message));
+            // separate writer, so a failed copy does not leave a state in the packet writer
+            ByteBufUtf8Writer documentWriter = new ByteBufUtf8Writer(out);
+            JsonWriter jsonWriter = new JsonWriter(documentWriter);
+            JsonStreams.copyValue(messageReader, jsonWriter);
+            if (messageReader.peek() == JsonToken.END_DOCUMENT) {
+                jsonWriter.flush();
+                documentWriter.close();
+                return true;
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // message only looks like a JSON, it's sent as a string
+        }
+        out.writerIndex(writerIndex);
+        return false;
+    }
+
+    private static void writeStart(String serverKey, int channelId, ByteBufUtf8Writer writer, JsonStringEscapingWriter escapingWriter) throws IOException {
+        writer.write("[[");
+        writeKey(serverKey, channelId, writer, escapingWriter);
+        writer.write(",\"");
+    }
+
+    private static void writeKey(String serverKey, int channelId, ByteBufUtf8Writer writer, JsonStringEscapingWriter escapingWriter) throws IOException {
+        if (channelId >= 0) {
+            writer.write(Integer.toString(channelId));
+        } else {
+            writer.write('"');
+            escapingWriter.write(serverKey);
+            writer.write('"');
+        }
+    }
+
+    private static void writeEnd(ByteBufUtf8Writer writer) {
+        writer.write("\"]]");
+        writer.close();
+    }
+}
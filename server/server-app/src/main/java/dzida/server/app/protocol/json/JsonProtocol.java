@@ -1,22 +1,31 @@
 package dzida.server.app.protocol.json;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import dzida.server.app.serialization.BasicJsonSerializer;
 import dzida.server.app.serialization.MessageSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Predicate;
 
 public final class JsonProtocol {
-    private final Gson gson;
+    private static final Logger log = LoggerFactory.getLogger(JsonProtocol.class);
+
     private final MessageSerializer inputSerializer;
     private final MessageSerializer outputSerializer;
 
-    private JsonProtocol(Gson gson, MessageSerializer inputSerializer, MessageSerializer outputSerializer) {
-        this.gson = gson;
+    private JsonProtocol(MessageSerializer inputSerializer, MessageSerializer outputSerializer) {
         this.inputSerializer = inputSerializer;
         this.outputSerializer = outputSerializer;
     }
@@ -28,23 +37,114 @@ public final class JsonProtocol {
     public static JsonProtocol create(Gson serializer, ImmutableSet<Class<?>> inputMessageClasses, ImmutableSet<Class<?>> outputMessageClasses) {
         MessageSerializer inputSerializer = MessageSerializer.create(serializer, inputMessageClasses);
         MessageSerializer outputSerializer = MessageSerializer.create(serializer, outputMessageClasses);
-        return new JsonProtocol(serializer, inputSerializer, outputSerializer);
+        return new JsonProtocol(inputSerializer, outputSerializer);
     }
 
     @Nullable
     public Object parseMessage(String jsonMessage) {
-        JsonArray message = gson.fromJson(jsonMessage, JsonArray.class);
-        String type = message.get(0).getAsString();
-        assert inputSerializer.isSupportedTypeName(type) : "Unsupported message type: " + type;
-        JsonElement data = message.get(1);
-        return inputSerializer.parseEvent(data, type);
+        try {
+            return parseMessage(new JsonReader(new StringReader(jsonMessage)));
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads a single message from the stream. Message is parsed straight to the message class, without an intermediate tree.
+     * Message may be nested in the stream or be a string with the message text. Type of the message may be given by
+     * its name or by its numeric id.
+     */
+    @Nullable
+    public Object parseMessage(JsonReader reader) throws IOException {
+        return parseMessage(reader, type -> true);
+    }
+
+    /**
+     * Reads a single message from the stream, like {@link #parseMessage(JsonReader)}, but the message is parsed only
+     * if its type is accepted by the filter. Data of the rejected message is skipped without being parsed.
+     *
+     * @return the message, or null if its type is rejected or not supported by the protocol.
+     */
+    @Nullable
+    public Object parseMessage(JsonReader reader, Predicate<String> typeFilter) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return parseMessage(new JsonReader(new StringReader(reader.nextString())), typeFilter);
+        }
+        reader.beginArray();
+        int typeId;
+        String type;
+        if (reader.peek() == JsonToken.NUMBER) {
+            typeId = reader.nextInt();
+            type = inputSerializer.getTypeName(typeId);
+        } else {
+            type = reader.nextString();
+            typeId = inputSerializer.getTypeId(type);
+        }
+        Object message;
+        if (typeId < 0 || type == null) {
+            // the message comes from the client, so it's skipped instead of failing the whole packet
+            log.warn("Skipped message of unsupported type: {}", type == null ? typeId : type);
+            reader.skipValue();
+            message = null;
+        } else if (typeFilter.test(type)) {
+            message = inputSerializer.parseSafe(reader, typeId);
+        } else {
+            reader.skipValue();
+            message = null;
+        }
+        reader.endArray();
+        return message;
     }
 
     @Nullable
     public String serializeMessage(Object message) {
         assert outputSerializer.isSupportedType(message) : "Unsupported message type: " + outputSerializer.getMessageType(message);
-        String type = outputSerializer.getMessageType(message);
-        JsonElement data = outputSerializer.serializeMessageToJsonTree(message);
-        return gson.toJson(ImmutableList.of(type, data));
+        StringWriter data = new StringWriter();
+        try {
+            writeMessage(message, new JsonWriter(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return data.toString();
+    }
+
+    /**
+     * Writes the message straight to the stream, in the same form as {@link #serializeMessage(Object)}.
+     */
+    public void writeMessage(Object message, JsonWriter out) throws IOException {
+        assert outputSerializer.isSupportedType(message) : "Unsupported message type: " + outputSerializer.getMessageType(message);
+        out.beginArray();
+        out.value(outputSerializer.getMessageType(message));
+        outputSerializer.writeMessage(message, out);
+        out.endArray();
+    }
+
+    /**
+     * Writes the message like {@link #writeMessage(Object, JsonWriter)}, but the type of the message is written as
+     * its numeric id. Client has to know the {@link #getOutputTypeNames() output types} to read it.
+     */
+    public void writeMessageWithTypeId(Object message, JsonWriter out) throws IOException {
+        int typeId = outputSerializer.getTypeId(message);
+        if (typeId < 0) {
+            throw new IllegalArgumentException("Unsupported message type: " + outputSerializer.getMessageType(message));
+        }
+        out.beginArray();
+        out.value(typeId);
+        outputSerializer.writeMessage(message, out);
+        out.endArray();
+    }
+
+    /**
+     * Names of the messages that are read by the protocol, each at the position of its type id.
+     */
+    public List<String> getInputTypeNames() {
+        return inputSerializer.getTypeNames();
+    }
+
+    /**
+     * Names of the messages that are written by the protocol, each at the position of its type id.
+     */
+    public List<String> getOutputTypeNames() {
+        return outputSerializer.getTypeNames();
     }
 }
@@ -0,0 +1,84 @@
+package dzida.server.app.protocol.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public final class JsonStreams {
+
+    private JsonStreams() {
+        //no instance
+    }
+
+    /**
+     * Copies a single value with all the nested values from the reader to the writer.
+     */
+    public static void copyValue(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyValue(in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copyValue(in, out);
+                }
+                in.endObject();
+                out.endObject();
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                String number = in.nextString();
+                if (isIntegral(number)) {
+                    out.value(Long.parseLong(number));
+                } else {
+                    out.value(Double.parseDouble(number));
+                }
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Expected a value but was " + in.peek());
+        }
+    }
+
+    /**
+     * Reads a string value, or a nested value as its JSON text.
+     */
+    public static String readAsString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return in.nextString();
+        }
+        StringWriter value = new StringWriter();
+        copyValue(in, new JsonWriter(value));
+        return value.toString();
+    }
+
+    private static boolean isIntegral(String number) {
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return number.length() < 19;
+    }
+}
@@ -0,0 +1,76 @@
+package dzida.server.app.protocol.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes everything that is written, so it can be put inside of a JSON string.
+ */
+final class JsonStringEscapingWriter extends Writer {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    JsonStringEscapingWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        writeEscaped((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeEscaped(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeEscaped(string.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        switch (c) {
+            case '"':
+                out.write("\\\"");
+                return;
+            case '\\':
+                out.write("\\\\");
+                return;
+            case '\n':
+                out.write("\\n");
+                return;
+            case '\r':
+                out.write("\\r");
+                return;
+            case '\t':
+                out.write("\\t");
+                return;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    out.write("\\u");
+                    out.write(HEX_DIGITS[c >> 12]);
+                    out.write(HEX_DIGITS[(c >> 8) & 0xf]);
+                    out.write(HEX_DIGITS[(c >> 4) & 0xf]);
+                    out.write(HEX_DIGITS[c & 0xf]);
+                } else {
+                    out.write(c);
+                }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dzida.server.app.rest;
+
+import co.cask.http.HttpResponder;
+import dzida.server.app.metrics.Metrics;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+public class MetricsResource extends AbstractResource {
+
+    private final Metrics metrics;
+
+    public MetricsResource(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Path("metrics")
+    @GET
+    public void metrics(HttpRequest request, HttpResponder responder) {
+        sendObject(responder, metrics.snapshot());
+    }
+}
@@ -51,10 +51,7 @@ public final class BasicJsonSerializer {
         }
     };
 
-    private static final GsonBuilder gsonBuilder = new GsonBuilder()
-            .registerTypeHierarchyAdapter(Id.class, idTypeAdapter)
-            .registerTypeHierarchyAdapter(Key.class, keyTypeAdapter)
-            .registerTypeHierarchyAdapter(Instant.class, instantTypeAdapter);
+    private static final GsonBuilder gsonBuilder = createSerializerBuilder();
 
     private static final Gson gson = gsonBuilder.create();
 
@@ -69,4 +66,14 @@ public final class BasicJsonSerializer {
     public static GsonBuilder getSerializerBuilder() {
         return gsonBuilder;
     }
+
+    /**
+     * Creates a new builder with the basic adapters, to which adapters of a single protocol can be added.
+     */
+    public static GsonBuilder createSerializerBuilder() {
+        return new GsonBuilder()
+                .registerTypeHierarchyAdapter(Id.class, idTypeAdapter)
+                .registerTypeHierarchyAdapter(Key.class, keyTypeAdapter)
+                .registerTypeHierarchyAdapter(Instant.class, instantTypeAdapter);
+    }
 }
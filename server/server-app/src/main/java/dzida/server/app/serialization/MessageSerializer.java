@@ -1,22 +1,54 @@
 package dzida.server.app.serialization;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
-
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
-
+import java.util.stream.Collectors;
+
+/**
+ * Messages are read and written straight from and to the streams with the type adapters of Gson, without an
+ * intermediate tree.
+ * Each registered class gets also a numeric type id, that is its position in the registered set. Ids are stable only
+ * if the new classes are added at the end of the set.
+ */
 public class MessageSerializer {
     private final Gson serializer;
-    private final Map<String, Class<?>> messageClasses;
+    private final List<MessageType> types;
+    private final Map<String, MessageType> typesByName;
+    private final Map<Class<?>, MessageType> typesByClass;
 
-    private MessageSerializer(Gson serializer, Map<String, Class<?>> messageClasses) {
+    private MessageSerializer(Gson serializer, List<MessageType> types) {
         this.serializer = serializer;
-        this.messageClasses = messageClasses;
+        this.types = types;
+        Map<String, MessageType> typesByName = new HashMap<>();
+        Map<Class<?>, MessageType> typesByClass = new HashMap<>();
+        types.forEach(type -> {
+            typesByName.put(type.name, type);
+            typesByClass.put(type.messageClass, type);
+        });
+        this.typesByName = ImmutableMap.copyOf(typesByName);
+        this.typesByClass = ImmutableMap.copyOf(typesByClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypeAdapter<Object> getAdapter(Gson serializer, Class<?> messageClass) {
+        return (TypeAdapter<Object>) serializer.getAdapter(messageClass);
     }
 
     private static String getMessageTypeFromClass(Class<?> event) {
@@ -29,6 +61,7 @@ public class MessageSerializer {
 
     public static MessageSerializer create(Gson serializer, ImmutableSet<Class<?>> messageClasses) {
         Map<String, Class<?>> messageClassesMap = new HashMap<>();
+        ImmutableList.Builder<MessageType> types = ImmutableList.builder();
         messageClasses.forEach(messageClass -> {
             String messageType = getMessageTypeFromClass(messageClass);
             if (messageClassesMap.containsKey(messageType)) {
@@ -40,13 +73,14 @@ public class MessageSerializer {
                             "Duplicated classes: " + messageClassesMap.get(messageType).getName() + " & " + messageClass.getName());
                 }
             }
+            types.add(new MessageType(messageClassesMap.size(), messageType, messageClass));
             messageClassesMap.put(messageType, messageClass);
         });
-        return new MessageSerializer(serializer, ImmutableMap.copyOf(messageClassesMap));
+        return new MessageSerializer(serializer, types.build());
     }
 
     public Object parseEvent(String data, String type) {
-        return parseSafe((eventClass) -> serializer.fromJson(data, eventClass), type);
+        return parseSafe((eventClass) -> readMessage(new JsonReader(new StringReader(data)), eventClass), type);
     }
 
     public Object parseEvent(JsonElement data, String type) {
@@ -55,23 +89,80 @@ public class MessageSerializer {
 
     public Object parseSafe(Function<Class<?>, Object> parse, String type) {
         try {
-            Class<?> eventClass = messageClasses.get(type);
-            if (eventClass == null) {
+            MessageType messageType = typesByName.get(type);
+            if (messageType == null) {
                 return null;
             }
-            return parse.apply(eventClass);
+            return parse.apply(messageType.messageClass);
         } catch (JsonSyntaxException | IllegalStateException | UnsupportedOperationException e) {
             e.printStackTrace();
             return null;
         }
     }
 
-    public String serializeMessage(Object message) {
-        return serializer.toJson(message);
+    /**
+     * Reads the message with the given type id straight from the stream, like {@link #parseSafe(Function, String)} it returns null
+     * if the message can not be parsed.
+     */
+    @Nullable
+    public Object parseSafe(JsonReader in, int typeId) {
+        MessageType messageType = getType(typeId);
+        if (messageType == null) {
+            return null;
+        }
+        try {
+            return readMessage(in, messageType.messageClass);
+        } catch (JsonSyntaxException | IllegalStateException | UnsupportedOperationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the message of the given class straight from the stream. Stream errors are reported as {@link JsonSyntaxException}, as Gson does.
+     */
+    public Object readMessage(JsonReader in, Class<?> messageClass) {
+        TypeAdapter<Object> adapter = getAdapter(serializer, messageClass);
+        boolean lenient = in.isLenient();
+        in.setLenient(true);
+        try {
+            return adapter.read(in);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        } finally {
+            in.setLenient(lenient);
+        }
     }
 
-    public JsonElement serializeMessageToJsonTree(Object message) {
-        return serializer.toJsonTree(message);
+    /**
+     * Writes the message straight to the stream. Null fields are skipped and the HTML characters are escaped, as Gson
+     * does by default.
+     */
+    public void writeMessage(Object message, JsonWriter out) throws IOException {
+        TypeAdapter<Object> adapter = getAdapter(serializer, message.getClass());
+        boolean lenient = out.isLenient();
+        boolean serializeNulls = out.getSerializeNulls();
+        boolean htmlSafe = out.isHtmlSafe();
+        out.setLenient(true);
+        out.setSerializeNulls(false);
+        out.setHtmlSafe(true);
+        try {
+            adapter.write(out, message);
+        } finally {
+            out.setLenient(lenient);
+            out.setSerializeNulls(serializeNulls);
+            out.setHtmlSafe(htmlSafe);
+        }
+    }
+
+    public String serializeMessage(Object message) {
+        StringWriter data = new StringWriter();
+        try {
+            writeMessage(message, new JsonWriter(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return data.toString();
     }
 
     public String getMessageType(Object message) {
@@ -79,11 +170,42 @@ public class MessageSerializer {
     }
 
     public String getMessageType(Class<?> messageClass) {
-        return getMessageTypeFromClass(messageClass);
+        MessageType messageType = typesByClass.get(messageClass);
+        return messageType == null ? getMessageTypeFromClass(messageClass) : messageType.name;
     }
 
     public Class<?> getMessageClass(String messageType) {
-        return messageClasses.get(messageType);
+        MessageType type = typesByName.get(messageType);
+        return type == null ? null : type.messageClass;
+    }
+
+    /**
+     * @return id of the message type or -1 if the message is not registered.
+     */
+    public int getTypeId(Object message) {
+        MessageType messageType = typesByClass.get(message.getClass());
+        return messageType == null ? -1 : messageType.id;
+    }
+
+    /**
+     * @return id of the message type or -1 if the type is not registered.
+     */
+    public int getTypeId(String typeName) {
+        MessageType messageType = typesByName.get(typeName);
+        return messageType == null ? -1 : messageType.id;
+    }
+
+    @Nullable
+    public String getTypeName(int typeId) {
+        MessageType messageType = getType(typeId);
+        return messageType == null ? null : messageType.name;
+    }
+
+    /**
+     * Names of all the registered message types, each at the position of its type id.
+     */
+    public List<String> getTypeNames() {
+        return types.stream().map(type -> type.name).collect(Collectors.toList());
     }
 
     public boolean isSupportedType(Object message) {
@@ -91,10 +213,27 @@ public class MessageSerializer {
     }
 
     public boolean isSupportedType(Class<?> messageClass) {
-        return isSupportedTypeName(getMessageTypeFromClass(messageClass));
+        return typesByClass.containsKey(messageClass);
     }
 
     public boolean isSupportedTypeName(String type) {
-        return messageClasses.containsKey(type);
+        return typesByName.containsKey(type);
+    }
+
+    @Nullable
+    private MessageType getType(int typeId) {
+        return typeId >= 0 && typeId < types.size() ? types.get(typeId) : null;
+    }
+
+    private static final class MessageType {
+        private final int id;
+        private final String name;
+        private final Class<?> messageClass;
+
+        private MessageType(int id, String name, Class<?> messageClass) {
+            this.id = id;
+            this.name = name;
+            this.messageClass = messageClass;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package dzida.server.app.store.database;
 
+import com.querydsl.sql.dml.SQLInsertClause;
 import dzida.server.app.basic.entity.Key;
 import dzida.server.app.database.ConnectionProvider;
 import dzida.server.app.instance.Instance;
@@ -8,6 +9,8 @@ import dzida.server.app.instance.InstanceStore;
 import dzida.server.app.instance.event.GameEvent;
 import dzida.server.app.serialization.MessageSerializer;
 
+import java.util.List;
+
 import static dzida.server.app.querydsl.QInstanceEvent.instanceEvent;
 
 public class InstanceStoreDb implements InstanceStore {
@@ -32,4 +35,23 @@ public class InstanceStoreDb implements InstanceStore {
                     .execute();
         });
     }
+
+    /**
+     * Events are inserted in a single batch statement.
+     */
+    @Override
+    public void saveEvents(Key<Instance> instanceKey, List<GameEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        connectionProvider.withSqlFactory(sqlQueryFactory -> {
+            SQLInsertClause insert = sqlQueryFactory.insert(instanceEvent);
+            events.forEach(event -> insert
+                    .set(instanceEvent.instanceKey, instanceKey.getValue())
+                    .set(instanceEvent.type, instanceEventSerializer.getMessageType(event))
+                    .set(instanceEvent.data, instanceEventSerializer.serializeMessage(event))
+                    .addBatch());
+            insert.execute();
+        });
+    }
 }
@@ -0,0 +1,114 @@
+package dzida.server.app;
+
+import dzida.server.app.time.TimeService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Scheduler and time service of the tests. The time stands still and the scheduled commands are run only when the test
+ * advances the time.
+ */
+public class ManualScheduler implements Scheduler, TimeService {
+    private final List<Task> tasks = new ArrayList<>();
+    private long currentMillis;
+
+    public ManualScheduler(long currentMillis) {
+        this.currentMillis = currentMillis;
+    }
+
+    /**
+     * Moves the time forward and runs the commands that were due in that time, in order of their times.
+     */
+    public void advance(long millis) {
+        long targetMillis = currentMillis + millis;
+        while (true) {
+            Task next = tasks.stream()
+                    .filter(task -> task.time <= targetMillis)
+                    .min(Comparator.comparingLong(task -> task.time))
+                    .orElse(null);
+            if (next == null) {
+                break;
+            }
+            tasks.remove(next);
+            currentMillis = Math.max(currentMillis, next.time);
+            next.runTask();
+        }
+        currentMillis = targetMillis;
+    }
+
+    /**
+     * Runs the commands that are due now, e.g. the executed ones.
+     */
+    public void runPending() {
+        advance(0);
+    }
+
+    public long getPendingTasksCount() {
+        return tasks.stream().filter(task -> !task.isCancelled()).count();
+    }
+
+    @Override
+    public long getCurrentMillis() {
+        return currentMillis;
+    }
+
+    @Override
+    public Instant getCurrentTime() {
+        return Instant.ofEpochMilli(currentMillis);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0);
+    }
+
+    @Override
+    public Future<?> schedule(Runnable command, long delay) {
+        Task task = new Task(command, currentMillis + delay, 0);
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public Future<?> schedule(Runnable command, Duration delay) {
+        return schedule(command, delay.toMillis());
+    }
+
+    @Override
+    public void schedulePeriodically(Runnable command, long initDelay, long period) {
+        scheduleAtFixedRate(command, initDelay, period);
+    }
+
+    @Override
+    public Future<?> scheduleAtFixedRate(Runnable command, long initDelay, long period) {
+        Task task = new Task(command, currentMillis + initDelay, period);
+        tasks.add(task);
+        return task;
+    }
+
+    private final class Task extends FutureTask<Void> {
+        private final long period;
+        private long time;
+
+        Task(Runnable command, long time, long period) {
+            super(command, null);
+            this.time = time;
+            this.period = period;
+        }
+
+        void runTask() {
+            if (period <= 0) {
+                run();
+            } else if (runAndReset()) {
+                time += period;
+                tasks.add(this);
+            }
+        }
+    }
+}
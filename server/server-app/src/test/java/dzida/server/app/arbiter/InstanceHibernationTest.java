@@ -0,0 +1,101 @@
+package dzida.server.app.arbiter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import dzida.server.app.ManualScheduler;
+import dzida.server.app.basic.entity.Key;
+import dzida.server.app.instance.Instance;
+import dzida.server.app.instance.InstanceFixtures;
+import dzida.server.app.instance.InstanceSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstanceHibernationTest {
+    private static final Key<Instance> instanceKey = new Key<>("instance");
+    private static final List<Key<Instance>> instances = ImmutableList.of(instanceKey);
+
+    private ManualScheduler scheduler;
+    private InstanceHibernation instanceHibernation;
+    private InstanceSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        scheduler = new ManualScheduler(0);
+        instanceHibernation = new InstanceHibernation(1000);
+        snapshot = InstanceFixtures.createInstance(scheduler, null).createSnapshot();
+    }
+
+    @Test
+    public void getCheckPeriod_hibernationTime_quarterOfHibernationTime() {
+        assertThat(instanceHibernation.getCheckPeriod()).isEqualTo(250);
+    }
+
+    @Test
+    public void findInstancesToHibernate_instanceEmptyForHibernationTime_instanceIsFound() {
+        assertThat(instanceHibernation.findInstancesToHibernate(0, instances, ImmutableSet.of())).isEmpty();
+        assertThat(instanceHibernation.findInstancesToHibernate(999, instances, ImmutableSet.of())).isEmpty();
+        assertThat(instanceHibernation.findInstancesToHibernate(1000, instances, ImmutableSet.of())).containsExactly(instanceKey);
+    }
+
+    @Test
+    public void findInstancesToHibernate_playerWasOnInstance_emptyTimeIsCountedAgain() {
+        instanceHibernation.findInstancesToHibernate(0, instances, ImmutableSet.of());
+        instanceHibernation.findInstancesToHibernate(500, instances, ImmutableSet.of(instanceKey));
+
+        assertThat(instanceHibernation.findInstancesToHibernate(1200, instances, ImmutableSet.of())).isEmpty();
+        assertThat(instanceHibernation.findInstancesToHibernate(2199, instances, ImmutableSet.of())).isEmpty();
+        assertThat(instanceHibernation.findInstancesToHibernate(2200, instances, ImmutableSet.of())).containsExactly(instanceKey);
+    }
+
+    @Test
+    public void hibernated_snapshotIsTaken_instanceIsHibernated() {
+        instanceHibernation.findInstancesToHibernate(0, instances, ImmutableSet.of());
+
+        instanceHibernation.hibernated(instanceKey, new CompletableFuture<>());
+
+        assertThat(instanceHibernation.isHibernated(instanceKey)).isTrue();
+        assertThat(instanceHibernation.getHibernatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void resume_snapshotIsReady_instanceIsStartedFromSnapshot() {
+        instanceHibernation.hibernated(instanceKey, CompletableFuture.completedFuture(snapshot));
+        List<InstanceSnapshot> startedSnapshots = new ArrayList<>();
+        AtomicInteger resumedCallbacks = new AtomicInteger();
+
+        instanceHibernation.resume(instanceKey, scheduler, startedSnapshots::add, resumedCallbacks::incrementAndGet);
+        scheduler.runPending();
+
+        assertThat(startedSnapshots).containsExactly(snapshot);
+        assertThat(resumedCallbacks.get()).isEqualTo(1);
+        assertThat(instanceHibernation.isHibernated(instanceKey)).isFalse();
+    }
+
+    @Test
+    public void resume_playersJoinWhileSnapshotIsTaken_instanceIsStartedOnceWhenSnapshotIsReady() {
+        CompletableFuture<InstanceSnapshot> pendingSnapshot = new CompletableFuture<>();
+        instanceHibernation.hibernated(instanceKey, pendingSnapshot);
+        List<InstanceSnapshot> startedSnapshots = new ArrayList<>();
+        AtomicInteger resumedCallbacks = new AtomicInteger();
+
+        instanceHibernation.resume(instanceKey, scheduler, startedSnapshots::add, resumedCallbacks::incrementAndGet);
+        instanceHibernation.resume(instanceKey, scheduler, startedSnapshots::add, resumedCallbacks::incrementAndGet);
+        scheduler.runPending();
+        assertThat(startedSnapshots).isEmpty();
+        assertThat(instanceHibernation.isHibernated(instanceKey)).isTrue();
+
+        pendingSnapshot.complete(snapshot);
+        scheduler.runPending();
+
+        assertThat(startedSnapshots).containsExactly(snapshot);
+        assertThat(resumedCallbacks.get()).isEqualTo(2);
+        assertThat(instanceHibernation.isHibernated(instanceKey)).isFalse();
+    }
+}
@@ -0,0 +1,97 @@
+package dzida.server.app.basic;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void plus_newKey_returnsMapWithKeyAndLeavesOriginalMap() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+
+        PersistentHashMap<String, Integer> newMap = map.plus("b", 2);
+
+        assertThat(newMap).containsOnly(entry("a", 1), entry("b", 2));
+        assertThat(map).containsOnly(entry("a", 1));
+    }
+
+    @Test
+    public void plus_sameValue_returnsSameMap() {
+        Integer value = 1;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", value);
+
+        assertThat(map.plus("a", value)).isSameAs(map);
+    }
+
+    @Test
+    public void minus_missingKey_returnsSameMap() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+
+        assertThat(map.minus("b")).isSameAs(map);
+    }
+
+    @Test
+    public void minus_lastKey_returnsEmptyMap() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+
+        assertThat(map.minus("a")).isEmpty();
+        assertThat(map).containsOnly(entry("a", 1));
+    }
+
+    @Test
+    public void plus_keysWithSameHash_keepsAllKeys() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.<CollidingKey, Integer>empty()
+                .plus(new CollidingKey(1), 1)
+                .plus(new CollidingKey(2), 2)
+                .plus(new CollidingKey(3), 3)
+                .minus(new CollidingKey(2));
+
+        assertThat(map).containsOnly(entry(new CollidingKey(1), 1), entry(new CollidingKey(3), 3));
+        assertThat(map.get(new CollidingKey(2))).isNull();
+    }
+
+    @Test
+    public void plusAndMinus_manyKeys_isEqualToHashMap() {
+        Random random = new Random(0);
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+        }
+
+        assertThat(map).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(expected.size());
+        assertThat(map.entrySet()).hasSize(expected.size());
+    }
+
+    private static final class CollidingKey {
+        private final int value;
+
+        private CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 7;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dzida.server.app.basic.connection;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SharedMessageTest {
+    private final SharedMessage message = new SharedMessage("message", out -> out.value("message"));
+
+    @Test
+    public void getPacket_sameEncoding_encodesPacketOnce() {
+        AtomicInteger encodings = new AtomicInteger();
+        Supplier<ByteBuf> encoder = () -> {
+            encodings.incrementAndGet();
+            return Unpooled.buffer().writeByte(1);
+        };
+
+        ByteBuf first = message.getPacket("json", "serverA", -1, encoder);
+        ByteBuf second = message.getPacket("json", "serverA", -1, encoder);
+
+        assertThat(encodings.get()).isEqualTo(1);
+        assertThat(first.readByte()).isEqualTo((byte) 1);
+        assertThat(second.readableBytes()).isEqualTo(1);
+    }
+
+    @Test
+    public void getPacket_differentEncoding_encodesPacketForEachEncoding() {
+        ByteBuf json = message.getPacket("json", "serverA", -1, () -> Unpooled.buffer().writeByte(1));
+        ByteBuf binary = message.getPacket("binary", "serverA", -1, () -> Unpooled.buffer().writeByte(2));
+
+        assertThat(json.getByte(0)).isEqualTo((byte) 1);
+        assertThat(binary.getByte(0)).isEqualTo((byte) 2);
+    }
+
+    @Test
+    public void getPacket_differentChannel_encodesPacketForEachChannel() {
+        ByteBuf withKey = message.getPacket("json", "serverA", -1, () -> Unpooled.buffer().writeByte(1));
+        ByteBuf withChannel = message.getPacket("json", "serverA", 3, () -> Unpooled.buffer().writeByte(2));
+
+        assertThat(withKey.getByte(0)).isEqualTo((byte) 1);
+        assertThat(withChannel.getByte(0)).isEqualTo((byte) 2);
+    }
+
+    @Test
+    public void release_packetsStillWritten_areFreedWithLastWrite() {
+        ByteBuf first = message.getPacket("json", "serverA", -1, () -> Unpooled.buffer().writeByte(1));
+        ByteBuf second = message.getPacket("json", "serverA", -1, () -> Unpooled.buffer().writeByte(1));
+
+        message.release();
+        assertThat(first.refCnt()).isEqualTo(2);
+        first.release();
+        second.release();
+
+        assertThat(second.refCnt()).isEqualTo(0);
+    }
+
+    @Test
+    public void getPacket_releasedMessage_throwsException() {
+        message.release();
+
+        assertThatThrownBy(() -> message.getPacket("json", "serverA", -1, Unpooled::buffer)).isInstanceOf(IllegalStateException.class);
+    }
+}
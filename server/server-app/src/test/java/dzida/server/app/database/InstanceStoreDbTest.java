@@ -0,0 +1,99 @@
+package dzida.server.app.database;
+
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.entity.Key;
+import dzida.server.app.instance.event.GameEvent;
+import dzida.server.app.parcel.ParcelChange;
+import dzida.server.app.store.database.InstanceStoreDb;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Store is run against a connection that records the statements, so the test doesn't need the database. Test is in
+ * the database package, because only there the connection provider can be created for a connection.
+ */
+public class InstanceStoreDbTest {
+    private final List<String> statements = new ArrayList<>();
+    private final List<List<Object>> batchRows = new ArrayList<>();
+    private final List<Object> currentRow = new ArrayList<>();
+    private InstanceStoreDb instanceStore;
+
+    @Before
+    public void setUp() {
+        instanceStore = new InstanceStoreDb(new ConnectionProvider(recordingConnection()));
+    }
+
+    @Test
+    public void saveEvents_severalEvents_eventsAreInsertedInSingleBatchInOrder() {
+        List<GameEvent> events = Arrays.asList(
+                parcelClaimed(1, "first"),
+                parcelClaimed(2, "second"),
+                parcelClaimed(3, "third"));
+
+        instanceStore.saveEvents(new Key<>("instance"), events);
+
+        assertThat(statements).hasSize(1);
+        assertThat(batchRows).hasSize(3);
+        batchRows.forEach(row -> assertThat(row).contains("instance", "ParcelClaimed"));
+        assertThat(batchRows.get(0).toString()).contains("first");
+        assertThat(batchRows.get(1).toString()).contains("second");
+        assertThat(batchRows.get(2).toString()).contains("third");
+    }
+
+    @Test
+    public void saveEvents_noEvents_nothingIsInserted() {
+        instanceStore.saveEvents(new Key<>("instance"), new ArrayList<>());
+
+        assertThat(statements).isEmpty();
+    }
+
+    private static ParcelChange.ParcelClaimed parcelClaimed(int x, String parcelName) {
+        return new ParcelChange.ParcelClaimed(x, 0, new Id<>(1), "owner", parcelName);
+    }
+
+    private Connection recordingConnection() {
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PreparedStatement.class}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                currentRow.add(args[1]);
+            } else if (name.equals("addBatch")) {
+                batchRows.add(new ArrayList<>(currentRow));
+                currentRow.clear();
+            } else if (name.equals("executeBatch")) {
+                int[] counts = new int[batchRows.size()];
+                Arrays.fill(counts, 1);
+                return counts;
+            }
+            return defaultValue(method.getReturnType());
+        });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement")) {
+                statements.add((String) args[0]);
+                return statement;
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
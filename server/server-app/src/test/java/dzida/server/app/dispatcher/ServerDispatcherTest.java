@@ -1,15 +1,29 @@
 package dzida.server.app.dispatcher;
 
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import dzida.server.app.basic.Result;
 import dzida.server.app.basic.connection.Connector;
+import dzida.server.app.basic.connection.MessageConnector;
+import dzida.server.app.basic.connection.MessageServerConnection;
+import dzida.server.app.basic.connection.QueueingServerConnection;
 import dzida.server.app.basic.connection.ServerConnection;
 import dzida.server.app.basic.connection.VerifyingConnectionServer;
+import dzida.server.app.metrics.Histogram;
+import dzida.server.app.metrics.Metrics;
+import dzida.server.app.protocol.json.JsonProtocol;
 import org.assertj.core.api.AbstractAssert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -180,6 +194,93 @@ public class ServerDispatcherTest {
         );
     }
 
+    @Test
+    public void clientThatAskedForTypeIdsReceivesTypeTablesAndMessagesWithTypeIds() {
+        JsonProtocol protocol = JsonProtocol.create(ImmutableSet.of(TextMessage.class), ImmutableSet.of(TextMessage.class));
+        List<MessageConnector<String>> connectors = new ArrayList<>();
+        ProbeServer serverD = new ProbeServer() {
+            @Override
+            public Result onConnection(Connector<String> connector, String connectionData) {
+                connector.onOpen(new MessageServerConnection<String>() {
+                    @Override
+                    public void sendMessage(Object message) {
+                    }
+
+                    @Override
+                    public void send(String data) {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+                connectors.add((MessageConnector<String>) connector);
+                return Result.ok();
+            }
+        };
+        serverDispatcher.addServer("serverD", serverD, MoreExecutors.directExecutor(), protocol);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\",\"typeIds\":true}]") + "]]");
+        connectors.get(0).onTypedMessage(new TextMessage("hi"));
+
+        assertThat(connection.getMessages()).containsExactly(
+                "[[\"dispatcher\"," + escapeJson("[\"ConnectedToServer\",{\"serverKey\":\"serverD\",\"clientMessageTypes\":[\"TextMessage\"],\"serverMessageTypes\":[\"TextMessage\"]}]") + "]]",
+                "[[\"serverD\"," + escapeJson("[0,{\"text\":\"hi\"}]") + "]]"
+        );
+    }
+
+    @Test
+    public void clientThatAskedForChannelIdCommunicatesWithServerByChannelId() {
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\",\"channelIds\":true}]") + "]," +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverB\",\"channelIds\":true}]") + "]" +
+                "]");
+        connection.sendToServer("[[1, " + escapeJson("messageToServerB") + "], [0, " + escapeJson("messageToServerA") + "]]");
+        serverA.send("Test message");
+
+        ProbeServer.assertThat(serverA).hasMessages(messages -> assertThat(messages).containsExactly("messageToServerA"));
+        ProbeServer.assertThat(serverB).hasMessages(messages -> assertThat(messages).containsExactly("messageToServerB"));
+        assertThat(connection.getMessages()).containsExactly(
+                "[[\"dispatcher\"," + escapeJson("[\"ConnectedToServer\",{\"serverKey\":\"serverA\",\"channelId\":0}]") + "]]",
+                "[[\"dispatcher\"," + escapeJson("[\"ConnectedToServer\",{\"serverKey\":\"serverB\",\"channelId\":1}]") + "]]",
+                "[[0,\"Test message\"]]"
+        );
+    }
+
+    @Test
+    public void messageToClosedChannelIsNotDispatched() {
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\",\"channelIds\":true}]") + "]]");
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"DisconnectFromServer\", {\"serverKey\":\"serverA\"}]") + "]]");
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverB\",\"channelIds\":true}]") + "]]");
+        connection.sendToServer("[[0, " + escapeJson("messageToServerA") + "], [7, " + escapeJson("messageToNowhere") + "]]");
+
+        ProbeServer.assertThat(serverB).hasMessages(messages -> assertThat(messages).isEmpty());
+        // slot of the closed channel is reused with the next generation
+        assertThat(connection.getMessages()).contains(
+                "[[\"dispatcher\"," + escapeJson("[\"ConnectedToServer\",{\"serverKey\":\"serverB\",\"channelId\":256}]") + "]]");
+    }
+
+    @Test
+    public void channelsClosedByClientAndServerAreReused() {
+        serverDispatcher.onConnection(connection);
+        for (int i = 0; i < ChannelTable.maxChannels; i++) {
+            connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\",\"channelIds\":true}]") + "]]");
+            connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"DisconnectFromServer\", {\"serverKey\":\"serverA\"}]") + "]]");
+            connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverB\",\"channelIds\":true}]") + "]]");
+            serverB.disconnectClient();
+        }
+        connection.getMessages().clear();
+
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverC\",\"channelIds\":true}]") + "]]");
+        connection.sendToServer("[[" + (ChannelTable.maxChannels * ChannelTable.maxChannels * 2) + ", " + escapeJson("messageToServerC") + "]]");
+
+        ProbeServer.assertThat(serverC).hasMessages(messages -> assertThat(messages).containsExactly("messageToServerC"));
+        assertThat(connection.getMessages()).containsExactly(
+                "[[\"dispatcher\"," + escapeJson("[\"ConnectedToServer\",{\"serverKey\":\"serverC\",\"channelId\":" + ChannelTable.maxChannels * ChannelTable.maxChannels * 2 + "}]") + "]]");
+    }
+
     @Test
     public void serverCanDisconnectClient() {
         serverDispatcher.onConnection(connection);
@@ -191,14 +292,320 @@ public class ServerDispatcherTest {
                 "[[\"dispatcher\"," + escapeJson("[\"DisconnectedFromServer\",{\"serverKey\":\"serverA\"}]") + "]]");
     }
 
+    @Test
+    public void messagesAreDispatchedOnServerExecutorAfterConnection() {
+        List<Runnable> serverDTasks = new ArrayList<>();
+        ProbeServer serverD = new ProbeServer();
+        serverDispatcher.addServer("serverD", serverD, serverDTasks::add);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]," +
+                "[\"serverD\", " + escapeJson("messageToServerD") + "]" +
+                "]");
+
+        ProbeServer.assertThat(serverD).hasNotConnection();
+
+        serverDTasks.forEach(Runnable::run);
+
+        ProbeServer.assertThat(serverD)
+                .hasConnection()
+                .hasMessages(messages -> assertThat(messages).containsExactly("messageToServerD"));
+    }
+
+    @Test
+    public void serverSeesWhetherClientIsWritable() {
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]]");
+
+        connection.setWritable(false);
+        assertThat(serverA.isClientWritable()).isFalse();
+
+        connection.setWritable(true);
+        assertThat(serverA.isClientWritable()).isTrue();
+    }
+
+    @Test
+    public void clientWritableAgainIsDispatchedToConnectedServers() {
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]]");
+
+        connection.notifyWritable();
+
+        assertThat(serverA.getWritableNotifications()).isEqualTo(1);
+        assertThat(serverB.getWritableNotifications()).isEqualTo(0);
+    }
+
+    @Test
+    public void nestedMessageIsDispatchedToServerAsText() {
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]," +
+                "[\"serverA\", [\"Message\",{\"text\":\"nested\"}]]" +
+                "]");
+
+        ProbeServer.assertThat(serverA)
+                .hasMessages(messages -> assertThat(messages).containsExactly("[\"Message\",{\"text\":\"nested\"}]"));
+    }
+
+    @Test
+    public void messagesToQueueingConnectionAreEnqueuedOnConnectionThread() {
+        JsonProtocol protocol = JsonProtocol.create(ImmutableSet.of(TextMessage.class), ImmutableSet.of());
+        List<Runnable> serverDTasks = new ArrayList<>();
+        List<Object> enqueuedMessages = new ArrayList<>();
+        serverDispatcher.addServer("serverD", queueingServer(enqueuedMessages), serverDTasks::add, protocol);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]]");
+        serverDTasks.forEach(Runnable::run);
+        serverDTasks.clear();
+
+        connection.sendToServer("[[\"serverD\", " + escapeJson("[\"TextMessage\",{\"text\":\"hi\"}]") + "]]");
+
+        assertThat(serverDTasks).isEmpty();
+        assertThat(enqueuedMessages).containsExactly(new TextMessage("hi"));
+    }
+
+    @Test
+    public void messagesToQueueingConnectionBeforeItIsOpenAreEnqueuedWhenItOpens() {
+        JsonProtocol protocol = JsonProtocol.create(ImmutableSet.of(TextMessage.class), ImmutableSet.of());
+        List<Runnable> serverDTasks = new ArrayList<>();
+        List<Object> enqueuedMessages = new ArrayList<>();
+        serverDispatcher.addServer("serverD", queueingServer(enqueuedMessages), serverDTasks::add, protocol);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]," +
+                "[\"serverD\", " + escapeJson("[\"TextMessage\",{\"text\":\"first\"}]") + "]" +
+                "]");
+
+        assertThat(enqueuedMessages).isEmpty();
+        serverDTasks.forEach(Runnable::run);
+        connection.sendToServer("[[\"serverD\", " + escapeJson("[\"TextMessage\",{\"text\":\"second\"}]") + "]]");
+
+        assertThat(serverDTasks).hasSize(1);
+        assertThat(enqueuedMessages).containsExactly(new TextMessage("first"), new TextMessage("second"));
+    }
+
+    @Test
+    public void messagesToServerWithProtocolAreParsedBeforeTheyAreDispatched() {
+        List<Object> parsedMessages = new ArrayList<>();
+        addMessageServer(serverDispatcher, "serverD", parsedMessages);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]," +
+                "[\"serverD\", " + escapeJson("[\"TextMessage\",{\"text\":\"as text\"}]") + "]," +
+                "[\"serverD\", [\"TextMessage\",{\"text\":\"nested\"}]]" +
+                "]");
+
+        assertThat(parsedMessages).containsExactly(new TextMessage("as text"), new TextMessage("nested"));
+    }
+
+    @Test
+    public void parsedMessagesAreMeasuredByType() {
+        Metrics metrics = new Metrics();
+        serverDispatcher = new ServerDispatcher(MoreExecutors.directExecutor(), RateLimitPolicy.unlimited(), metrics);
+        addMessageServer(serverDispatcher, "serverD", new ArrayList<>());
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]," +
+                "[\"serverD\", [\"TextMessage\",{\"text\":\"message 1\"}]]," +
+                "[\"serverD\", [\"TextMessage\",{\"text\":\"message 2\"}]]" +
+                "]");
+
+        assertThat(metrics.snapshot())
+                .containsEntry("dispatcher.in.TextMessage.count", 2L)
+                .containsKey("dispatcher.in.TextMessage.nanos");
+    }
+
+    @Test
+    public void textMessagesAreMeasuredByServerInUtf8Bytes() {
+        Metrics metrics = new Metrics();
+        serverDispatcher = new ServerDispatcher(MoreExecutors.directExecutor(), RateLimitPolicy.unlimited(), metrics);
+        serverDispatcher.addServer("serverA", serverA);
+        serverDispatcher.onConnection(connection);
+        String packet = "[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]," +
+                "[\"serverA\", \"żółw\"]" +
+                "]";
+        connection.sendToServer(packet);
+        serverA.send("żółw");
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        assertThat(snapshot.get("dispatcher.in.serverA.bytes")).isEqualTo(histogram(7));
+        assertThat(snapshot.get("dispatcher.in.packetBytes")).isEqualTo(histogram(packet.getBytes(StandardCharsets.UTF_8).length));
+        assertThat(snapshot.get("dispatcher.out.serverA.bytes")).isEqualTo(histogram("[[\"serverA\",\"żółw\"]]".getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test
+    public void messagesOverConnectionRateLimitAreDropped() {
+        ManualTicker ticker = new ManualTicker();
+        Metrics metrics = new Metrics();
+        RateLimitPolicy policy = new RateLimitPolicy(new RateLimitPolicy.Limit(1, 3), ImmutableMap.of(), false);
+        serverDispatcher = new ServerDispatcher(MoreExecutors.directExecutor(), policy, metrics, ticker);
+        serverDispatcher.addServer("serverA", serverA);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]," +
+                "[\"serverA\", \"message 1\"]," +
+                "[\"serverA\", \"message 2\"]," +
+                "[\"serverA\", \"message 3\"]" +
+                "]");
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        connection.sendToServer("[[\"serverA\", \"message 4\"],[\"serverA\", \"message 5\"]]");
+
+        ProbeServer.assertThat(serverA)
+                .hasMessages(messages -> assertThat(messages).containsExactly("message 1", "message 2", "message 4"));
+        assertThat(metrics.snapshot()).containsEntry("dispatcher.rateLimitedMessages", 2L);
+        assertThat(connection.isClosed()).isFalse();
+    }
+
+    @Test
+    public void messagesOverMessageTypeRateLimitAreDropped() {
+        ManualTicker ticker = new ManualTicker();
+        RateLimitPolicy policy = new RateLimitPolicy(null, ImmutableMap.of("TextMessage", new RateLimitPolicy.Limit(1, 1)), false);
+        serverDispatcher = new ServerDispatcher(MoreExecutors.directExecutor(), policy, new Metrics(), ticker);
+        List<Object> parsedMessages = new ArrayList<>();
+        addMessageServer(serverDispatcher, "serverD", parsedMessages);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverD\"}]") + "]," +
+                "[\"serverD\", [\"TextMessage\",{\"text\":\"first\"}]]," +
+                "[\"serverD\", [\"TextMessage\",{\"text\":\"second\"}]]" +
+                "]");
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        connection.sendToServer("[[\"serverD\", [\"TextMessage\",{\"text\":\"third\"}]]]");
+
+        assertThat(parsedMessages).containsExactly(new TextMessage("first"), new TextMessage("third"));
+    }
+
+    @Test
+    public void clientIsDisconnectedOnRateLimitViolationIfPolicySaysSo() {
+        Metrics metrics = new Metrics();
+        RateLimitPolicy policy = new RateLimitPolicy(new RateLimitPolicy.Limit(1, 2), ImmutableMap.of(), true);
+        serverDispatcher = new ServerDispatcher(MoreExecutors.directExecutor(), policy, metrics, new ManualTicker());
+        serverDispatcher.addServer("serverA", serverA);
+        serverDispatcher.onConnection(connection);
+        connection.sendToServer("[" +
+                "[\"dispatcher\", " + escapeJson("[\"ConnectToServer\", {\"serverKey\":\"serverA\"}]") + "]," +
+                "[\"serverA\", \"message 1\"]," +
+                "[\"serverA\", \"message 2\"]," +
+                "[\"serverA\", \"message 3\"]" +
+                "]");
+        connection.sendToServer("[[\"serverA\", \"message 4\"]]");
+
+        assertThat(connection.isClosed()).isTrue();
+        ProbeServer.assertThat(serverA)
+                .hasMessages(messages -> assertThat(messages).containsExactly("message 1"));
+        assertThat(metrics.snapshot())
+                .containsEntry("dispatcher.rateLimitedMessages", 1L)
+                .containsEntry("dispatcher.rateLimitDisconnections", 1L);
+    }
+
+    private void addMessageServer(ServerDispatcher serverDispatcher, String serverKey, List<Object> parsedMessages) {
+        JsonProtocol protocol = JsonProtocol.create(ImmutableSet.of(TextMessage.class), ImmutableSet.of());
+        ProbeServer server = new ProbeServer() {
+            @Override
+            public Result onConnection(Connector<String> connector, String connectionData) {
+                connector.onOpen(new MessageServerConnection<String>() {
+                    @Override
+                    public void sendMessage(Object message) {
+                        parsedMessages.add(message);
+                    }
+
+                    @Override
+                    public void send(String data) {
+                        throw new AssertionError("Message should be already parsed");
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+                return Result.ok();
+            }
+        };
+        serverDispatcher.addServer(serverKey, server, MoreExecutors.directExecutor(), protocol);
+    }
+
+    private ProbeServer queueingServer(List<Object> enqueuedMessages) {
+        return new ProbeServer() {
+            @Override
+            public Result onConnection(Connector<String> connector, String connectionData) {
+                connector.onOpen(new QueueingServerConnection<String>() {
+                    @Override
+                    public void enqueueMessage(Object message) {
+                        enqueuedMessages.add(message);
+                    }
+
+                    @Override
+                    public void sendMessage(Object message) {
+                        throw new AssertionError("Message should be enqueued");
+                    }
+
+                    @Override
+                    public void send(String data) {
+                        throw new AssertionError("Message should be already parsed");
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+                return Result.ok();
+            }
+        };
+    }
+
+    /**
+     * Snapshot of the histogram with the single value.
+     */
+    private static Map<String, Long> histogram(long value) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        return histogram.snapshot();
+    }
+
     private String escapeJson(String json) {
         return "\"" + json.replace("\"", "\\\"") + "\"";
     }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long nanos) {
+            this.nanos += nanos;
+        }
+    }
+
+    private static final class TextMessage {
+        final String text;
+
+        private TextMessage(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Objects.equals(text, ((TextMessage) o).text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text);
+        }
+    }
 }
 
 class ProbeConnector implements Connector<String> {
     private final List<String> messages = new ArrayList<>();
     private ServerConnection<String> serverConnection;
+    private boolean writable = true;
+    private boolean closed;
 
     public List<String> getMessages() {
         return messages;
@@ -211,6 +618,7 @@ class ProbeConnector implements Connector<String> {
 
     @Override
     public void onClose() {
+        closed = true;
     }
 
     @Override
@@ -218,6 +626,10 @@ class ProbeConnector implements Connector<String> {
         messages.add(data);
     }
 
+    public boolean isClosed() {
+        return closed;
+    }
+
     public void sendToServer(String data) {
         serverConnection.send(data);
     }
@@ -225,12 +637,26 @@ class ProbeConnector implements Connector<String> {
     public void disconnect() {
         serverConnection.close();
     }
+
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public void setWritable(boolean writable) {
+        this.writable = writable;
+    }
+
+    public void notifyWritable() {
+        serverConnection.onWritable();
+    }
 }
 
 class ProbeServer implements VerifyingConnectionServer<String, String> {
     private final List<String> messages = new ArrayList<>();
     private String connectionData;
     private Connector<String> connector;
+    private int writableNotifications;
 
     public static Assert assertThat(ProbeServer actual) {
         return new Assert(actual);
@@ -248,6 +674,11 @@ class ProbeServer implements VerifyingConnectionServer<String, String> {
             public void close() {
                 handleDisconnection();
             }
+
+            @Override
+            public void onWritable() {
+                writableNotifications += 1;
+            }
         });
         this.connectionData = connectionData;
         this.connector = connector;
@@ -272,6 +703,14 @@ class ProbeServer implements VerifyingConnectionServer<String, String> {
         connector.onClose();
     }
 
+    public boolean isClientWritable() {
+        return connector.isWritable();
+    }
+
+    public int getWritableNotifications() {
+        return writableNotifications;
+    }
+
     public static final class Assert extends AbstractAssert<Assert, ProbeServer> {
 
         public Assert(ProbeServer actual) {
@@ -0,0 +1,53 @@
+package dzida.server.app.instance;
+
+import com.google.common.collect.ImmutableMap;
+import dzida.server.app.ManualScheduler;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.entity.Key;
+import dzida.server.app.basic.unit.BitMap;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.character.CharacterState;
+import dzida.server.app.instance.parcel.ParcelState;
+import dzida.server.app.instance.position.PositionState;
+import dzida.server.app.instance.skill.SkillSate;
+import dzida.server.app.instance.world.WorldState;
+import dzida.server.app.instance.world.map.WorldMap;
+import dzida.server.app.instance.world.object.WorldObjectKind;
+import dzida.server.app.map.descriptor.Scenario;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Instances of the tests, that are created on an empty map without loading any static data.
+ */
+public final class InstanceFixtures {
+    public static final int mapSize = 64;
+    public static final Point spawnPoint = new Point(32, 32);
+    public static final WorldObjectKind decayingKind = new WorldObjectKind(new Id<>(1), "decaying", 1, 1, null, false, 60);
+    public static final WorldObjectKind staticKind = new WorldObjectKind(new Id<>(2), "static", 2, 2, null, false, 0);
+
+    private InstanceFixtures() {
+    }
+
+    public static Scenario scenario() {
+        return new Scenario(new Key<>("test-map"));
+    }
+
+    public static GameDefinitions gameDefinitions() {
+        return new GameDefinitions(ImmutableMap.of(), ImmutableMap.of(decayingKind.getId(), decayingKind, staticKind.getId(), staticKind), 16);
+    }
+
+    public static GameState initialState() {
+        WorldMap worldMap = new WorldMap(mapSize, mapSize, new Key<>("test-tileset"), spawnPoint, new int[mapSize * mapSize], 1, "#000000");
+        String[] rows = new String[mapSize];
+        char[] emptyRow = new char[mapSize];
+        Arrays.fill(emptyRow, ' ');
+        Arrays.fill(rows, new String(emptyRow));
+        return new GameState(new CharacterState(), new WorldState(worldMap), new PositionState(BitMap.createBitMap(rows)), new SkillSate(), new ParcelState());
+    }
+
+    public static Instance createInstance(ManualScheduler scheduler, @Nullable InstanceSnapshot snapshot) {
+        return new Instance("test-instance", scenario(), scheduler, gameDefinitions(), scheduler, initialState(), snapshot);
+    }
+}
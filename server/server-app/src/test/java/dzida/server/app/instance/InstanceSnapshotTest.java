@@ -0,0 +1,106 @@
+package dzida.server.app.instance;
+
+import dzida.server.app.ManualScheduler;
+import dzida.server.app.basic.entity.GeneralEntity;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.instance.world.WorldObjectCreated;
+import dzida.server.app.instance.world.WorldObjectRemoved;
+import dzida.server.app.instance.world.object.WorldObject;
+import dzida.server.app.instance.world.object.WorldObjectKind;
+import dzida.server.app.parcel.ParcelChange;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstanceSnapshotTest {
+    private static final Id<WorldObject> decayingObject = new Id<>(1);
+    private static final Id<WorldObject> staticObject = new Id<>(2);
+
+    private ManualScheduler scheduler;
+    private Instance instance;
+
+    @Before
+    public void setUp() {
+        scheduler = new ManualScheduler(1000);
+        instance = InstanceFixtures.createInstance(scheduler, null);
+    }
+
+    @Test
+    public void createSnapshot_parcelsAndObjects_resumedInstanceHasSameParcelsAndObjects() {
+        instance.start();
+        ParcelChange.ParcelClaimed parcelClaimed = new ParcelChange.ParcelClaimed(1, 2, new Id<>(3), "owner", "parcel");
+        instance.updateState(parcelClaimed);
+        createObject(decayingObject, InstanceFixtures.decayingKind, 10, 10);
+        createObject(staticObject, InstanceFixtures.staticKind, 20, 20);
+
+        Instance resumedInstance = hibernateAndResume();
+
+        assertThat(resumedInstance.getState().getParcel().getParcelChanges()).containsExactly(parcelClaimed);
+        assertThat(resumedInstance.getState().getWorld().getWorldObjects())
+                .isEqualTo(instance.getState().getWorld().getWorldObjects());
+    }
+
+    @Test
+    public void start_objectWasDecayingWhenHibernated_objectDecaysInTimeThatWasLeft() {
+        instance.start();
+        createObject(decayingObject, InstanceFixtures.decayingKind, 10, 10);
+        scheduler.advance(20_000);
+
+        Instance resumedInstance = hibernateAndResume();
+
+        scheduler.advance(39_999);
+        assertThat(resumedInstance.getState().getWorld().getWorldObjects()).containsKey(decayingObject);
+        scheduler.advance(1);
+        assertThat(resumedInstance.getState().getWorld().getWorldObjects()).doesNotContainKey(decayingObject);
+    }
+
+    @Test
+    public void start_objectWasCreatedBeforeStart_objectDoesNotDecayAfterResume() {
+        // objects of the map are created before the instance is started and they never decay
+        createObject(decayingObject, InstanceFixtures.decayingKind, 10, 10);
+        instance.start();
+
+        Instance resumedInstance = hibernateAndResume();
+
+        scheduler.advance(120_000);
+        assertThat(resumedInstance.getState().getWorld().getWorldObjects()).containsKey(decayingObject);
+    }
+
+    @Test
+    public void stop_decayIsScheduled_decayIsCancelled() {
+        instance.start();
+        createObject(decayingObject, InstanceFixtures.decayingKind, 10, 10);
+        assertThat(scheduler.getPendingTasksCount()).isEqualTo(1);
+
+        instance.stop();
+
+        assertThat(scheduler.getPendingTasksCount()).isEqualTo(0);
+        scheduler.advance(120_000);
+        assertThat(instance.getState().getWorld().getWorldObjects()).containsKey(decayingObject);
+    }
+
+    @Test
+    public void updateState_decayingObjectRemoved_decayIsCancelled() {
+        instance.start();
+        GeneralEntity<WorldObject> worldObject = createObject(decayingObject, InstanceFixtures.decayingKind, 10, 10);
+
+        instance.updateState(new WorldObjectRemoved(worldObject));
+
+        assertThat(scheduler.getPendingTasksCount()).isEqualTo(0);
+    }
+
+    private GeneralEntity<WorldObject> createObject(Id<WorldObject> id, WorldObjectKind kind, int x, int y) {
+        GeneralEntity<WorldObject> worldObject = new GeneralEntity<>(id, new WorldObject(kind.getId(), x, y, scheduler.getCurrentTime()));
+        instance.updateState(new WorldObjectCreated(worldObject));
+        return worldObject;
+    }
+
+    private Instance hibernateAndResume() {
+        InstanceSnapshot snapshot = instance.createSnapshot();
+        instance.stop();
+        Instance resumedInstance = InstanceFixtures.createInstance(scheduler, snapshot);
+        resumedInstance.start();
+        return resumedInstance;
+    }
+}
@@ -0,0 +1,110 @@
+package dzida.server.app.instance;
+
+import dzida.server.app.ManualScheduler;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.instance.character.model.Character;
+import dzida.server.app.instance.command.InstanceCommand;
+import dzida.server.app.instance.command.SpawnCharacterCommand;
+import dzida.server.app.instance.event.CharacterEvent;
+import dzida.server.app.instance.event.GameEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstanceTest {
+    private static final Id<Character> character1 = new Id<>(1);
+    private static final Id<Character> character2 = new Id<>(2);
+
+    private ManualScheduler scheduler;
+    private Instance instance;
+    private List<Long> commandTimes;
+
+    @Before
+    public void setUp() {
+        scheduler = new ManualScheduler(1000);
+        instance = InstanceFixtures.createInstance(scheduler, null);
+        commandTimes = new ArrayList<>();
+    }
+
+    @Test
+    public void tick_twoCommands_commandsGetTimeOfTick() {
+        instance.tick(() -> {
+            instance.handleCommand(spawnCommand(character1));
+            scheduler.advance(10);
+            instance.handleCommand(spawnCommand(character2));
+        });
+
+        assertThat(commandTimes).containsExactly(1000L, 1000L);
+    }
+
+    @Test
+    public void handleCommand_commandsOutsideOfTick_commandsGetCurrentTime() {
+        instance.handleCommand(spawnCommand(character1));
+        scheduler.advance(10);
+        instance.handleCommand(spawnCommand(character2));
+
+        assertThat(commandTimes).containsExactly(1000L, 1010L);
+    }
+
+    @Test
+    public void tick_twoCommands_eventsArePublishedInSingleBatchInOrder() {
+        List<List<GameEvent>> batches = new ArrayList<>();
+        List<GameEvent> events = new ArrayList<>();
+        instance.subscribeChanges(batches::add);
+        instance.subscribeChange(events::add);
+
+        instance.tick(() -> {
+            instance.handleCommand(spawnCommand(character1));
+            instance.handleCommand(spawnCommand(character2));
+            assertThat(batches).isEmpty();
+            assertThat(events).isEmpty();
+        });
+
+        assertThat(batches).hasSize(1);
+        assertThat(characterIds(batches.get(0))).containsExactly(character1, character2);
+        assertThat(characterIds(events)).containsExactly(character1, character2);
+    }
+
+    @Test
+    public void tick_twoCommands_stateIsUpdatedByEachCommandDuringTick() {
+        instance.tick(() -> {
+            instance.handleCommand(spawnCommand(character1));
+            assertThat(instance.getState().getCharacter().isCharacterLive(character1)).isTrue();
+            instance.handleCommand(spawnCommand(character2));
+        });
+
+        assertThat(instance.getState().getCharacter().isCharacterLive(character2)).isTrue();
+    }
+
+    @Test
+    public void handleCommand_commandOutsideOfTick_eventIsPublishedInOwnBatch() {
+        List<List<GameEvent>> batches = new ArrayList<>();
+        instance.subscribeChanges(batches::add);
+
+        instance.handleCommand(spawnCommand(character1));
+        instance.handleCommand(spawnCommand(character2));
+
+        assertThat(batches).hasSize(2);
+        assertThat(characterIds(batches.get(0))).containsExactly(character1);
+        assertThat(characterIds(batches.get(1))).containsExactly(character2);
+    }
+
+    private InstanceCommand spawnCommand(Id<Character> characterId) {
+        SpawnCharacterCommand spawnCommand = new SpawnCharacterCommand(new PlayerCharacter(characterId, new Id<>(characterId.getValue())));
+        return (state, definitions, currentTime) -> {
+            commandTimes.add(currentTime);
+            return spawnCommand.process(state, definitions, currentTime);
+        };
+    }
+
+    private static List<Id<Character>> characterIds(List<GameEvent> events) {
+        return events.stream()
+                .map(event -> ((CharacterEvent) event).getCharacterId())
+                .collect(Collectors.toList());
+    }
+}
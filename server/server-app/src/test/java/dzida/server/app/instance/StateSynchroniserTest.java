@@ -0,0 +1,205 @@
+package dzida.server.app.instance;
+
+import dzida.server.app.ManualScheduler;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.StateSynchroniser.CharacterEnteredView;
+import dzida.server.app.instance.StateSynchroniser.CharacterLeftView;
+import dzida.server.app.instance.StateSynchroniser.InitialData;
+import dzida.server.app.instance.character.CharacterSpawned;
+import dzida.server.app.instance.character.model.Character;
+import dzida.server.app.instance.command.SpawnCharacterCommand;
+import dzida.server.app.instance.event.GameEvent;
+import dzida.server.app.instance.position.event.CharacterMoved;
+import dzida.server.app.user.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StateSynchroniserTest {
+    private static final double viewRadius = 10;
+    private static final double speed = 4;
+    private static final Id<Character> character1 = new Id<>(1);
+    private static final Id<Character> character2 = new Id<>(2);
+    private static final Id<Character> character3 = new Id<>(3);
+    private static final Id<User> user1 = new Id<>(1);
+    private static final Id<User> user2 = new Id<>(2);
+
+    private ManualScheduler scheduler;
+    private Instance instance;
+    private StateSynchroniser stateSynchroniser;
+    private Map<Id<User>, List<GameEvent>> sentEvents;
+
+    @Before
+    public void setUp() {
+        scheduler = new ManualScheduler(1000);
+        instance = InstanceFixtures.createInstance(scheduler, null);
+        stateSynchroniser = new StateSynchroniser(instance, InstanceFixtures.scenario(), viewRadius);
+        sentEvents = new HashMap<>();
+        instance.subscribeChange(gameEvent -> stateSynchroniser.syncStateChange(gameEvent, (recipients, event) ->
+                recipients.forEach(userId -> send(userId, event))));
+    }
+
+    @Test
+    public void sendInitialPacket_charactersOutsideOfView_onlyCharactersInViewAreSent() {
+        spawn(character1);
+        spawn(character2);
+        spawn(character3);
+        teleport(character2, 38);
+        teleport(character3, 50);
+
+        register(user1, character1);
+
+        assertThat(sentEvents.get(user1)).hasSize(1);
+        Map<String, Object> initialData = ((InitialData) sentEvents.get(user1).get(0)).getState();
+        @SuppressWarnings("unchecked")
+        List<Character> characters = (List<Character>) initialData.get("character");
+        @SuppressWarnings("unchecked")
+        List<CharacterMoved> moves = (List<CharacterMoved>) initialData.get("move");
+        assertThat(characters.stream().map(Character::getId).collect(Collectors.toList())).containsExactly(character1, character2);
+        assertThat(moves.stream().map(CharacterMoved::getCharacterId).collect(Collectors.toList())).containsExactly(character1, character2);
+    }
+
+    @Test
+    public void syncStateChange_charactersMoveIntoViewAndBack_charactersEnterAndLeaveViewsOfBothPlayers() {
+        spawn(character1);
+        spawn(character2);
+        teleport(character2, 50);
+        register(user1, character1);
+        register(user2, character2);
+        sentEvents.clear();
+
+        teleport(character2, 40);
+        assertThat(eventsOf(user1)).containsExactly("entered 2");
+        assertThat(eventsOf(user2)).containsExactly("moved 2", "entered 1");
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).containsExactly("entered 2");
+        assertThat(eventsOf(user2)).containsExactly("moved 2", "entered 1");
+        sentEvents.clear();
+
+        // farther than the view radius, but not by the leave margin
+        teleport(character2, 44);
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).containsExactly("moved 2");
+        assertThat(eventsOf(user2)).containsExactly("moved 2");
+        sentEvents.clear();
+
+        teleport(character2, 47);
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).containsExactly("moved 2", "left 2");
+        assertThat(eventsOf(user2)).containsExactly("moved 2", "left 1");
+        sentEvents.clear();
+
+        teleport(character2, 48);
+        assertThat(eventsOf(user1)).isEmpty();
+        assertThat(eventsOf(user2)).containsExactly("moved 2");
+        sentEvents.clear();
+
+        teleport(character2, 36);
+        assertThat(eventsOf(user1)).containsExactly("entered 2");
+        assertThat(eventsOf(user2)).containsExactly("moved 2", "entered 1");
+    }
+
+    @Test
+    public void syncStateChange_characterMovesToOtherCharacters_otherCharactersEnterItsViewAtOnce() {
+        spawn(character1);
+        spawn(character2);
+        spawn(character3);
+        teleport(character1, 50);
+        teleport(character3, 36);
+        register(user1, character1);
+        sentEvents.clear();
+
+        teleport(character1, 34);
+
+        assertThat(eventsOf(user1)).hasSize(3).startsWith("moved 1").contains("entered 2", "entered 3");
+    }
+
+    @Test
+    public void updateVisibility_characterWalksIntoView_characterEntersViewWhenInViewRadius() {
+        spawn(character1);
+        spawn(character2);
+        teleport(character2, 50);
+        register(user1, character1);
+        sentEvents.clear();
+
+        // character is in the view radius after 2 seconds, when it's 8 tiles closer
+        instance.updateState(new CharacterMoved(character2, Move.of(scheduler.getCurrentMillis(), speed, Point.of(50, 32), Point.of(20, 32))));
+        scheduler.advance(1900);
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).isEmpty();
+
+        scheduler.advance(200);
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).containsExactly("entered 2");
+
+        // character stops farther than the view radius, but not by the leave margin
+        scheduler.advance(10_000);
+        stateSynchroniser.updateVisibility();
+        assertThat(eventsOf(user1)).containsExactly("entered 2");
+    }
+
+    @Test
+    public void syncStateChange_characterSpawnedInViewOfOnePlayer_onlyThatPlayerGetsSpawn() {
+        spawn(character1);
+        spawn(character2);
+        teleport(character2, 50);
+        register(user1, character1);
+        register(user2, character2);
+        sentEvents.clear();
+
+        spawn(character3);
+
+        assertThat(eventsOf(user1)).containsExactly("spawned 3");
+        assertThat(eventsOf(user2)).isEmpty();
+    }
+
+    private void spawn(Id<Character> characterId) {
+        instance.handleCommand(new SpawnCharacterCommand(new PlayerCharacter(characterId, new Id<>(characterId.getValue()))));
+    }
+
+    /**
+     * Moves the character at once to the given x on the row of the spawn point.
+     */
+    private void teleport(Id<Character> characterId, double x) {
+        instance.updateState(new CharacterMoved(characterId, Move.of(scheduler.getCurrentMillis(), speed, Point.of(x, InstanceFixtures.spawnPoint.getY()))));
+    }
+
+    private void register(Id<User> userId, Id<Character> characterId) {
+        stateSynchroniser.registerCharacter(userId, characterId, event -> send(userId, event));
+    }
+
+    private void send(Id<User> userId, GameEvent event) {
+        sentEvents.computeIfAbsent(userId, key -> new ArrayList<>()).add(event);
+    }
+
+    private List<String> eventsOf(Id<User> userId) {
+        return sentEvents.getOrDefault(userId, new ArrayList<>()).stream()
+                .map(StateSynchroniserTest::describe)
+                .collect(Collectors.toList());
+    }
+
+    private static String describe(GameEvent event) {
+        if (event instanceof CharacterEnteredView) {
+            return "entered " + ((CharacterEnteredView) event).getCharacterId().getValue();
+        }
+        if (event instanceof CharacterLeftView) {
+            return "left " + ((CharacterLeftView) event).getCharacterId().getValue();
+        }
+        if (event instanceof CharacterMoved) {
+            return "moved " + ((CharacterMoved) event).getCharacterId().getValue();
+        }
+        if (event instanceof CharacterSpawned) {
+            return "spawned " + ((CharacterSpawned) event).getCharacterId().getValue();
+        }
+        return event.getClass().getSimpleName();
+    }
+}
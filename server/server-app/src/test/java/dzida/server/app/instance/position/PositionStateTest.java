@@ -0,0 +1,139 @@
+package dzida.server.app.instance.position;
+
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.InstanceFixtures;
+import dzida.server.app.instance.character.model.Character;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class PositionStateTest {
+    private static final double speed = 4.0;
+    private static final long[] times = {0, 1500, 4000, 9000, 20_000};
+    private static final double[] ranges = {0.5, 3.0, 8.0, 20.0};
+
+    private final Random random = new Random(42);
+    private PositionState positionState;
+
+    @Before
+    public void setUp() {
+        positionState = InstanceFixtures.initialState().getPosition();
+    }
+
+    @Test
+    public void getCharactersInRange_charactersMovingAcrossCells_sameCharactersAsScanOfAllMoves() {
+        for (int i = 0; i < 100; i++) {
+            positionState = positionState.put(new Id<>(i), randomMove(0));
+        }
+
+        assertSameCharactersAsScan(positionState);
+    }
+
+    @Test
+    public void getCharactersInRange_charactersChangedMoves_sameCharactersAsScanOfAllMoves() {
+        for (int i = 0; i < 100; i++) {
+            positionState = positionState.put(new Id<>(i), randomMove(0));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            positionState = positionState.put(new Id<>(i), randomMove(2000));
+        }
+        for (int i = 1; i < 100; i += 4) {
+            positionState = positionState.remove(new Id<>(i));
+        }
+
+        assertSameCharactersAsScan(positionState);
+    }
+
+    @Test
+    public void getCharactersInRange_olderState_sameCharactersAsScanOfMovesOfOlderState() {
+        for (int i = 0; i < 50; i++) {
+            positionState = positionState.put(new Id<>(i), randomMove(0));
+        }
+        PositionState olderState = positionState;
+        for (int i = 0; i < 50; i++) {
+            positionState = positionState.put(new Id<>(i), randomMove(1000));
+        }
+
+        assertSameCharactersAsScan(olderState);
+        assertSameCharactersAsScan(positionState);
+    }
+
+    private void assertSameCharactersAsScan(PositionState state) {
+        for (long time : times) {
+            for (double range : ranges) {
+                for (int i = 0; i < 10; i++) {
+                    Point center = randomPoint();
+                    List<Id<Character>> charactersInRange = state.getCharactersInRange(center, range, time);
+                    List<Id<Character>> scannedCharacters = scan(state, center, range, time);
+                    assertThat(charactersInRange).hasSameSizeAs(scannedCharacters);
+                    assertThat(new HashSet<>(charactersInRange)).isEqualTo(new HashSet<>(scannedCharacters));
+
+                    List<Id<Character>> charactersInRectangle = state.getCharactersInRectangle(center.getX() - range, center.getY() - range, center.getX() + range, center.getY() + range, time);
+                    assertThat(charactersInRectangle).hasSameSizeAs(new HashSet<>(charactersInRectangle));
+                    assertThat(new HashSet<>(charactersInRectangle)).isEqualTo(new HashSet<>(scanRectangle(state, center, range, time)));
+
+                    Id<Character> nearest = state.findNearestCharacter(center, range, time, characterId -> true);
+                    if (scannedCharacters.isEmpty()) {
+                        assertThat(nearest).isNull();
+                    } else {
+                        double nearestDistance = scannedCharacters.stream().mapToDouble(characterId -> distance(state, characterId, center, time)).min().getAsDouble();
+                        assertThat(distance(state, nearest, center, time)).isCloseTo(nearestDistance, within(1e-9));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findNearestCharacter_nearestCharacterIsFilteredOut_returnsNextCharacter() {
+        positionState = positionState
+                .put(new Id<>(1), Move.of(0, speed, Point.of(10, 10)))
+                .put(new Id<>(2), Move.of(0, speed, Point.of(11, 10)))
+                .put(new Id<>(3), Move.of(0, speed, Point.of(30, 10)));
+
+        Id<Character> nearest = positionState.findNearestCharacter(Point.of(10, 10), 30, 0, characterId -> !characterId.equals(new Id<>(1)));
+        Id<Character> nearestInMaxDistance = positionState.findNearestCharacter(Point.of(30, 30), 10, 0, characterId -> true);
+
+        assertThat(nearest).isEqualTo(new Id<>(2));
+        assertThat(nearestInMaxDistance).isNull();
+    }
+
+    private List<Id<Character>> scanRectangle(PositionState state, Point center, double range, long time) {
+        return state.getState().entrySet().stream()
+                .filter(entry -> {
+                    Point position = entry.getValue().getPositionAtTime(time);
+                    return Math.abs(position.getX() - center.getX()) <= range && Math.abs(position.getY() - center.getY()) <= range;
+                })
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private double distance(PositionState state, Id<Character> characterId, Point center, long time) {
+        return state.getMove(characterId).getPositionAtTime(time).distanceTo(center);
+    }
+
+    private List<Id<Character>> scan(PositionState state, Point center, double range, long time) {
+        return state.getState().entrySet().stream()
+                .filter(entry -> entry.getValue().getPositionAtTime(time).distanceTo(center) <= range)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private Move randomMove(long startTime) {
+        return Move.of(startTime, speed, randomPoint(), randomPoint(), randomPoint());
+    }
+
+    private Point randomPoint() {
+        return Point.of(random.nextDouble() * InstanceFixtures.mapSize, random.nextDouble() * InstanceFixtures.mapSize);
+    }
+}
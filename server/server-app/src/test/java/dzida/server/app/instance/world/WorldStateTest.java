@@ -0,0 +1,138 @@
+package dzida.server.app.instance.world;
+
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.InstanceFixtures;
+import dzida.server.app.instance.world.object.WorldObject;
+import dzida.server.app.instance.world.object.WorldObjectKind;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class WorldStateTest {
+    private static final WorldObjectKind bigKind = new WorldObjectKind(new Id<>(3), "big", 12, 10, null, true, 0);
+    private static final WorldObjectKind[] kinds = {InstanceFixtures.decayingKind, InstanceFixtures.staticKind, bigKind};
+    private static final double[] ranges = {0.5, 3.0, 8.0, 20.0};
+
+    private final Random random = new Random(42);
+    private final Map<Id<WorldObjectKind>, WorldObjectKind> kindsById = new HashMap<>();
+    private WorldState worldState;
+
+    @Before
+    public void setUp() {
+        worldState = InstanceFixtures.initialState().getWorld();
+        for (WorldObjectKind kind : kinds) {
+            kindsById.put(kind.getId(), kind);
+        }
+    }
+
+    @Test
+    public void getWorldObjectsInRange_objectsAcrossCells_sameObjectsAsScanOfAllObjects() {
+        addRandomObjects(0, 100);
+
+        assertSameObjectsAsScan(worldState);
+    }
+
+    @Test
+    public void getWorldObjectsInRange_removedObjects_sameObjectsAsScanOfAllObjects() {
+        addRandomObjects(0, 100);
+        for (int i = 0; i < 100; i += 3) {
+            worldState = worldState.removeObject(new Id<>(i));
+        }
+
+        assertSameObjectsAsScan(worldState);
+    }
+
+    @Test
+    public void getWorldObjectsInRange_olderState_sameObjectsAsScanOfObjectsOfOlderState() {
+        addRandomObjects(0, 50);
+        WorldState olderState = worldState;
+        addRandomObjects(50, 100);
+
+        assertSameObjectsAsScan(olderState);
+        assertSameObjectsAsScan(worldState);
+    }
+
+    @Test
+    public void getWorldObjectsInRectangle_objectNextToRectangle_objectIsNotIncluded() {
+        worldState = worldState.addObject(new Id<>(1), new WorldObject(InstanceFixtures.staticKind.getId(), 10, 10, Instant.EPOCH), InstanceFixtures.staticKind);
+
+        assertThat(worldState.getWorldObjectsInRectangle(12, 10, 14, 12)).isEmpty();
+        assertThat(worldState.getWorldObjectsInRectangle(11, 11, 13, 13)).containsExactly(new Id<>(1));
+    }
+
+    @Test
+    public void findNearestWorldObject_noObjectInMaxDistance_returnsNull() {
+        worldState = worldState.addObject(new Id<>(1), new WorldObject(InstanceFixtures.staticKind.getId(), 10, 10, Instant.EPOCH), InstanceFixtures.staticKind);
+
+        assertThat(worldState.findNearestWorldObject(new Point(30, 30), 20)).isNull();
+        assertThat(worldState.findNearestWorldObject(new Point(30, 30), 30)).isEqualTo(new Id<>(1));
+    }
+
+    private void assertSameObjectsAsScan(WorldState state) {
+        for (int i = 0; i < 20; i++) {
+            for (double range : ranges) {
+                Point center = randomPoint();
+                assertThat(new HashSet<>(state.getWorldObjectsInRange(center, range)))
+                        .isEqualTo(new HashSet<>(scan(state, id -> distanceToObject(state, id, center) <= range)));
+
+                double minX = center.getX() - range;
+                double minY = center.getY() - range;
+                double maxX = center.getX() + range;
+                double maxY = center.getY() + range;
+                List<Id<WorldObject>> objectsInRectangle = state.getWorldObjectsInRectangle(minX, minY, maxX, maxY);
+                assertThat(objectsInRectangle).hasSameSizeAs(new HashSet<>(objectsInRectangle));
+                assertThat(new HashSet<>(objectsInRectangle)).isEqualTo(new HashSet<>(scan(state, id -> {
+                    WorldObject worldObject = state.getWorldObjects().get(id);
+                    WorldObjectKind kind = kindsById.get(worldObject.getKind());
+                    return worldObject.getX() < maxX && worldObject.getX() + kind.getWidth() > minX
+                            && worldObject.getY() < maxY && worldObject.getY() + kind.getHeight() > minY;
+                })));
+
+                Id<WorldObject> nearest = state.findNearestWorldObject(center, range);
+                List<Id<WorldObject>> objectsInRange = scan(state, id -> distanceToObject(state, id, center) <= range);
+                if (objectsInRange.isEmpty()) {
+                    assertThat(nearest).isNull();
+                } else {
+                    double nearestDistance = objectsInRange.stream().mapToDouble(id -> distanceToObject(state, id, center)).min().getAsDouble();
+                    assertThat(distanceToObject(state, nearest, center)).isCloseTo(nearestDistance, within(1e-9));
+                }
+            }
+        }
+    }
+
+    private List<Id<WorldObject>> scan(WorldState state, Predicate<Id<WorldObject>> filter) {
+        return state.getWorldObjects().keySet().stream().filter(filter).collect(Collectors.toList());
+    }
+
+    private double distanceToObject(WorldState state, Id<WorldObject> id, Point point) {
+        WorldObject worldObject = state.getWorldObjects().get(id);
+        WorldObjectKind kind = kindsById.get(worldObject.getKind());
+        double closestX = Math.max(worldObject.getX(), Math.min(point.getX(), worldObject.getX() + kind.getWidth()));
+        double closestY = Math.max(worldObject.getY(), Math.min(point.getY(), worldObject.getY() + kind.getHeight()));
+        return point.distanceTo(new Point(closestX, closestY));
+    }
+
+    private void addRandomObjects(int fromId, int toId) {
+        for (int i = fromId; i < toId; i++) {
+            WorldObjectKind kind = kinds[random.nextInt(kinds.length)];
+            WorldObject worldObject = new WorldObject(kind.getId(), random.nextInt(InstanceFixtures.mapSize), random.nextInt(InstanceFixtures.mapSize), Instant.EPOCH);
+            worldState = worldState.addObject(new Id<>(i), worldObject, kind);
+        }
+    }
+
+    private Point randomPoint() {
+        return Point.of(random.nextDouble() * InstanceFixtures.mapSize, random.nextDouble() * InstanceFixtures.mapSize);
+    }
+}
@@ -0,0 +1,39 @@
+package dzida.server.app.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistogramTest {
+    private final Histogram histogram = new Histogram();
+
+    @Test
+    public void getPercentile_noValues_isZero() {
+        assertThat(histogram.getPercentile(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void getPercentile_values_isUpperBoundOfBucketOfPercentile() {
+        for (int i = 0; i < 90; i++) {
+            histogram.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000);
+        }
+
+        assertThat(histogram.getPercentile(50)).isEqualTo(15);
+        assertThat(histogram.getPercentile(99)).isEqualTo(1000);
+    }
+
+    @Test
+    public void snapshot_values_containsCountMeanAndMax() {
+        histogram.record(2);
+        histogram.record(4);
+        histogram.record(-1);
+
+        assertThat(histogram.snapshot())
+                .containsEntry("count", 3L)
+                .containsEntry("mean", 2L)
+                .containsEntry("max", 4L);
+    }
+}
@@ -0,0 +1,41 @@
+package dzida.server.app.network;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ByteBufUtf8ReaderTest {
+
+    @Test
+    public void read_multiByteCharacters_returnsSameText() throws IOException {
+        String text = "ascii, za\u017c\u00f3\u0142\u0107, \u20ac, \uD834\uDD1E and more";
+
+        String readText = CharStreams.toString(new ByteBufUtf8Reader(Unpooled.copiedBuffer(text, Charsets.UTF_8)));
+
+        assertThat(readText).isEqualTo(text);
+    }
+
+    @Test
+    public void read_surrogatePairDoesNotFitInBuffer_lowSurrogateIsReturnedInNextRead() throws IOException {
+        ByteBufUtf8Reader reader = new ByteBufUtf8Reader(Unpooled.copiedBuffer("a\uD834\uDD1E", Charsets.UTF_8));
+        char[] chars = new char[3];
+
+        assertThat(reader.read(chars, 0, 2)).isEqualTo(2);
+        assertThat(reader.read(chars, 2, 1)).isEqualTo(1);
+        assertThat(new String(chars)).isEqualTo("a\uD834\uDD1E");
+        assertThat(reader.read(chars, 0, 2)).isEqualTo(-1);
+    }
+
+    @Test
+    public void read_truncatedSequence_throwsException() {
+        ByteBufUtf8Reader reader = new ByteBufUtf8Reader(Unpooled.wrappedBuffer(new byte[]{'a', (byte) 0xc5}));
+
+        assertThatThrownBy(() -> reader.read(new char[4], 0, 4)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,60 @@
+package dzida.server.app.network;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeflateFrameEncoderTest {
+    private static final int THRESHOLD = 100;
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new DeflateFrameEncoder(6, THRESHOLD, new DeflateFrameEncoder.Counters()));
+    }
+
+    @Test
+    public void encode_frameSmallerThanThreshold_frameIsNotCompressed() {
+        channel.writeOutbound(new TextWebSocketFrame("small"));
+
+        WebSocketFrame frame = channel.readOutbound();
+        assertThat(frame.rsv()).isEqualTo(0);
+        assertThat(frame.content().toString(Charsets.UTF_8)).isEqualTo("small");
+    }
+
+    @Test
+    public void encode_framesLargerThanThreshold_framesAreCompressedWithSharedContext() throws Exception {
+        String text = Strings.repeat("[\"CharacterMoved\",{\"x\":12.5,\"y\":7}]", 10);
+        channel.writeOutbound(new TextWebSocketFrame(text), new TextWebSocketFrame(text));
+
+        Inflater inflater = new Inflater(true);
+        WebSocketFrame first = channel.readOutbound();
+        WebSocketFrame second = channel.readOutbound();
+        assertThat(first.rsv()).isEqualTo(WebSocketExtension.RSV1);
+        assertThat(first.content().readableBytes()).isLessThan(text.length());
+        assertThat(inflate(inflater, first.content())).isEqualTo(text);
+        assertThat(inflate(inflater, second.content())).isEqualTo(text);
+    }
+
+    private static String inflate(Inflater inflater, ByteBuf content) throws Exception {
+        byte[] input = new byte[content.readableBytes() + 4];
+        content.readBytes(input, 0, content.readableBytes());
+        input[input.length - 2] = (byte) 0xff;
+        input[input.length - 1] = (byte) 0xff;
+        inflater.setInput(input);
+        byte[] output = new byte[4096];
+        int length = inflater.inflate(output);
+        return new String(output, 0, length, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package dzida.server.app.network;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeartbeatHandlerTest {
+    private EmbeddedChannel channel;
+    private LongAdder disconnections;
+
+    @Before
+    public void setUp() {
+        disconnections = new LongAdder();
+        channel = new EmbeddedChannel(new HeartbeatHandler(2, disconnections));
+    }
+
+    @Test
+    public void idle_clientIsIdle_pingIsSent() {
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+
+        assertThat((Object) channel.readOutbound()).isInstanceOf(PingWebSocketFrame.class);
+        assertThat(channel.isOpen()).isTrue();
+    }
+
+    @Test
+    public void idle_clientMissedAllPongs_clientIsDisconnected() {
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(disconnections.sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void idle_clientAnsweredPing_clientIsNotDisconnected() {
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        channel.writeInbound(new PongWebSocketFrame());
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+
+        assertThat(channel.isOpen()).isTrue();
+        assertThat((Object) channel.readInbound()).isNull();
+    }
+
+    @Test
+    public void read_message_messageIsPassedFurther() {
+        TextWebSocketFrame frame = new TextWebSocketFrame("message");
+
+        channel.writeInbound(frame);
+
+        assertThat((Object) channel.readInbound()).isSameAs(frame);
+    }
+}
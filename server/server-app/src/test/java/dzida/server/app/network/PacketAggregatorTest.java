@@ -0,0 +1,81 @@
+package dzida.server.app.network;
+
+import com.google.common.base.Charsets;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PacketAggregatorTest {
+
+    @Test
+    public void take_singlePacket_returnsFrameWithThePacket() {
+        PacketAggregator aggregator = PacketAggregator.json();
+        ByteBuf packet = packet("[[\"serverA\",\"message\"]]");
+        aggregator.add(packet);
+
+        WebSocketFrame frame = aggregator.take(ByteBufAllocator.DEFAULT);
+
+        assertThat(frame).isInstanceOf(TextWebSocketFrame.class);
+        assertThat(frame.content()).isSameAs(packet);
+        assertThat(aggregator.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void take_severalJsonPackets_joinsMessagesInSinglePacket() {
+        PacketAggregator aggregator = PacketAggregator.json();
+        aggregator.add(packet("[[\"serverA\",\"message 1\"]]"));
+        aggregator.add(packet("[[0,[\"Move\",{}]]]"));
+        aggregator.add(packet("[[\"dispatcher\",\"message 2\"]]"));
+
+        WebSocketFrame frame = aggregator.take(ByteBufAllocator.DEFAULT);
+
+        assertThat(frame.content().toString(Charsets.UTF_8))
+                .isEqualTo("[[\"serverA\",\"message 1\"],[0,[\"Move\",{}]],[\"dispatcher\",\"message 2\"]]");
+    }
+
+    @Test
+    public void take_severalBinaryPackets_joinsMessagesWithoutSeparator() {
+        PacketAggregator aggregator = PacketAggregator.binary();
+        aggregator.add(Unpooled.wrappedBuffer(new byte[]{6, 6, 3, 7, 7}));
+        aggregator.add(Unpooled.wrappedBuffer(new byte[]{6, 6, 0, 7, 7}));
+
+        WebSocketFrame frame = aggregator.take(ByteBufAllocator.DEFAULT);
+
+        assertThat(frame).isInstanceOf(BinaryWebSocketFrame.class);
+        byte[] content = new byte[frame.content().readableBytes()];
+        frame.content().readBytes(content);
+        assertThat(content).containsExactly(new byte[]{6, 6, 3, 7, 6, 0, 7, 7});
+    }
+
+    @Test
+    public void release_joinedFrame_releasesAllPackets() {
+        PacketAggregator aggregator = PacketAggregator.json();
+        ByteBuf first = packet("[[\"serverA\",\"message 1\"]]");
+        ByteBuf second = packet("[[\"serverA\",\"message 2\"]]");
+        aggregator.add(first);
+        aggregator.add(second);
+
+        aggregator.take(ByteBufAllocator.DEFAULT).release();
+
+        assertThat(first.refCnt()).isEqualTo(0);
+        assertThat(second.refCnt()).isEqualTo(0);
+    }
+
+    @Test
+    public void isFull_packetsOverMaxSize_isTrue() {
+        PacketAggregator aggregator = PacketAggregator.json();
+        aggregator.add(Unpooled.buffer(PacketAggregator.maxPacketBytes).writerIndex(PacketAggregator.maxPacketBytes));
+
+        assertThat(aggregator.isFull()).isTrue();
+    }
+
+    private static ByteBuf packet(String packet) {
+        return Unpooled.copiedBuffer(packet, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+package dzida.server.app.network;
+
+import com.google.common.base.Charsets;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteCoalescerTest {
+    private EmbeddedChannel channel;
+    private WriteCoalescer.Counters counters;
+    private WriteCoalescer writeCoalescer;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        counters = new WriteCoalescer.Counters();
+        writeCoalescer = new WriteCoalescer(channel, 0, counters);
+    }
+
+    @Test
+    public void write_severalMessages_messagesAreNotFlushedBeforeEventLoopRunsTasks() {
+        writeCoalescer.write("message 1");
+        writeCoalescer.write("message 2");
+
+        assertThat((Object) channel.readOutbound()).isNull();
+    }
+
+    @Test
+    public void write_severalMessages_messagesAreFlushedOnce() {
+        writeCoalescer.write("message 1");
+        writeCoalescer.write("message 2");
+        writeCoalescer.write("message 3");
+
+        channel.runPendingTasks();
+
+        assertThat((Object) channel.readOutbound()).isEqualTo("message 1");
+        assertThat((Object) channel.readOutbound()).isEqualTo("message 2");
+        assertThat((Object) channel.readOutbound()).isEqualTo("message 3");
+        assertThat(counters.flushes.sum()).isEqualTo(1);
+        assertThat(counters.flushesSaved()).isEqualTo(2);
+    }
+
+    @Test
+    public void writePacket_severalPackets_packetsAreWrittenInSingleFrameBeforeLaterWrites() {
+        WriteCoalescer packetCoalescer = new WriteCoalescer(channel, 0, counters, PacketAggregator.json());
+        packetCoalescer.writePacket(Unpooled.copiedBuffer("[[\"serverA\",\"message 1\"]]", Charsets.UTF_8));
+        packetCoalescer.writePacket(Unpooled.copiedBuffer("[[\"serverB\",\"message 2\"]]", Charsets.UTF_8));
+        packetCoalescer.write("message 3");
+
+        channel.runPendingTasks();
+
+        TextWebSocketFrame frame = channel.readOutbound();
+        assertThat(frame.text()).isEqualTo("[[\"serverA\",\"message 1\"],[\"serverB\",\"message 2\"]]");
+        assertThat((Object) channel.readOutbound()).isEqualTo("message 3");
+        assertThat(counters.packetsAggregated()).isEqualTo(1);
+        assertThat(counters.flushes.sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void writePacket_joinedPacketsAboveHighWaterMark_channelIsNotWritableUntilPacketsAreWritten() {
+        channel.config().setWriteBufferLowWaterMark(8);
+        channel.config().setWriteBufferHighWaterMark(16);
+        WriteCoalescer packetCoalescer = new WriteCoalescer(channel, 0, counters, PacketAggregator.json());
+        packetCoalescer.writePacket(Unpooled.copiedBuffer("[[\"serverA\",1]]", Charsets.UTF_8));
+        assertThat(channel.isWritable()).isTrue();
+
+        packetCoalescer.writePacket(Unpooled.copiedBuffer("[[\"serverB\",2]]", Charsets.UTF_8));
+        assertThat(packetCoalescer.getAggregatedBytes()).isEqualTo(30);
+        assertThat(channel.isWritable()).isFalse();
+
+        channel.runPendingTasks();
+
+        assertThat(packetCoalescer.getAggregatedBytes()).isEqualTo(0);
+        assertThat(channel.isWritable()).isTrue();
+    }
+
+    @Test
+    public void flush_noPendingWrites_flushIsNotCounted() {
+        writeCoalescer.write("message");
+        writeCoalescer.flush();
+
+        channel.runPendingTasks();
+
+        assertThat(counters.flushes.sum()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,84 @@
+package dzida.server.app.protocol.binary;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryEnvelopeCodecTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void decode_encodedPacket_returnsSamePacket() {
+        String packet = "[[\"serverA\",\"[\\\"Move\\\",{\\\"x\\\":1.5,\\\"y\\\":2,\\\"name\\\":\\\"text\\\",\\\"flag\\\":true}]\"],[\"chat\",\"MSG nick hello\"]]";
+
+        assertThat(BinaryEnvelopeCodec.decode(encode(packet))).isEqualTo(packet);
+    }
+
+    @Test
+    public void decode_messageThatOnlyLooksLikeJson_returnsSameMessage() {
+        String packet = "[[\"chat\",\"[not a json\"],[\"chat\",\"[1] and text\"]]";
+
+        assertThat(BinaryEnvelopeCodec.decode(encode(packet))).isEqualTo(packet);
+    }
+
+    @Test
+    public void encode_jsonMessage_isSmallerThanText() {
+        String message = gson.toJson(new Message("move", new double[]{12.123456789012345, 7.5, 13.987654321098765, 8.25}, new long[]{1484059331000L, 1484059332501L}, null));
+        String packet = gson.toJson(new String[][]{{"archipelago", message}});
+
+        assertThat(encode(packet).readableBytes()).isLessThan(packet.length());
+    }
+
+    @Test
+    public void binaryReader_readsObjectsWrittenByBinaryWriter() {
+        Message message = new Message("move", new double[]{12.123456789012345, -7.0}, new long[]{1484059331000L, -1}, null);
+        ByteBuf buffer = Unpooled.buffer();
+
+        gson.toJson(message, Message.class, new BinaryJsonWriter(buffer));
+        Message readMessage = gson.fromJson(new BinaryJsonReader(buffer), Message.class);
+
+        assertThat(readMessage).isEqualTo(message);
+    }
+
+    private ByteBuf encode(String packet) {
+        ByteBuf buffer = Unpooled.buffer();
+        BinaryEnvelopeCodec.encode(packet, buffer);
+        return buffer;
+    }
+
+    private static final class Message {
+        final String name;
+        final double[] points;
+        final long[] times;
+        final String optional;
+
+        private Message(String name, double[] points, long[] times, String optional) {
+            this.name = name;
+            this.points = points;
+            this.times = times;
+            this.optional = optional;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Message message = (Message) o;
+            return Objects.equals(name, message.name) &&
+                    Arrays.equals(points, message.points) &&
+                    Arrays.equals(times, message.times) &&
+                    Objects.equals(optional, message.optional);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, Arrays.hashCode(points), Arrays.hashCode(times), optional);
+        }
+    }
+}
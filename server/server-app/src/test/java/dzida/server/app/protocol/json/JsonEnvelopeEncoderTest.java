@@ -0,0 +1,97 @@
+package dzida.server.app.protocol.json;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonEnvelopeEncoderTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void encode_textMessage_writesPacketWithMessageAsString() {
+        String message = "MSG nick \"quoted\" \\ za\u017c\u00f3\u0142\u0107 \uD834\uDD1E \n\u0001 \u2028";
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encode("chat", message, buffer);
+
+        assertThat(parsePacket(buffer)).containsExactly(ImmutableList.of("chat", message));
+    }
+
+    @Test
+    public void encode_writtenMessage_writesPacketWithMessageAsString() {
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encode("serverA", out -> out.beginArray().value("Message").beginObject().name("text").value("\"hi\"").endObject().endArray(), buffer);
+
+        assertThat(parsePacket(buffer)).containsExactly(ImmutableList.of("serverA", "[\"Message\",{\"text\":\"\\\"hi\\\"\"}]"));
+    }
+
+    @Test
+    public void encode_withChannelId_writesChannelIdInsteadOfServerKey() {
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encode("serverA", 3, "message", buffer);
+
+        assertThat(buffer.toString(Charsets.UTF_8)).isEqualTo("[[3,\"message\"]]");
+    }
+
+    @Test
+    public void encodeNested_withChannelId_writesChannelIdInsteadOfServerKey() {
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encodeNested("serverA", 3, out -> out.beginArray().value(0).endArray(), buffer);
+
+        assertThat(buffer.toString(Charsets.UTF_8)).isEqualTo("[[3,[0]]]");
+    }
+
+    @Test
+    public void encodeNested_jsonMessage_writesPacketWithNestedMessage() {
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encodeNested("serverA", "[\"Message\", {\"text\": \"za\u017c\u00f3\u0142\u0107\", \"count\": 2}]", buffer);
+
+        assertThat(buffer.toString(Charsets.UTF_8)).isEqualTo("[[\"serverA\",[\"Message\",{\"text\":\"za\u017c\u00f3\u0142\u0107\",\"count\":2}]]]");
+    }
+
+    @Test
+    public void encodeNested_textMessage_writesPacketWithMessageAsString() {
+        String message = "MSG nick \"quoted\" \\ \uD834\uDD1E \n";
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encodeNested("chat", message, buffer);
+
+        assertThat(parsePacket(buffer)).containsExactly(ImmutableList.of("chat", message));
+    }
+
+    @Test
+    public void encodeNested_messageThatOnlyLooksLikeJson_writesPacketWithMessageAsString() {
+        String message = "[\"Message\"] and more";
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encodeNested("chat", message, buffer);
+
+        assertThat(parsePacket(buffer)).containsExactly(ImmutableList.of("chat", message));
+    }
+
+    @Test
+    public void encodeNested_writtenMessage_writesPacketWithNestedMessage() {
+        ByteBuf buffer = Unpooled.buffer();
+
+        JsonEnvelopeEncoder.encodeNested("serverA", out -> out.beginArray().value("Message").beginObject().name("text").value("\"hi\"").endObject().endArray(), buffer);
+
+        assertThat(buffer.toString(Charsets.UTF_8)).isEqualTo("[[\"serverA\",[\"Message\",{\"text\":\"\\\"hi\\\"\"}]]]");
+    }
+
+    private List<List<String>> parsePacket(ByteBuf buffer) {
+        return gson.fromJson(buffer.toString(Charsets.UTF_8), new TypeToken<List<List<String>>>() {
+        }.getType());
+    }
+}
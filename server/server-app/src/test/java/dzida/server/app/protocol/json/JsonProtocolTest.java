@@ -9,6 +9,8 @@ import com.google.gson.stream.JsonWriter;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Objects;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -87,12 +89,56 @@ public class JsonProtocolTest {
         assertThat(data).isEqualTo("[" + trivialMessageType + ",{\"text\":\"some text\"}]");
     }
 
+    @Test
+    public void writingWithTypeId_ifMessageIsRegistered_writesPositionOfMessageClass() throws IOException {
+        StringWriter data = new StringWriter();
+
+        serializer.writeMessageWithTypeId(new NestedObjectMessage(new Foo("some name")), new JsonWriter(data));
+
+        assertThat(data.toString()).isEqualTo("[1,{\"foo\":{\"name\":\"some name\"}}]");
+        assertThat(serializer.getOutputTypeNames().get(1)).isEqualTo("NestedObjectMessage");
+    }
+
+    @Test
+    public void parsing_ifMessageHasTypeId_returnsMessageObject() {
+        Object message = serializer.parseMessage("[0,{\"text\":\"some text\"}]");
+        assertThat(message).isEqualTo(new TrivialMessage("some text"));
+    }
+
+    @Test
+    public void serializing_ifFieldIsNull_skipsField() {
+        String data = serializer.serializeMessage(new TrivialMessage(null));
+        assertThat(data).isEqualTo("[" + trivialMessageType + ",{}]");
+    }
+
+    @Test
+    public void writing_ifWriterSerializesNulls_skipsNullFieldAndRestoresWriter() throws IOException {
+        StringWriter data = new StringWriter();
+        JsonWriter writer = new JsonWriter(data);
+
+        serializer.writeMessage(new TrivialMessage(null), writer);
+
+        assertThat(data.toString()).isEqualTo("[" + trivialMessageType + ",{}]");
+        assertThat(writer.getSerializeNulls()).isTrue();
+    }
+
     @Test
     public void parsing_ifMessageIsRegistered_returnsMessageObject() {
         Object message = serializer.parseMessage("[" + trivialMessageType + ",{\"text\":\"some text\"}]");
         assertThat(message).isEqualTo(new TrivialMessage("some text"));
     }
 
+    @Test
+    public void parsing_ifMessageIsNestedInStream_returnsMessageObjectAndReadsOnlyMessage() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[[" + trivialMessageType + ",{\"text\":\"some text\"}],\"next value\"]"));
+        reader.beginArray();
+
+        Object message = serializer.parseMessage(reader);
+
+        assertThat(message).isEqualTo(new TrivialMessage("some text"));
+        assertThat(reader.nextString()).isEqualTo("next value");
+    }
+
     @Test
     public void serializing_ifMessageIsUnRegistered_returnsNull() {
         assertThatThrownBy(() -> {
@@ -102,9 +148,19 @@ public class JsonProtocolTest {
 
     @Test
     public void parsing_ifMessageIsUnRegistered_returnsNull() {
-        assertThatThrownBy(() -> {
-            serializer.parseMessage("[" + 1234 + ",{\"text\":\"some text\"}]");
-        });
+        Object message = serializer.parseMessage("[\"UnregisteredMessage\",{\"text\":\"some text\"}]");
+        assertThat(message).isNull();
+    }
+
+    @Test
+    public void parsing_ifTypeIdIsUnknown_returnsNullAndReadsOnlyMessage() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[[1234,{\"text\":\"some text\"}],\"next value\"]"));
+        reader.beginArray();
+
+        Object message = serializer.parseMessage(reader);
+
+        assertThat(message).isNull();
+        assertThat(reader.nextString()).isEqualTo("next value");
     }
 
     @Test
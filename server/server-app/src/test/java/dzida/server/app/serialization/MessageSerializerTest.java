@@ -4,6 +4,7 @@ package dzida.server.app.serialization;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class MessageSerializerTest {
@@ -15,6 +16,14 @@ public class MessageSerializerTest {
         }).hasMessageContaining("the old class name can not be changed");
     }
 
+    @Test
+    public void serializeMessage_textWithHtmlCharacters_charactersAreEscapedAsByGson() {
+        MessageSerializer serializer = MessageSerializer.create(ImmutableSet.of(Base.Message.class));
+        Base.Message message = new Base().new Message("<b>Tom & 'Jerry'</b>");
+
+        assertThat(serializer.serializeMessage(message)).isEqualTo(BasicJsonSerializer.getSerializer().toJson(message));
+    }
+
     class Message {
         final int number;
 
@@ -0,0 +1,77 @@
+package dzida.server.app.unit;
+
+import dzida.server.app.basic.unit.GridIndex;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GridIndexTest {
+    private GridIndex<String> index = new GridIndex<>(8);
+
+    @Test
+    public void forEachCandidate_rectangleInManyCells_passesKeyOnce() {
+        index = index.putRectangle("a", 6, 6, 10, 10);
+
+        assertThat(candidates(0, 0, 20, 20)).containsExactly("a");
+    }
+
+    @Test
+    public void forEachCandidate_rectangleOutsideOfCells_passesNothing() {
+        index = index.putRectangle("a", 6, 6, 10, 10);
+
+        assertThat(candidates(20, 20, 30, 30)).isEmpty();
+    }
+
+    @Test
+    public void forEachCandidate_moveCrossingCells_passesKeyInEachCellOfSegments() {
+        index = index.putMove("a", Move.of(1000, 1.0, Point.of(1, 1), Point.of(30, 1), Point.of(30, 30)));
+
+        assertThat(candidates(20, 0, 21, 2)).containsExactly("a");
+        assertThat(candidates(29, 20, 31, 21)).containsExactly("a");
+        assertThat(candidates(1, 20, 2, 21)).isEmpty();
+    }
+
+    @Test
+    public void forEachCandidate_replacedAndRemovedKeys_areNotInOldCells() {
+        index = index.putRectangle("a", 1, 1, 2, 2);
+        index = index.putRectangle("b", 1, 1, 2, 2);
+        index = index.putRectangle("a", 20, 20, 21, 21);
+        index = index.remove("b");
+
+        assertThat(candidates(0, 0, 3, 3)).isEmpty();
+        assertThat(candidates(19, 19, 22, 22)).containsExactly("a");
+    }
+
+    @Test
+    public void putRectangle_changedIndex_previousIndexIsNotChanged() {
+        index = index.putRectangle("a", 1, 1, 2, 2);
+        GridIndex<String> previousIndex = index;
+
+        index = index.putRectangle("a", 20, 20, 21, 21);
+        index = index.putRectangle("b", 1, 1, 2, 2);
+
+        List<String> previousCandidates = new ArrayList<>();
+        previousIndex.forEachCandidate(0, 0, 3, 3, previousCandidates::add);
+        assertThat(previousCandidates).containsExactly("a");
+        assertThat(candidates(0, 0, 3, 3)).containsExactly("b");
+    }
+
+    @Test
+    public void forEachCandidate_rectangleInNegativeCells_passesKeyOnce() {
+        index = index.putRectangle("a", -10, -10, 10, 10);
+
+        assertThat(candidates(-20, -20, 20, 20)).containsExactly("a");
+        assertThat(candidates(-20, 0, 0, 20)).containsExactly("a");
+    }
+
+    private List<String> candidates(double minX, double minY, double maxX, double maxY) {
+        List<String> candidates = new ArrayList<>();
+        index.forEachCandidate(minX, minY, maxX, maxY, candidates::add);
+        return candidates;
+    }
+}
@@ -0,0 +1,47 @@
+package dzida.server.app.unit;
+
+import com.google.gson.Gson;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.MoveCodec;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.serialization.BasicJsonSerializer;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MoveCodecTest {
+    private final MoveCodec codec = new MoveCodec(16);
+    private final Gson rawSerializer = BasicJsonSerializer.getSerializer();
+
+    @Test
+    public void toJson_move_writesTimeDeltasAndQuantizedCoordinates() {
+        Move move = Move.of(1483228800000L, 2.0, Point.of(1, 1), Point.of(5, 1), Point.of(5, 2.5));
+
+        assertThat(codec.toJson(move)).isEqualTo("[16,1483228800000,[2000,2750],[16,16,80,16,80,40]]");
+    }
+
+    @Test
+    public void fromJson_quantizedMove_readsIdenticalMove() throws Exception {
+        Move move = Move.of(1483228800000L, 3.0, Point.of(1.3, 7.77), Point.of(12.01, 3.333), Point.of(0.5, 0.1)).quantize(16);
+
+        Move readMove = codec.fromJson(codec.toJson(move));
+
+        assertThat(rawSerializer.toJson(readMove)).isEqualTo(rawSerializer.toJson(move));
+    }
+
+    @Test
+    public void fromJson_singlePointMove_readsIdenticalMove() throws Exception {
+        Move move = Move.fromPosition(1483228800000L, Point.of(3.25, 4.5));
+
+        Move readMove = codec.fromJson(codec.toJson(move));
+
+        assertThat(rawSerializer.toJson(readMove)).isEqualTo(rawSerializer.toJson(move));
+    }
+
+    @Test
+    public void quantize_move_roundsCoordinatesToPrecision() {
+        Move move = Move.fromPosition(0, Point.of(1.03, 2.97)).quantize(16);
+
+        assertThat(move.getPositionAtTime(0)).isEqualTo(Point.of(1.0, 3.0));
+    }
+}
@@ -0,0 +1,96 @@
+package dzida.server.app.unit;
+
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.MoveColumns;
+import dzida.server.app.basic.unit.Point;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class MoveColumnsTest {
+    private MoveColumns<String> columns = MoveColumns.empty();
+    private final Move move = Move.of(1000, 1.0, Point.of(0, 0), Point.of(4, 0), Point.of(4, 3));
+
+    @Test
+    public void getPositionsAtTime_increasingTimes_isSameAsPositionOfMove() {
+        columns = columns.put("a", move);
+        columns = columns.put("b", Move.fromPosition(1000, Point.of(2, 2)));
+        double[] xs = new double[columns.getSlotCount()];
+        double[] ys = new double[columns.getSlotCount()];
+        int slot = columns.getSlot("a");
+
+        for (long time = 0; time < 9000; time += 250) {
+            columns.getPositionsAtTime(time, xs, ys);
+
+            Point position = move.getPositionAtTime(time);
+            assertThat(xs[slot]).isCloseTo(position.getX(), within(1e-9));
+            assertThat(ys[slot]).isCloseTo(position.getY(), within(1e-9));
+        }
+    }
+
+    @Test
+    public void getXAtTime_timeBeforeCurrentSegment_isSameAsPositionOfMove() {
+        columns = columns.put("a", move);
+        int slot = columns.getSlot("a");
+        columns.getXAtTime(slot, 6000);
+
+        assertThat(columns.getXAtTime(slot, 3000)).isCloseTo(2, within(1e-9));
+        assertThat(columns.getYAtTime(slot, 3000)).isCloseTo(0, within(1e-9));
+    }
+
+    @Test
+    public void getPositionsAtTime_removedMove_isNaNAndSlotIsReused() {
+        columns = columns.put("a", move);
+        columns = columns.put("b", move);
+        columns = columns.remove("a");
+        double[] xs = new double[columns.getSlotCount()];
+        double[] ys = new double[columns.getSlotCount()];
+
+        columns.getPositionsAtTime(2000, xs, ys);
+        columns = columns.put("c", move);
+
+        assertThat(xs[0]).isNaN();
+        assertThat(columns.getSlot("c")).isEqualTo(0);
+        assertThat(columns.getKey(0)).isEqualTo("c");
+    }
+
+    @Test
+    public void areInDistance_movesInDistanceAtTime_isTrue() {
+        columns = columns.put("a", move);
+        columns = columns.put("b", Move.fromPosition(1000, Point.of(4, 1)));
+
+        assertThat(columns.areInDistance(columns.getSlot("a"), columns.getSlot("b"), 1.5, 1000)).isFalse();
+        assertThat(columns.areInDistance(columns.getSlot("a"), columns.getSlot("b"), 1.5, 5000)).isTrue();
+    }
+
+    @Test
+    public void put_changedColumns_previousColumnsAreNotChanged() {
+        columns = columns.put("a", move);
+        MoveColumns<String> previousColumns = columns;
+
+        columns = columns.put("a", Move.fromPosition(1000, Point.of(10, 10)));
+        columns = columns.put("b", move);
+
+        assertThat(previousColumns.getXAtTime(previousColumns.getSlot("a"), 3000)).isCloseTo(2, within(1e-9));
+        assertThat(previousColumns.getSlot("b")).isEqualTo(-1);
+        assertThat(columns.getXAtTime(columns.getSlot("a"), 3000)).isCloseTo(10, within(1e-9));
+    }
+
+    @Test
+    public void put_manyMoves_movesInAllChunksHaveTheirPositions() {
+        for (int i = 0; i < 100; i++) {
+            columns = columns.put("key" + i, Move.fromPosition(1000, Point.of(i, 0)));
+        }
+        columns = columns.remove("key50");
+        columns = columns.put("other", Move.fromPosition(1000, Point.of(-1, 0)));
+
+        for (int i = 0; i < 100; i++) {
+            if (i != 50) {
+                assertThat(columns.getXAtTime(columns.getSlot("key" + i), 2000)).isEqualTo(i);
+            }
+        }
+        assertThat(columns.getSlot("other")).isEqualTo(50);
+        assertThat(columns.getXAtTime(50, 2000)).isEqualTo(-1);
+    }
+}
@@ -31,9 +31,9 @@
 
 package org.sample;
 
-import dzida.server.core.basic.unit.BitMap;
-import dzida.server.core.world.pathfinding.CollisionMap;
-import dzida.server.core.world.pathfinding.CollisionMapFactory;
+import dzida.server.app.basic.unit.BitMap;
+import dzida.server.app.instance.world.pathfinding.CollisionMap;
+import dzida.server.app.instance.world.pathfinding.CollisionMapFactory;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;
@@ -0,0 +1,120 @@
+package org.sample;
+
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.entity.Key;
+import dzida.server.app.basic.unit.BitMap;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.GameDefinitions;
+import dzida.server.app.instance.GameState;
+import dzida.server.app.instance.character.CharacterState;
+import dzida.server.app.instance.character.model.Character;
+import dzida.server.app.instance.parcel.ParcelState;
+import dzida.server.app.instance.position.PositionState;
+import dzida.server.app.instance.position.event.CharacterMoved;
+import dzida.server.app.instance.skill.SkillSate;
+import dzida.server.app.instance.world.WorldState;
+import dzida.server.app.instance.world.map.WorldMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures applying a move of a single character to the game state with the given number of characters. The state
+ * maps share the structure with the previous state, the copyOnWrite benchmark is the full copy of the map that was
+ * made for each event before.
+ * The move columns and the grid are shared with the previous state as well, so the applyMoveToOlderState benchmark,
+ * that branches from an older state, should cost the same as applying the move to the latest state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameStateUpdateBenchmark {
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        Options opt = new OptionsBuilder()
+                .include(GameStateUpdateBenchmark.class.getSimpleName())
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(2))
+                .forks(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public GameState applyMove(States states) {
+        states.gameState = states.nextMove().updateState(states.gameState, states.definitions);
+        return states.gameState;
+    }
+
+    @Benchmark
+    public GameState applyMoveToOlderState(States states) {
+        return states.nextMove().updateState(states.olderState, states.definitions);
+    }
+
+    @Benchmark
+    public Map<Id<Character>, Move> copyOnWrite(States states) {
+        CharacterMoved move = states.nextMove();
+        Map<Id<Character>, Move> newMoves = new LinkedHashMap<>(states.gameState.getPosition().getState());
+        newMoves.put(move.characterId, move.move);
+        return newMoves;
+    }
+
+    @State(Scope.Thread)
+    public static class States {
+        @Param({"10", "100", "1000"})
+        int characters;
+
+        GameDefinitions definitions;
+        GameState gameState;
+        // state that is not the latest one after the setup
+        GameState olderState;
+        CharacterMoved[] moves;
+        int nextMove;
+
+        @Setup
+        public void setup() {
+            definitions = new GameDefinitions(Collections.emptyMap(), Collections.emptyMap(), 16);
+            BitMap bitMap = BitMap.createBitMap(
+                    "          ",
+                    "          ",
+                    "          ",
+                    "          ",
+                    "          ");
+            WorldMap worldMap = new WorldMap(10, 5, new Key<>("tileset"), new Point(1, 1), new int[50], 1, "#000000");
+            gameState = new GameState(new CharacterState(), new WorldState(worldMap), new PositionState(bitMap), new SkillSate(), new ParcelState());
+
+            moves = new CharacterMoved[characters];
+            for (int i = 0; i < characters; i++) {
+                Move move = Move.of(1000, 4, new Point(i % 10, i % 5), new Point(5, 2));
+                moves[i] = new CharacterMoved(new Id<>(i), move);
+                gameState = moves[i].updateState(gameState, definitions);
+            }
+            olderState = gameState;
+            gameState = moves[0].updateState(gameState, definitions);
+        }
+
+        CharacterMoved nextMove() {
+            nextMove = (nextMove + 1) % characters;
+            return moves[nextMove];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.sample;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.CharacterCommand;
+import dzida.server.app.instance.InstanceEvent;
+import dzida.server.app.instance.event.ServerMessage;
+import dzida.server.app.instance.position.event.CharacterMoved;
+import dzida.server.app.instance.skill.event.SkillUsedOnCharacter;
+import dzida.server.app.protocol.json.JsonProtocol;
+import dzida.server.app.serialization.BasicJsonSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time and the bytes allocated per message of each type, when the message is serialized through a Gson
+ * tree, as the protocol did before, and when it's streamed with the cached type adapters.
+ * Look at the gc.alloc.rate.norm of the GC profiler for the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageSerializationBenchmark {
+    private static final JsonProtocol protocol = JsonProtocol.create(CharacterCommand.classes, InstanceEvent.classes);
+    private static final Gson gson = BasicJsonSerializer.getSerializer();
+    private static final JsonParser parser = new JsonParser();
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        Options opt = new OptionsBuilder()
+                .include(MessageSerializationBenchmark.class.getSimpleName())
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(2))
+                .forks(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public String treeEncoding(Events events) {
+        return gson.toJson(ImmutableList.of(events.type, gson.toJsonTree(events.message)));
+    }
+
+    @Benchmark
+    public String streamingEncoding(Events events) {
+        return protocol.serializeMessage(events.message);
+    }
+
+    @Benchmark
+    public Object treeDecoding(Commands commands) {
+        JsonArray message = parser.parse(commands.data).getAsJsonArray();
+        return gson.fromJson(message.get(1), commands.messageClass);
+    }
+
+    @Benchmark
+    public Object streamingDecoding(Commands commands) {
+        return protocol.parseMessage(commands.data);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Events {
+        private static final Map<String, Object> messages = ImmutableMap.of(
+                "CharacterMoved", new CharacterMoved(new Id<>(12345), Move.of(1484059331000L, 4.5,
+                        new Point(12.5, 7.25), new Point(20.75, 13.5), new Point(31.125, 14.0))),
+                "SkillUsedOnCharacter", new SkillUsedOnCharacter(new Id<>(12345), new Id<>(2), new Id<>(54321), 1484059331000L),
+                "ServerMessage", new ServerMessage("Can not use the skill yet"));
+
+        @Param({"CharacterMoved", "SkillUsedOnCharacter", "ServerMessage"})
+        String type;
+        Object message;
+
+        @Setup
+        public void setUp() {
+            message = messages.get(type);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Commands {
+        private static final Map<String, String> messages = ImmutableMap.of(
+                "Move", "[\"Move\",{\"x\":12.5,\"y\":7.25,\"speed\":4.5}]",
+                "UseSkillOnCharacter", "[\"UseSkillOnCharacter\",{\"skillId\":2,\"target\":54321}]");
+
+        @Param({"Move", "UseSkillOnCharacter"})
+        String type;
+        String data;
+        Class<?> messageClass;
+
+        @Setup
+        public void setUp() {
+            data = messages.get(type);
+            messageClass = CharacterCommand.classes.stream()
+                    .filter(commandClass -> commandClass.getSimpleName().equals(type))
+                    .findFirst()
+                    .orElseThrow(IllegalArgumentException::new);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.sample;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import dzida.server.app.basic.entity.Id;
+import dzida.server.app.basic.unit.Move;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.CharacterCommand;
+import dzida.server.app.instance.InstanceEvent;
+import dzida.server.app.instance.position.event.CharacterMoved;
+import dzida.server.app.protocol.binary.BinaryEnvelopeCodec;
+import dzida.server.app.protocol.json.JsonEnvelopeEncoder;
+import dzida.server.app.protocol.json.JsonProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares bytes allocated per message sent to the client. Look at the gc.alloc.rate.norm of the GC profiler.
+ */
+@State(Scope.Benchmark)
+public class OutboundEncodingBenchmark {
+    private static final String serverKey = "archipelago";
+
+    private final JsonProtocol protocol = JsonProtocol.create(CharacterCommand.classes, InstanceEvent.classes);
+    private final Gson packetSerializer = new Gson();
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private final CharacterMoved message = new CharacterMoved(new Id<>(12345), Move.of(1484059331000L, 4.5,
+            new Point(12.5, 7.25), new Point(20.75, 13.5), new Point(31.125, 14.0)));
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        Options opt = new OptionsBuilder()
+                .include(OutboundEncodingBenchmark.class.getSimpleName())
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(2))
+                .forks(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    /**
+     * Message and packet are serialized to strings and copied to a heap buffer as the text frame does.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int stringEncoding() {
+        String data = protocol.serializeMessage(message);
+        String packet = packetSerializer.toJson(ImmutableList.of(ImmutableList.of(serverKey, data)));
+        ByteBuf buffer = Unpooled.copiedBuffer(packet, CharsetUtil.UTF_8);
+        return release(buffer);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int pooledDirectJsonEncoding() {
+        ByteBuf buffer = allocator.directBuffer();
+        JsonEnvelopeEncoder.encode(serverKey, out -> protocol.writeMessage(message, out), buffer);
+        return release(buffer);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int pooledDirectBinaryEncoding() {
+        ByteBuf buffer = allocator.directBuffer();
+        BinaryEnvelopeCodec.encode(serverKey, out -> protocol.writeMessage(message, out), buffer);
+        return release(buffer);
+    }
+
+    private static int release(ByteBuf buffer) {
+        int size = buffer.readableBytes();
+        buffer.release();
+        return size;
+    }
+}
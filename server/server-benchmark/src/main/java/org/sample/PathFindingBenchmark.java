@@ -31,10 +31,10 @@
 
 package org.sample;
 
-import dzida.server.core.basic.unit.BitMap;
-import dzida.server.core.basic.unit.Point;
-import dzida.server.core.world.pathfinding.CollisionMapFactory;
-import dzida.server.core.world.pathfinding.PathFinder;
+import dzida.server.app.basic.unit.BitMap;
+import dzida.server.app.basic.unit.Point;
+import dzida.server.app.instance.world.pathfinding.CollisionMapFactory;
+import dzida.server.app.instance.world.pathfinding.PathFinder;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;